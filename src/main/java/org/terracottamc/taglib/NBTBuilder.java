@@ -1,9 +1,15 @@
 package org.terracottamc.taglib;
 
 import io.netty.buffer.ByteBuf;
+import org.terracottamc.taglib.metrics.INBTMetrics;
+import org.terracottamc.taglib.metrics.NBTAllocationProfiler;
+import org.terracottamc.taglib.metrics.NoOpNBTMetrics;
+import org.terracottamc.taglib.nbt.io.NBTDecodeCache;
 import org.terracottamc.taglib.nbt.io.NBTReader;
 import org.terracottamc.taglib.nbt.io.NBTStream;
 import org.terracottamc.taglib.nbt.io.NBTWriter;
+import org.terracottamc.taglib.nbt.io.SNBTParser;
+import org.terracottamc.taglib.nbt.tag.NBTCompoundInterner;
 import org.terracottamc.taglib.util.nbt.NBTBuilderException;
 
 import java.nio.ByteOrder;
@@ -24,6 +30,13 @@ public class NBTBuilder {
 
     private ByteBuf buffer = null;
     private ByteOrder byteOrder = null;
+    private int maxDepth = -1;
+    private INBTMetrics metrics = NoOpNBTMetrics.INSTANCE;
+    private NBTAllocationProfiler allocationProfiler = null;
+    private NBTCompoundInterner compoundInterner = null;
+    private NBTDecodeCache decodeCache = null;
+    private boolean canonicalEncoding = false;
+    private boolean keyDictionary = false;
 
     /**
      * Sets the {@link ByteBuf} which is used to handle IO
@@ -51,6 +64,104 @@ public class NBTBuilder {
         return this;
     }
 
+    /**
+     * Sets the maximum amount of nested compounds and lists a {@link org.terracottamc.taglib.nbt.io.NBTReader} may read
+     *
+     * @param maxDepth which limits the depth or -1 when the depth should not be limited
+     *
+     * @return a fresh {@link NBTBuilder}
+     */
+    public NBTBuilder withMaxDepth(final int maxDepth) {
+        this.maxDepth = maxDepth;
+
+        return this;
+    }
+
+    /**
+     * Sets the {@link org.terracottamc.taglib.metrics.INBTMetrics} which receives the measurements of the built
+     * {@link org.terracottamc.taglib.nbt.io.NBTReader} or {@link org.terracottamc.taglib.nbt.io.NBTWriter}
+     *
+     * @param metrics which should receive the measurements
+     *
+     * @return a fresh {@link NBTBuilder}
+     */
+    public NBTBuilder withMetrics(final INBTMetrics metrics) {
+        this.metrics = metrics;
+
+        return this;
+    }
+
+    /**
+     * Sets the {@link org.terracottamc.taglib.metrics.NBTAllocationProfiler} which attributes the consumption of the
+     * built {@link org.terracottamc.taglib.nbt.io.NBTReader} to nbt paths
+     *
+     * @param allocationProfiler which should profile the reader or null when nothing should be profiled
+     *
+     * @return a fresh {@link NBTBuilder}
+     */
+    public NBTBuilder withAllocationProfiler(final NBTAllocationProfiler allocationProfiler) {
+        this.allocationProfiler = allocationProfiler;
+
+        return this;
+    }
+
+    /**
+     * Sets the {@link org.terracottamc.taglib.nbt.tag.NBTCompoundInterner} which resolves structurally identical
+     * nested compounds of the built {@link org.terracottamc.taglib.nbt.io.NBTReader} to one shared immutable instance
+     *
+     * @param compoundInterner which should intern the compounds or null when nothing should be interned
+     *
+     * @return a fresh {@link NBTBuilder}
+     */
+    public NBTBuilder withCompoundInterner(final NBTCompoundInterner compoundInterner) {
+        this.compoundInterner = compoundInterner;
+
+        return this;
+    }
+
+    /**
+     * Sets the {@link org.terracottamc.taglib.nbt.io.NBTDecodeCache} which resolves compounds the built
+     * {@link org.terracottamc.taglib.nbt.io.NBTReader} has read before to one shared immutable instance
+     *
+     * @param decodeCache which should cache the compounds or null when nothing should be cached
+     *
+     * @return a fresh {@link NBTBuilder}
+     */
+    public NBTBuilder withDecodeCache(final NBTDecodeCache decodeCache) {
+        this.decodeCache = decodeCache;
+
+        return this;
+    }
+
+    /**
+     * Sets whether the built {@link org.terracottamc.taglib.nbt.io.NBTWriter} should write the canonical encoding
+     * in which equal data is always encoded to the same bytes
+     *
+     * @param canonicalEncoding whether the canonical encoding should be written
+     *
+     * @return a fresh {@link NBTBuilder}
+     */
+    public NBTBuilder withCanonicalEncoding(final boolean canonicalEncoding) {
+        this.canonicalEncoding = canonicalEncoding;
+
+        return this;
+    }
+
+    /**
+     * Sets whether the built {@link org.terracottamc.taglib.nbt.io.NBTReader} or
+     * {@link org.terracottamc.taglib.nbt.io.NBTWriter} should encode the keys with a key dictionary, which is no
+     * standard nbt and can only be used when both sides use it
+     *
+     * @param keyDictionary whether a key dictionary should be used
+     *
+     * @return a fresh {@link NBTBuilder}
+     */
+    public NBTBuilder withKeyDictionary(final boolean keyDictionary) {
+        this.keyDictionary = keyDictionary;
+
+        return this;
+    }
+
     /**
      * Builds a new {@link org.terracottamc.taglib.nbt.io.NBTReader} when the given data is valid
      *
@@ -61,7 +172,15 @@ public class NBTBuilder {
             throw new NBTBuilderException(NBTReader.class.getSimpleName());
         }
 
-        return new NBTReader(this.buffer, this.byteOrder);
+        final NBTReader nbtReader = new NBTReader(this.buffer, this.byteOrder);
+        nbtReader.setMaxDepth(this.maxDepth);
+        nbtReader.setMetrics(this.metrics);
+        nbtReader.setAllocationProfiler(this.allocationProfiler);
+        nbtReader.setCompoundInterner(this.compoundInterner);
+        nbtReader.setDecodeCache(this.decodeCache);
+        nbtReader.setKeyDictionary(this.keyDictionary);
+
+        return nbtReader;
     }
 
     public NBTWriter buildWriter() {
@@ -69,7 +188,28 @@ public class NBTBuilder {
             throw new NBTBuilderException(NBTWriter.class.getSimpleName());
         }
 
-        return new NBTWriter(this.buffer, this.byteOrder);
+        final NBTWriter nbtWriter = new NBTWriter(this.buffer, this.byteOrder);
+        nbtWriter.setMetrics(this.metrics);
+        nbtWriter.setCanonical(this.canonicalEncoding);
+        nbtWriter.setKeyDictionary(this.keyDictionary);
+
+        return nbtWriter;
+    }
+
+    /**
+     * Builds a new {@link org.terracottamc.taglib.nbt.io.SNBTParser} which writes with a writer of
+     * {@link NBTBuilder#buildWriter()} and follows the maximum depth of this builder when one is set
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.io.SNBTParser}
+     */
+    public SNBTParser buildSNBTParser() {
+        final SNBTParser snbtParser = new SNBTParser(this.buildWriter());
+
+        if (this.maxDepth != -1) {
+            snbtParser.setMaxDepth(this.maxDepth);
+        }
+
+        return snbtParser;
     }
 
     public NBTStream buildStream() {
@@ -0,0 +1,66 @@
+package org.terracottamc.taglib.metrics;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Receives the measurements of {@link org.terracottamc.taglib.nbt.io.NBTStreamReader} and
+ * {@link org.terracottamc.taglib.nbt.io.NBTWriter} instances. Implementations are invoked on the IO threads
+ * and should therefore be cheap and thread-safe
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public interface INBTMetrics {
+
+    /**
+     * This method gets invoked after a compound or list has been decoded
+     *
+     * @param bytes    which represents the amount of bytes that have been read
+     * @param maxDepth which is the deepest nesting level that has been reached
+     * @param nanos    which represents the time the decoding took or 0 when the time was not measured
+     */
+    void onDecode(final int bytes, final int maxDepth, final long nanos);
+
+    /**
+     * This method gets invoked after a compound or list has been encoded
+     *
+     * @param bytes which represents the amount of bytes that have been written
+     * @param nanos which represents the time the encoding took or 0 when the time was not measured
+     */
+    void onEncode(final int bytes, final long nanos);
+
+    /**
+     * This method gets invoked after a tag has been decoded
+     *
+     * @param tagId which is representative for the identifier of the decoded tag
+     */
+    void onTagDecoded(final byte tagId);
+
+    /**
+     * This method gets invoked whenever the allocation limit of a reader is consumed
+     *
+     * @param amount which represents the amount of bytes that have been charged
+     */
+    void onAllocation(final int amount);
+
+    /**
+     * This method gets invoked after the buffer of a writer has been resized
+     *
+     * @param oldCapacity which represents the capacity before the resize
+     * @param newCapacity which represents the capacity after the resize
+     */
+    void onBufferResize(final int oldCapacity, final int newCapacity);
+
+    /**
+     * Proofs whether the durations of decode and encode operations should be measured
+     *
+     * @return whether the time should be measured
+     */
+    boolean isMeasuringTime();
+}
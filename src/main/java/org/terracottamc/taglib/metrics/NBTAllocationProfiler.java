@@ -0,0 +1,146 @@
+package org.terracottamc.taglib.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Attributes the allocation cost which is charged by {@link org.terracottamc.taglib.nbt.io.NBTReader} instances
+ * and the time spent decoding to the nbt path of every value, e.g. {@code Level.Sections[].BlockStates}.
+ * One profiler can be shared by many readers to profile a whole corpus
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTAllocationProfiler {
+
+    private final Map<String, PathStatistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * Records the consumption of a value which has been read at the given path
+     *
+     * @param path  which represents the nbt path of the value
+     * @param bytes which is the allocation cost that has been charged for the value itself
+     * @param nanos which is the time that has been spent on reading the value itself
+     */
+    public void record(final String path, final long bytes, final long nanos) {
+        PathStatistics pathStatistics = this.statistics.get(path);
+
+        if (pathStatistics == null) {
+            pathStatistics = this.statistics.computeIfAbsent(path, key -> new PathStatistics());
+        }
+
+        pathStatistics.occurrences.increment();
+        pathStatistics.bytes.add(bytes);
+        pathStatistics.nanos.add(nanos);
+    }
+
+    /**
+     * Creates a report of every recorded path. The total consumption of a path includes the consumption of all
+     * of its children, so the paths are sorted by the amount of bytes their subtrees cost
+     *
+     * @return a fresh {@link java.util.List} of {@link NBTPathProfile} instances
+     */
+    public List<NBTPathProfile> createReport() {
+        final Map<String, long[]> totals = new HashMap<>();
+
+        for (final Map.Entry<String, PathStatistics> entry : this.statistics.entrySet()) {
+            final long bytes = entry.getValue().bytes.sum();
+            final long nanos = entry.getValue().nanos.sum();
+
+            String path = entry.getKey();
+
+            while (path != null) {
+                final long[] total = totals.computeIfAbsent(path, key -> new long[2]);
+                total[0] += bytes;
+                total[1] += nanos;
+
+                path = NBTAllocationProfiler.retrieveParentPath(path);
+            }
+        }
+
+        final List<NBTPathProfile> report = new ArrayList<>(this.statistics.size());
+
+        for (final Map.Entry<String, PathStatistics> entry : this.statistics.entrySet()) {
+            final PathStatistics pathStatistics = entry.getValue();
+            final long[] total = totals.get(entry.getKey());
+
+            report.add(new NBTPathProfile(entry.getKey(), pathStatistics.occurrences.sum(), pathStatistics.bytes.sum(),
+                    pathStatistics.nanos.sum(), total[0], total[1]));
+        }
+
+        report.sort((first, second) -> Long.compare(second.getTotalBytes(), first.getTotalBytes()));
+
+        return report;
+    }
+
+    /**
+     * Formats the given amount of the most expensive paths as a table which can be logged
+     *
+     * @param limit which represents the maximum amount of paths
+     *
+     * @return a fresh {@link String}
+     */
+    public String formatReport(final int limit) {
+        final StringBuilder builder = new StringBuilder(String.format("%14s %14s %14s %12s  %s%n",
+                "total bytes", "self bytes", "total micros", "occurrences", "path"));
+        final List<NBTPathProfile> report = this.createReport();
+
+        for (int i = 0; i < Math.min(limit, report.size()); i++) {
+            final NBTPathProfile profile = report.get(i);
+
+            builder.append(String.format("%14d %14d %14d %12d  %s%n", profile.getTotalBytes(), profile.getSelfBytes(),
+                    profile.getTotalNanos() / 1000, profile.getOccurrences(),
+                    profile.getPath().isEmpty() ? "<root>" : profile.getPath()));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Removes every recorded path
+     */
+    public void reset() {
+        this.statistics.clear();
+    }
+
+    /**
+     * Retrieves the path of the parent of the value at the given path.
+     * Keys which contain a dot or brackets themselves are attributed to the wrong parent
+     *
+     * @param path which is needed to find the parent path
+     *
+     * @return the parent path or null when the given path is the root
+     */
+    private static String retrieveParentPath(final String path) {
+        if (path.isEmpty()) {
+            return null;
+        }
+
+        if (path.endsWith("[]")) {
+            return path.substring(0, path.length() - 2);
+        }
+
+        final int separatorIndex = path.lastIndexOf('.');
+
+        return separatorIndex == -1 ? "" : path.substring(0, separatorIndex);
+    }
+
+    private static final class PathStatistics {
+
+        private final LongAdder occurrences = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+    }
+}
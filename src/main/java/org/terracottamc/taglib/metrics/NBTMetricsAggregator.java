@@ -0,0 +1,160 @@
+package org.terracottamc.taglib.metrics;
+
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * A thread-safe {@link INBTMetrics} which sums up every measurement with {@link java.util.concurrent.atomic.LongAdder}
+ * instances, so it can be shared by all readers and writers and scraped at any time
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTMetricsAggregator implements INBTMetrics {
+
+    private final LongAdder decodes = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    private final LongAdder encodes = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder bufferResizes = new LongAdder();
+    private final LongAdder[] decodedTags = new LongAdder[NBTConstants.TAG_INT_ARRAY + 1];
+
+    private final boolean measuringTime;
+
+    /**
+     * Creates a new {@link NBTMetricsAggregator} which measures the time of decode and encode operations
+     */
+    public NBTMetricsAggregator() {
+        this(true);
+    }
+
+    /**
+     * Creates a new {@link NBTMetricsAggregator}
+     *
+     * @param measuringTime whether the time of decode and encode operations should be measured
+     */
+    public NBTMetricsAggregator(final boolean measuringTime) {
+        this.measuringTime = measuringTime;
+
+        for (int i = 0; i < this.decodedTags.length; i++) {
+            this.decodedTags[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void onDecode(final int bytes, final int maxDepth, final long nanos) {
+        this.decodes.increment();
+        this.bytesRead.add(bytes);
+        this.decodeNanos.add(nanos);
+        this.maxDepth.accumulate(maxDepth);
+    }
+
+    @Override
+    public void onEncode(final int bytes, final long nanos) {
+        this.encodes.increment();
+        this.bytesWritten.add(bytes);
+        this.encodeNanos.add(nanos);
+    }
+
+    @Override
+    public void onTagDecoded(final byte tagId) {
+        if (tagId >= 0 && tagId < this.decodedTags.length) {
+            this.decodedTags[tagId].increment();
+        }
+    }
+
+    @Override
+    public void onAllocation(final int amount) {
+        this.allocatedBytes.add(amount);
+    }
+
+    @Override
+    public void onBufferResize(final int oldCapacity, final int newCapacity) {
+        this.bufferResizes.increment();
+    }
+
+    @Override
+    public boolean isMeasuringTime() {
+        return this.measuringTime;
+    }
+
+    public long getDecodes() {
+        return this.decodes.sum();
+    }
+
+    public long getBytesRead() {
+        return this.bytesRead.sum();
+    }
+
+    public long getDecodeNanos() {
+        return this.decodeNanos.sum();
+    }
+
+    public long getMaxDepth() {
+        return this.maxDepth.get();
+    }
+
+    public long getEncodes() {
+        return this.encodes.sum();
+    }
+
+    public long getBytesWritten() {
+        return this.bytesWritten.sum();
+    }
+
+    public long getEncodeNanos() {
+        return this.encodeNanos.sum();
+    }
+
+    public long getAllocatedBytes() {
+        return this.allocatedBytes.sum();
+    }
+
+    public long getBufferResizes() {
+        return this.bufferResizes.sum();
+    }
+
+    /**
+     * Retrieves how many tags with the given identifier have been decoded
+     *
+     * @param tagId which is representative for the identifier of the tag
+     *
+     * @return a fresh long
+     */
+    public long getDecodedTags(final byte tagId) {
+        return tagId >= 0 && tagId < this.decodedTags.length ? this.decodedTags[tagId].sum() : 0;
+    }
+
+    /**
+     * Resets every measurement of this {@link NBTMetricsAggregator}
+     */
+    public void reset() {
+        this.decodes.reset();
+        this.bytesRead.reset();
+        this.decodeNanos.reset();
+        this.maxDepth.reset();
+        this.encodes.reset();
+        this.bytesWritten.reset();
+        this.encodeNanos.reset();
+        this.allocatedBytes.reset();
+        this.bufferResizes.reset();
+
+        for (final LongAdder decodedTag : this.decodedTags) {
+            decodedTag.reset();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.terracottamc.taglib.metrics;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * A snapshot of the consumption which a {@link NBTAllocationProfiler} recorded for one nbt path
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTPathProfile {
+
+    private final String path;
+    private final long occurrences;
+    private final long selfBytes;
+    private final long selfNanos;
+    private final long totalBytes;
+    private final long totalNanos;
+
+    public NBTPathProfile(final String path, final long occurrences, final long selfBytes, final long selfNanos,
+                          final long totalBytes, final long totalNanos) {
+        this.path = path;
+        this.occurrences = occurrences;
+        this.selfBytes = selfBytes;
+        this.selfNanos = selfNanos;
+        this.totalBytes = totalBytes;
+        this.totalNanos = totalNanos;
+    }
+
+    /**
+     * Retrieves the nbt path of this {@link NBTPathProfile}
+     *
+     * @return a fresh {@link String} which is empty for the root
+     */
+    public String getPath() {
+        return this.path;
+    }
+
+    /**
+     * Retrieves how often a value has been read at the path of this {@link NBTPathProfile}
+     *
+     * @return a fresh long
+     */
+    public long getOccurrences() {
+        return this.occurrences;
+    }
+
+    /**
+     * Retrieves the allocation cost of the values at the path without their children
+     *
+     * @return a fresh long
+     */
+    public long getSelfBytes() {
+        return this.selfBytes;
+    }
+
+    /**
+     * Retrieves the time spent on the values at the path without their children
+     *
+     * @return a fresh long
+     */
+    public long getSelfNanos() {
+        return this.selfNanos;
+    }
+
+    /**
+     * Retrieves the allocation cost of the values at the path including their children
+     *
+     * @return a fresh long
+     */
+    public long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    /**
+     * Retrieves the time spent on the values at the path including their children
+     *
+     * @return a fresh long
+     */
+    public long getTotalNanos() {
+        return this.totalNanos;
+    }
+}
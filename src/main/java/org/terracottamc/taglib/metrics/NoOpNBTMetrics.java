@@ -0,0 +1,54 @@
+package org.terracottamc.taglib.metrics;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * The default {@link INBTMetrics} which discards every measurement
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public final class NoOpNBTMetrics implements INBTMetrics {
+
+    public static final NoOpNBTMetrics INSTANCE = new NoOpNBTMetrics();
+
+    private NoOpNBTMetrics() {
+
+    }
+
+    @Override
+    public void onDecode(final int bytes, final int maxDepth, final long nanos) {
+
+    }
+
+    @Override
+    public void onEncode(final int bytes, final long nanos) {
+
+    }
+
+    @Override
+    public void onTagDecoded(final byte tagId) {
+
+    }
+
+    @Override
+    public void onAllocation(final int amount) {
+
+    }
+
+    @Override
+    public void onBufferResize(final int oldCapacity, final int newCapacity) {
+
+    }
+
+    @Override
+    public boolean isMeasuringTime() {
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+package org.terracottamc.taglib.nbt.io;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * An {@link Appendable} which encodes every appended character as UTF-8 directly into a {@link io.netty.buffer.ByteBuf}
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+class ByteBufAppendable implements Appendable {
+
+    private final ByteBuf buffer;
+
+    private char highSurrogate = 0;
+
+    ByteBufAppendable(final ByteBuf buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public Appendable append(final CharSequence charSequence) {
+        return this.append(charSequence, 0, charSequence.length());
+    }
+
+    @Override
+    public Appendable append(final CharSequence charSequence, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            this.append(charSequence.charAt(i));
+        }
+
+        return this;
+    }
+
+    @Override
+    public Appendable append(final char c) {
+        if (this.highSurrogate != 0) {
+            final char high = this.highSurrogate;
+            this.highSurrogate = 0;
+
+            if (Character.isLowSurrogate(c)) {
+                final int codePoint = Character.toCodePoint(high, c);
+
+                this.buffer.writeByte(0xf0 | (codePoint >> 18));
+                this.buffer.writeByte(0x80 | ((codePoint >> 12) & 0x3f));
+                this.buffer.writeByte(0x80 | ((codePoint >> 6) & 0x3f));
+                this.buffer.writeByte(0x80 | (codePoint & 0x3f));
+
+                return this;
+            }
+
+            this.writeThreeBytes(high);
+        }
+
+        if (c < 0x80) {
+            this.buffer.writeByte(c);
+        } else if (c < 0x800) {
+            this.buffer.writeByte(0xc0 | (c >> 6));
+            this.buffer.writeByte(0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            this.highSurrogate = c;
+        } else {
+            this.writeThreeBytes(c);
+        }
+
+        return this;
+    }
+
+    private void writeThreeBytes(final char c) {
+        this.buffer.writeByte(0xe0 | (c >> 12));
+        this.buffer.writeByte(0x80 | ((c >> 6) & 0x3f));
+        this.buffer.writeByte(0x80 | (c & 0x3f));
+    }
+}
@@ -0,0 +1,166 @@
+package org.terracottamc.taglib.nbt.io;
+
+import io.netty.buffer.ByteBuf;
+import org.terracottamc.taglib.nbt.tag.NBTTagCompound;
+
+import java.nio.ByteOrder;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Reads a frame which has been written by a {@link org.terracottamc.taglib.nbt.io.NBTBatchWriter}. The header is
+ * validated when the reader is created and the reader index of the buffer is moved behind the frame. Every record
+ * can then be decoded by its index without decoding the other records, the offsets are read from the buffer and
+ * never copied. The buffer must not be released or modified while the records are read.
+ * A batch reader is not thread safe
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTBatchReader {
+
+    private final ByteBuf records;
+    private final ByteBuf table;
+    private final ByteOrder byteOrder;
+    private final int count;
+    private final NBTReader nbtReader;
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.nbt.io.NBTBatchReader} for the frame at the reader index of the
+     * given {@link io.netty.buffer.ByteBuf}
+     *
+     * @param buffer    which contains the frame
+     * @param byteOrder which represents the order of the bytes of the frame
+     *
+     * @throws java.lang.IllegalArgumentException when the header of the frame is malformed or the frame is truncated
+     */
+    public NBTBatchReader(final ByteBuf buffer, final ByteOrder byteOrder) {
+        final int readableBytes = buffer.readableBytes();
+
+        if (readableBytes < 4) {
+            throw new IllegalArgumentException("The batch frame is truncated");
+        }
+
+        final int frameStart = buffer.readerIndex();
+        final int count = byteOrder == ByteOrder.LITTLE_ENDIAN ? buffer.getIntLE(frameStart) :
+                buffer.getInt(frameStart);
+
+        if (count < 0 || count > (readableBytes >> 2) - 1) {
+            throw new IllegalArgumentException("The batch frame contains an invalid amount of records: " + count);
+        }
+
+        final int headerSize = (count + 1) << 2;
+
+        this.table = buffer.slice(frameStart + 4, count << 2);
+        this.byteOrder = byteOrder;
+        this.count = count;
+
+        int previousEndOffset = 0;
+
+        for (int i = 0; i < count; i++) {
+            final int endOffset = this.getEndOffset(i);
+
+            if (endOffset < previousEndOffset || endOffset > readableBytes - headerSize) {
+                throw new IllegalArgumentException("The batch frame contains an invalid offset at record " + i);
+            }
+
+            previousEndOffset = endOffset;
+        }
+
+        this.records = buffer.slice(frameStart + headerSize, previousEndOffset);
+        this.nbtReader = new NBTReader(this.records, byteOrder);
+
+        buffer.skipBytes(headerSize + previousEndOffset);
+    }
+
+    /**
+     * Retrieves the {@link org.terracottamc.taglib.nbt.io.NBTReader} which decodes the records
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.io.NBTReader}
+     */
+    public NBTReader getNBTReader() {
+        return this.nbtReader;
+    }
+
+    /**
+     * Retrieves the amount of records of the frame
+     *
+     * @return a fresh amount
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Decodes the record with the given index
+     *
+     * @param index which represents the index of the record
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}
+     */
+    public NBTTagCompound read(final int index) {
+        this.select(index);
+
+        return this.nbtReader.createCompound();
+    }
+
+    /**
+     * Retrieves the encoded bytes of the record with the given index without copying them
+     *
+     * @param index which represents the index of the record
+     *
+     * @return a fresh {@link io.netty.buffer.ByteBuf} which shares the content of the frame
+     */
+    public ByteBuf slice(final int index) {
+        this.checkIndex(index);
+
+        final int start = index == 0 ? 0 : this.getEndOffset(index - 1);
+
+        return this.records.slice(start, this.getEndOffset(index) - start);
+    }
+
+    /**
+     * Retrieves the amount of bytes of the record with the given index
+     *
+     * @param index which represents the index of the record
+     *
+     * @return a fresh amount of bytes
+     */
+    public int getRecordSize(final int index) {
+        this.checkIndex(index);
+
+        return this.getEndOffset(index) - (index == 0 ? 0 : this.getEndOffset(index - 1));
+    }
+
+    /**
+     * Limits the readable bytes of the records to the record with the given index, so that a malformed record
+     * cannot be read into the following one
+     *
+     * @param index which represents the index of the record
+     */
+    private void select(final int index) {
+        this.checkIndex(index);
+
+        final int start = index == 0 ? 0 : this.getEndOffset(index - 1);
+
+        this.records.setIndex(start, this.getEndOffset(index));
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= this.count) {
+            throw new IndexOutOfBoundsException("The record " + index + " does not exist, the frame contains " +
+                    this.count + " records");
+        }
+    }
+
+    private int getEndOffset(final int index) {
+        return this.byteOrder == ByteOrder.LITTLE_ENDIAN ? this.table.getIntLE(index << 2) :
+                this.table.getInt(index << 2);
+    }
+}
@@ -0,0 +1,124 @@
+package org.terracottamc.taglib.nbt.io;
+
+import io.netty.buffer.ByteBuf;
+import org.terracottamc.taglib.nbt.tag.NBTTagCompound;
+
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Writes many compounds, for example the block entities of a chunk, into one frame with one shared
+ * {@link org.terracottamc.taglib.nbt.io.NBTWriter}. A frame starts with the amount of records as int followed by
+ * the end offset of every record as int, both in the byte order of the writer. The offsets are relative to the
+ * first record, so record i spans from the end offset of record i - 1, or 0 for the first one, to its own end
+ * offset. The records follow the offsets and are encoded like {@link NBTWriter#writeTagCompound(NBTTagCompound)}
+ * does, so every record can be decoded on its own by a {@link org.terracottamc.taglib.nbt.io.NBTBatchReader}.
+ * The capacity of a frame is reserved once based on the average size of the records which have been written
+ * before. A batch writer is not thread safe
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTBatchWriter {
+
+    private static final int INITIAL_RECORD_SIZE = 64;
+
+    private final NBTWriter nbtWriter;
+
+    private long writtenRecords = 0L;
+    private long writtenRecordBytes = 0L;
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.nbt.io.NBTBatchWriter} with given
+     * {@link io.netty.buffer.ByteBuf} and {@link java.nio.ByteOrder}
+     *
+     * @param buffer    which receives the frames
+     * @param byteOrder which represents the order of the bytes of the frames
+     */
+    public NBTBatchWriter(final ByteBuf buffer, final ByteOrder byteOrder) {
+        this(new NBTWriter(buffer, byteOrder));
+    }
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.nbt.io.NBTBatchWriter} which writes its records with the given
+     * {@link org.terracottamc.taglib.nbt.io.NBTWriter} and its configuration
+     *
+     * @param nbtWriter which writes the records
+     */
+    public NBTBatchWriter(final NBTWriter nbtWriter) {
+        this.nbtWriter = nbtWriter;
+    }
+
+    /**
+     * Retrieves the {@link org.terracottamc.taglib.nbt.io.NBTWriter} which writes the records
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.io.NBTWriter}
+     */
+    public NBTWriter getNBTWriter() {
+        return this.nbtWriter;
+    }
+
+    /**
+     * Writes the given compounds as one frame
+     *
+     * @param compounds which should be written in the given order
+     *
+     * @return the amount of bytes of the frame
+     */
+    public int writeBatch(final List<? extends NBTTagCompound> compounds) {
+        final ByteBuf buffer = this.nbtWriter.getBuffer();
+        final boolean littleEndian = this.nbtWriter.getByteOrder() == ByteOrder.LITTLE_ENDIAN;
+        final int count = compounds.size();
+        final int headerSize = (count + 1) << 2;
+
+        this.nbtWriter.reserve((int) Math.min(Integer.MAX_VALUE, headerSize + count * this.getAverageRecordSize()));
+
+        final int frameStart = buffer.writerIndex();
+        final int tableIndex = frameStart + 4;
+        final int recordsStart = frameStart + headerSize;
+
+        if (littleEndian) {
+            buffer.writeIntLE(count);
+        } else {
+            buffer.writeInt(count);
+        }
+
+        // the end offsets are known after the records have been written
+        buffer.writerIndex(recordsStart);
+
+        for (int i = 0; i < count; i++) {
+            this.nbtWriter.writeTagCompound(compounds.get(i));
+
+            final int endOffset = buffer.writerIndex() - recordsStart;
+
+            if (littleEndian) {
+                buffer.setIntLE(tableIndex + (i << 2), endOffset);
+            } else {
+                buffer.setInt(tableIndex + (i << 2), endOffset);
+            }
+        }
+
+        this.writtenRecords += count;
+        this.writtenRecordBytes += buffer.writerIndex() - recordsStart;
+
+        return buffer.writerIndex() - frameStart;
+    }
+
+    /**
+     * Retrieves the average amount of bytes of the records which have been written by this batch writer
+     *
+     * @return a fresh amount of bytes
+     */
+    public long getAverageRecordSize() {
+        return this.writtenRecords == 0L ? NBTBatchWriter.INITIAL_RECORD_SIZE :
+                this.writtenRecordBytes / this.writtenRecords;
+    }
+}
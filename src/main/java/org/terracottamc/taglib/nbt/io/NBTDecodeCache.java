@@ -0,0 +1,360 @@
+package org.terracottamc.taglib.nbt.io;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.terracottamc.taglib.nbt.tag.NBTTagCompound;
+import org.terracottamc.taglib.nbt.tag.NBTTagList;
+import org.terracottamc.taglib.util.allocation.AllocationLimitReachedException;
+import org.terracottamc.taglib.util.hash.XXHash64;
+
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Caches decoded compounds by the xxHash of their encoded bytes, so that data which is received again, for example
+ * the nbt of items and block entities, resolves to the compound which has been decoded before instead of being
+ * decoded again. Cached compounds and all compounds and lists they contain are immutable and shared between all
+ * readers which use the cache, their arrays are retrieved as copies. A hit is charged against the allocation limit
+ * of the reader like decoding the compound was, a hit which exceeds the allocation limit or the maximum depth of the
+ * reader is decoded again, so that the reader reports it as usual. Compounds which are nested more than 512 levels
+ * deep are neither cached nor made immutable.
+ * The cache is bounded by the estimated retained size of its compounds and evicts the least recently used ones
+ * first. Without verification a hit is only proven by the 64-bit hash of the bytes, with verification the bytes are
+ * stored as well and compared on every hit. A cache may be shared between threads
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTDecodeCache {
+
+    /**
+     * The deepest nesting level of a compound which is cached. Freezing and weighing a compound recurse on the
+     * thread stack, unlike decoding it, so deeper compounds are handed out as they have been decoded
+     */
+    private static final int MAX_CACHED_DEPTH = 512;
+
+    private final long maxWeight;
+    private final boolean verifyingBytes;
+    private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+
+    private long weight = 0L;
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.nbt.io.NBTDecodeCache} which retains up to 16 MiB and does not
+     * verify hits
+     */
+    public NBTDecodeCache() {
+        this(16L << 20, false);
+    }
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.nbt.io.NBTDecodeCache} with given maximum weight
+     *
+     * @param maxWeight      which represents the maximum amount of bytes the cached compounds may retain
+     * @param verifyingBytes whether the encoded bytes should be stored and compared on every hit
+     */
+    public NBTDecodeCache(final long maxWeight, final boolean verifyingBytes) {
+        if (maxWeight <= 0L) {
+            throw new IllegalArgumentException("The maximum weight has to be positive");
+        }
+
+        this.maxWeight = maxWeight;
+        this.verifyingBytes = verifyingBytes;
+    }
+
+    /**
+     * Decodes the compound at the reader index of the given {@link org.terracottamc.taglib.nbt.io.NBTReader} or
+     * resolves it to the shared compound which has been decoded from the same bytes before. The reader index is
+     * moved behind the compound in both cases
+     *
+     * @param nbtReader which reads the compound
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} which is immutable unless it is too
+     * deeply nested to be cached
+     */
+    public NBTTagCompound decode(final NBTReader nbtReader) {
+        final int length = nbtReader.measureCompound();
+
+        if (length == -1) {
+            // malformed data is reported by the reader as usual and never cached
+            return nbtReader.decodeCompound();
+        }
+
+        final ByteBuf buffer = nbtReader.getBuffer();
+        final int index = buffer.readerIndex();
+        final long hash = XXHash64.hash(buffer, index, length,
+                NBTDecodeCache.seed(nbtReader.getByteOrder(), nbtReader.isUsingVarInt()));
+        final Entry entry;
+
+        synchronized (this.entries) {
+            entry = this.entries.get(hash);
+        }
+
+        if (entry != null && entry.length == length && (entry.bytes == null ||
+                NBTDecodeCache.matches(buffer, index, entry.bytes))) {
+            if (!NBTDecodeCache.isWithinLimits(nbtReader, entry.allocatedBytes, entry.depth)) {
+                return nbtReader.decodeCompound();
+            }
+
+            try {
+                nbtReader.doAlterAllocationLimit((int) entry.allocatedBytes);
+            } catch (final AllocationLimitReachedException e) {
+                e.printStackTrace();
+            }
+
+            this.hits.increment();
+
+            buffer.skipBytes(length);
+
+            return entry.nbtTagCompound;
+        }
+
+        if (entry != null) {
+            this.collisions.increment();
+        }
+
+        this.misses.increment();
+
+        final byte[] bytes = this.verifyingBytes ? ByteBufUtil.getBytes(buffer, index, length) : null;
+        final int allocationLimit = nbtReader.getAllocationLimit();
+        final long startAllocatedBytes = nbtReader.getAllocatedBytes();
+        final NBTTagCompound nbtTagCompound = nbtReader.decodeCompound();
+        final long allocatedBytes = nbtReader.getAllocatedBytes() - startAllocatedBytes;
+        final int depth = nbtReader.getMaxDepthReached();
+
+        if (depth > NBTDecodeCache.MAX_CACHED_DEPTH) {
+            return nbtTagCompound;
+        }
+
+        NBTDecodeCache.makeImmutable(nbtTagCompound);
+
+        // a compound which has been decoded beyond the allocation limit is reported by the reader and never cached
+        if ((allocationLimit == -1 || allocatedBytes <= allocationLimit) && allocatedBytes <= Integer.MAX_VALUE) {
+            this.put(hash, new Entry(nbtTagCompound, length, bytes, allocatedBytes, depth));
+        }
+
+        return nbtTagCompound;
+    }
+
+    /**
+     * Retrieves the amount of compounds which have been resolved to a cached compound
+     *
+     * @return a fresh amount
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Retrieves the amount of compounds which had to be decoded
+     *
+     * @return a fresh amount
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Retrieves the ratio of hits to all lookups
+     *
+     * @return a fresh ratio between 0 and 1
+     */
+    public double getHitRate() {
+        final long hits = this.hits.sum();
+        final long lookups = hits + this.misses.sum();
+
+        return lookups == 0L ? 0D : (double) hits / lookups;
+    }
+
+    /**
+     * Retrieves the amount of compounds which have been evicted to stay within the maximum weight
+     *
+     * @return a fresh amount
+     */
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Retrieves the amount of lookups whose hash matched a cached compound of other bytes
+     *
+     * @return a fresh amount
+     */
+    public long getCollisions() {
+        return this.collisions.sum();
+    }
+
+    /**
+     * Retrieves the amount of compounds which are currently cached
+     *
+     * @return a fresh amount
+     */
+    public int getSize() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * Retrieves the estimated amount of bytes the cached compounds and stored bytes retain
+     *
+     * @return a fresh amount of bytes
+     */
+    public long getWeight() {
+        synchronized (this.entries) {
+            return this.weight;
+        }
+    }
+
+    /**
+     * Retrieves the maximum amount of bytes the cached compounds may retain
+     *
+     * @return a fresh amount of bytes
+     */
+    public long getMaxWeight() {
+        return this.maxWeight;
+    }
+
+    /**
+     * Proofs whether the encoded bytes are compared on every hit
+     *
+     * @return whether hits are verified
+     */
+    public boolean isVerifyingBytes() {
+        return this.verifyingBytes;
+    }
+
+    /**
+     * Forgets all cached compounds and resets the counters. Compounds which have been cached before stay immutable
+     */
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+
+            this.weight = 0L;
+        }
+
+        this.hits.reset();
+        this.misses.reset();
+        this.evictions.reset();
+        this.collisions.reset();
+    }
+
+    private void put(final long hash, final Entry entry) {
+        if (entry.weight > this.maxWeight) {
+            return;
+        }
+
+        synchronized (this.entries) {
+            final Entry previousEntry = this.entries.put(hash, entry);
+
+            if (previousEntry != null) {
+                this.weight -= previousEntry.weight;
+            }
+
+            this.weight += entry.weight;
+
+            final Iterator<Entry> iterator = this.entries.values().iterator();
+
+            while (this.weight > this.maxWeight && iterator.hasNext()) {
+                this.weight -= iterator.next().weight;
+
+                iterator.remove();
+
+                this.evictions.increment();
+            }
+        }
+    }
+
+    private static boolean matches(final ByteBuf buffer, final int index, final byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.getByte(index + i) != bytes[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Proofs whether a compound with the given costs can be handed out to the given reader
+     *
+     * @param nbtReader      which reads the compound
+     * @param allocatedBytes which have been charged when the compound has been decoded
+     * @param depth          which represents the amount of nested compounds and lists of the compound
+     *
+     * @return whether the remaining allocation limit and the maximum depth of the reader are not exceeded
+     */
+    private static boolean isWithinLimits(final NBTReader nbtReader, final long allocatedBytes, final int depth) {
+        final int allocationLimit = nbtReader.getAllocationLimit();
+        final int maxDepth = nbtReader.getMaxDepth();
+
+        return (allocationLimit == -1 || allocatedBytes <= allocationLimit) && (maxDepth == -1 || depth <= maxDepth);
+    }
+
+    /**
+     * Makes the given compound and all compounds and lists it contains immutable. The recursion is bounded by
+     * {@link NBTDecodeCache#MAX_CACHED_DEPTH}
+     *
+     * @param value which should be made immutable
+     */
+    private static void makeImmutable(final Object value) {
+        if (value instanceof NBTTagCompound) {
+            final NBTTagCompound nbtTagCompound = (NBTTagCompound) value;
+
+            for (int i = 0; i < nbtTagCompound.size(); i++) {
+                NBTDecodeCache.makeImmutable(nbtTagCompound.getValueAt(i));
+            }
+
+            nbtTagCompound.makeImmutable();
+        } else if (value instanceof List) {
+            for (final Object element : (List<?>) value) {
+                NBTDecodeCache.makeImmutable(element);
+            }
+
+            if (value instanceof NBTTagList) {
+                ((NBTTagList) value).makeImmutable();
+            }
+        }
+    }
+
+    private static long seed(final ByteOrder byteOrder, final boolean useVarInt) {
+        return (byteOrder == ByteOrder.LITTLE_ENDIAN ? 1L : 0L) | (useVarInt ? 2L : 0L);
+    }
+
+    private static final class Entry {
+
+        private final NBTTagCompound nbtTagCompound;
+        private final int length;
+        private final byte[] bytes;
+        private final long allocatedBytes;
+        private final int depth;
+        private final long weight;
+
+        private Entry(final NBTTagCompound nbtTagCompound, final int length, final byte[] bytes,
+                      final long allocatedBytes, final int depth) {
+            this.nbtTagCompound = nbtTagCompound;
+            this.length = length;
+            this.bytes = bytes;
+            this.allocatedBytes = allocatedBytes;
+            this.depth = depth;
+            this.weight = nbtTagCompound.retainedSize() + (bytes == null ? 0L : bytes.length);
+        }
+    }
+}
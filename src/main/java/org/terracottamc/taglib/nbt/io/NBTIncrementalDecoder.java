@@ -0,0 +1,518 @@
+package org.terracottamc.taglib.nbt.io;
+
+import io.netty.buffer.ByteBuf;
+import org.terracottamc.taglib.nbt.tag.NBTTagCompound;
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+import org.terracottamc.taglib.util.nbt.NBTDepthLimitReachedException;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Decodes root compounds from a buffer which is filled incrementally, e.g. the cumulation buffer of a Netty
+ * {@code ByteToMessageDecoder}. The structure of the document is scanned as far as the available bytes allow and
+ * the scan position is kept across calls, so every byte is only scanned once. When the document is complete it is
+ * decoded with a {@link NBTReader} in one go
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTIncrementalDecoder {
+
+    private static final int PHASE_ROOT_TAG = 0;
+    private static final int PHASE_ROOT_NAME = 1;
+    private static final int PHASE_NEXT = 2;
+    private static final int PHASE_ENTRY_NAME = 3;
+    private static final int PHASE_VALUE = 4;
+    private static final int PHASE_INT_ARRAY_ELEMENTS = 5;
+
+    private static final int INITIAL_FRAME_CAPACITY = 16;
+    private static final int MAX_VARINT_LENGTH = 10;
+
+    private final ByteOrder byteOrder;
+
+    private boolean useVarInt = false;
+    private int allocationLimit = -1;
+    private int maxDepth = -1;
+    private int maxDocumentSize = -1;
+
+    private int phase = NBTIncrementalDecoder.PHASE_ROOT_TAG;
+    private int scanned = 0;
+    private byte pendingTagId = NBTConstants.TAG_END;
+    private int pendingElements = 0;
+
+    private byte[] frameTagIds = new byte[NBTIncrementalDecoder.INITIAL_FRAME_CAPACITY];
+    private byte[] frameElementTagIds = new byte[NBTIncrementalDecoder.INITIAL_FRAME_CAPACITY];
+    private int[] frameRemaining = new int[NBTIncrementalDecoder.INITIAL_FRAME_CAPACITY];
+    private int depth = 0;
+
+    /**
+     * Creates a new {@link NBTIncrementalDecoder} with given {@link java.nio.ByteOrder}
+     *
+     * @param byteOrder which represents the order of the bytes to handle
+     */
+    public NBTIncrementalDecoder(final ByteOrder byteOrder) {
+        this.byteOrder = byteOrder;
+    }
+
+    /**
+     * Updates whether {@link org.terracottamc.taglib.util.VarIntUtil} encoded numbers are expected
+     *
+     * @param useVarInt which should be updated
+     */
+    public void setUseVarInt(final boolean useVarInt) {
+        this.useVarInt = useVarInt;
+    }
+
+    /**
+     * Set the allocation limit which is used to decode every complete document. The reader charges every encoded
+     * byte at least once, so documents whose scanned or declared size exceeds the limit are rejected while they are
+     * scanned instead of being buffered until they are complete
+     *
+     * @param allocationLimit which should be set
+     */
+    public void setAllocationLimit(final int allocationLimit) {
+        this.allocationLimit = allocationLimit;
+    }
+
+    /**
+     * Set the maximum amount of encoded bytes a document may have. Lengths are checked against it as soon as they
+     * have been scanned, so a peer cannot make the received bytes grow beyond it by declaring a long value
+     *
+     * @param maxDocumentSize which should be set or -1 when the size should not be limited
+     */
+    public void setMaxDocumentSize(final int maxDocumentSize) {
+        this.maxDocumentSize = maxDocumentSize;
+    }
+
+    /**
+     * Set the maximum amount of nested compounds and lists a document may contain
+     *
+     * @param maxDepth which should be set or -1 when the depth should not be limited
+     */
+    public void setMaxDepth(final int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Tries to decode the next root compound of the given buffer. The reader index of the buffer is only moved
+     * when a complete document has been decoded
+     *
+     * @param buffer which contains the bytes that have been received so far
+     *
+     * @return the decoded {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} or null when more bytes are needed
+     *
+     * @throws java.io.IOException when the received data is no valid NBT
+     */
+    public NBTTagCompound decode(final ByteBuf buffer) throws IOException {
+        if (!this.scan(buffer)) {
+            return null;
+        }
+
+        final int length = this.scanned;
+
+        this.reset();
+
+        final NBTReader nbtReader = new NBTReader(buffer.readSlice(length), this.byteOrder);
+        nbtReader.setUseVarInt(this.useVarInt);
+        nbtReader.setAllocationLimit(this.allocationLimit);
+        nbtReader.setMaxDepth(this.maxDepth);
+
+        return nbtReader.createCompound();
+    }
+
+    /**
+     * Discards the progress of the current document
+     */
+    public void reset() {
+        this.phase = NBTIncrementalDecoder.PHASE_ROOT_TAG;
+        this.scanned = 0;
+        this.pendingTagId = NBTConstants.TAG_END;
+        this.pendingElements = 0;
+        this.depth = 0;
+    }
+
+    /**
+     * Scans the structure of the current document as far as possible
+     *
+     * @param buffer which contains the bytes that have been received so far
+     *
+     * @return whether the document is complete
+     *
+     * @throws java.io.IOException when the received data is no valid NBT
+     */
+    private boolean scan(final ByteBuf buffer) throws IOException {
+        final int start = buffer.readerIndex();
+        final int end = buffer.writerIndex();
+
+        while (true) {
+            this.checkDocumentSize(this.scanned);
+
+            final int position = start + this.scanned;
+
+            switch (this.phase) {
+                case NBTIncrementalDecoder.PHASE_ROOT_TAG: {
+                    if (position >= end) {
+                        return false;
+                    }
+
+                    if (buffer.getByte(position) != NBTConstants.TAG_COMPOUND) {
+                        throw new IOException("The NBT data is invalid: The TagCompound was not found");
+                    }
+
+                    this.scanned++;
+                    this.phase = NBTIncrementalDecoder.PHASE_ROOT_NAME;
+                    break;
+                }
+                case NBTIncrementalDecoder.PHASE_ROOT_NAME: {
+                    final int size = this.measureString(buffer, position, end);
+
+                    if (size == -1) {
+                        return false;
+                    }
+
+                    this.scanned += size;
+                    this.pushFrame(NBTConstants.TAG_COMPOUND, NBTConstants.TAG_END, 0);
+                    this.phase = NBTIncrementalDecoder.PHASE_NEXT;
+                    break;
+                }
+                case NBTIncrementalDecoder.PHASE_NEXT: {
+                    if (this.depth == 0) {
+                        return true;
+                    }
+
+                    final int top = this.depth - 1;
+
+                    if (this.frameTagIds[top] == NBTConstants.TAG_COMPOUND) {
+                        if (position >= end) {
+                            return false;
+                        }
+
+                        final byte tagId = buffer.getByte(position);
+
+                        this.scanned++;
+
+                        if (tagId == NBTConstants.TAG_END) {
+                            this.depth--;
+                        } else {
+                            this.pendingTagId = tagId;
+                            this.phase = NBTIncrementalDecoder.PHASE_ENTRY_NAME;
+                        }
+                    } else if (this.frameRemaining[top] <= 0) {
+                        this.depth--;
+                    } else {
+                        this.frameRemaining[top]--;
+                        this.pendingTagId = this.frameElementTagIds[top];
+                        this.phase = NBTIncrementalDecoder.PHASE_VALUE;
+                    }
+                    break;
+                }
+                case NBTIncrementalDecoder.PHASE_ENTRY_NAME: {
+                    final int size = this.measureString(buffer, position, end);
+
+                    if (size == -1) {
+                        return false;
+                    }
+
+                    this.scanned += size;
+                    this.phase = NBTIncrementalDecoder.PHASE_VALUE;
+                    break;
+                }
+                case NBTIncrementalDecoder.PHASE_VALUE: {
+                    if (!this.scanValue(buffer, position, end)) {
+                        return false;
+                    }
+                    break;
+                }
+                case NBTIncrementalDecoder.PHASE_INT_ARRAY_ELEMENTS: {
+                    if (this.pendingElements <= 0) {
+                        this.phase = NBTIncrementalDecoder.PHASE_NEXT;
+                        break;
+                    }
+
+                    final int size = this.measureVarInt(buffer, position, end);
+
+                    if (size == -1) {
+                        return false;
+                    }
+
+                    this.scanned += size;
+                    this.pendingElements--;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans the value of the pending tag identifier which starts at the given position
+     *
+     * @param buffer   which contains the bytes that have been received so far
+     * @param position which is the index of the first byte of the value
+     * @param end      which represents the exclusive end of the received bytes
+     *
+     * @return whether the value could be scanned
+     *
+     * @throws java.io.IOException when the received data is no valid NBT
+     */
+    private boolean scanValue(final ByteBuf buffer, final int position, final int end) throws IOException {
+        final int size;
+
+        switch (this.pendingTagId) {
+            case NBTConstants.TAG_BYTE:
+                size = position + 1 <= end ? 1 : -1;
+                break;
+            case NBTConstants.TAG_SHORT:
+                size = position + 2 <= end ? 2 : -1;
+                break;
+            case NBTConstants.TAG_INT:
+                size = this.useVarInt ? this.measureVarInt(buffer, position, end) : (position + 4 <= end ? 4 : -1);
+                break;
+            case NBTConstants.TAG_LONG:
+                size = this.useVarInt ? this.measureVarInt(buffer, position, end) : (position + 8 <= end ? 8 : -1);
+                break;
+            case NBTConstants.TAG_FLOAT:
+                size = position + 4 <= end ? 4 : -1;
+                break;
+            case NBTConstants.TAG_DOUBLE:
+                size = position + 8 <= end ? 8 : -1;
+                break;
+            case NBTConstants.TAG_STRING:
+                size = this.measureString(buffer, position, end);
+                break;
+            case NBTConstants.TAG_BYTE_ARRAY: {
+                final int prefixSize = this.measureInt(buffer, position, end);
+
+                if (prefixSize == -1) {
+                    return false;
+                }
+
+                final int length = this.retrieveLength(buffer, position, prefixSize);
+
+                this.checkDocumentSize((long) this.scanned + prefixSize + length);
+
+                size = position + prefixSize + length <= end ? prefixSize + length : -1;
+                break;
+            }
+            case NBTConstants.TAG_INT_ARRAY: {
+                final int prefixSize = this.measureInt(buffer, position, end);
+
+                if (prefixSize == -1) {
+                    return false;
+                }
+
+                final int length = this.retrieveLength(buffer, position, prefixSize);
+
+                // every varint element occupies at least one byte
+                this.checkDocumentSize((long) this.scanned + prefixSize + (this.useVarInt ? length : length * 4L));
+
+                if (this.useVarInt) {
+                    this.scanned += prefixSize;
+                    this.pendingElements = length;
+                    this.phase = NBTIncrementalDecoder.PHASE_INT_ARRAY_ELEMENTS;
+
+                    return true;
+                }
+
+                final long arraySize = prefixSize + (length * 4L);
+
+                size = position + arraySize <= end ? (int) arraySize : -1;
+                break;
+            }
+            case NBTConstants.TAG_LIST: {
+                if (position + 1 > end) {
+                    return false;
+                }
+
+                final int prefixSize = this.measureInt(buffer, position + 1, end);
+
+                if (prefixSize == -1) {
+                    return false;
+                }
+
+                final byte elementTagId = buffer.getByte(position);
+                final int length = this.retrieveLength(buffer, position + 1, prefixSize);
+
+                if (elementTagId < NBTConstants.TAG_END || elementTagId > NBTConstants.TAG_INT_ARRAY) {
+                    throw new IOException("The NBT data is invalid: The tag " + elementTagId + " is unknown");
+                }
+
+                // every element occupies at least one byte
+                this.checkDocumentSize((long) this.scanned + 1 + prefixSize +
+                        (elementTagId == NBTConstants.TAG_END ? 0 : length));
+
+                this.scanned += 1 + prefixSize;
+                this.pushFrame(NBTConstants.TAG_LIST, elementTagId, elementTagId == NBTConstants.TAG_END ? 0 : length);
+                this.phase = NBTIncrementalDecoder.PHASE_NEXT;
+
+                return true;
+            }
+            case NBTConstants.TAG_COMPOUND:
+                this.pushFrame(NBTConstants.TAG_COMPOUND, NBTConstants.TAG_END, 0);
+                this.phase = NBTIncrementalDecoder.PHASE_NEXT;
+
+                return true;
+            default:
+                throw new IOException("The NBT data is invalid: The tag " + this.pendingTagId + " is unknown");
+        }
+
+        if (size == -1) {
+            return false;
+        }
+
+        this.scanned += size;
+        this.phase = NBTIncrementalDecoder.PHASE_NEXT;
+
+        return true;
+    }
+
+    private void pushFrame(final byte tagId, final byte elementTagId, final int remaining) {
+        if (this.maxDepth != -1 && this.depth >= this.maxDepth) {
+            throw new NBTDepthLimitReachedException(this.maxDepth);
+        }
+
+        if (this.depth == this.frameTagIds.length) {
+            final int newLength = this.frameTagIds.length << 1;
+
+            this.frameTagIds = Arrays.copyOf(this.frameTagIds, newLength);
+            this.frameElementTagIds = Arrays.copyOf(this.frameElementTagIds, newLength);
+            this.frameRemaining = Arrays.copyOf(this.frameRemaining, newLength);
+        }
+
+        this.frameTagIds[this.depth] = tagId;
+        this.frameElementTagIds[this.depth] = elementTagId;
+        this.frameRemaining[this.depth] = remaining;
+        this.depth++;
+    }
+
+    /**
+     * Measures the string which starts at the given position
+     *
+     * @return the size of the string including its length prefix or -1 when it is incomplete
+     */
+    private int measureString(final ByteBuf buffer, final int position, final int end) throws IOException {
+        final int prefixSize;
+        final int length;
+
+        if (this.useVarInt) {
+            prefixSize = this.measureVarInt(buffer, position, end);
+
+            if (prefixSize == -1) {
+                return -1;
+            }
+
+            length = (int) this.readRawVarLong(buffer, position);
+        } else {
+            if (position + 2 > end) {
+                return -1;
+            }
+
+            prefixSize = 2;
+            length = this.byteOrder == ByteOrder.LITTLE_ENDIAN ? buffer.getShortLE(position) : buffer.getShort(position);
+        }
+
+        if (length < 0) {
+            throw new IOException("The NBT data is invalid: A negative String length was found");
+        }
+
+        this.checkDocumentSize((long) this.scanned + prefixSize + length);
+
+        return position + prefixSize + length <= end ? prefixSize + length : -1;
+    }
+
+    /**
+     * Measures the int which starts at the given position
+     *
+     * @return the size of the int or -1 when it is incomplete
+     */
+    private int measureInt(final ByteBuf buffer, final int position, final int end) throws IOException {
+        if (this.useVarInt) {
+            return this.measureVarInt(buffer, position, end);
+        }
+
+        return position + 4 <= end ? 4 : -1;
+    }
+
+    /**
+     * Reads a length which has been measured by {@link NBTIncrementalDecoder#measureInt(ByteBuf, int, int)}
+     *
+     * @return the length which is never negative
+     */
+    private int retrieveLength(final ByteBuf buffer, final int position, final int prefixSize) throws IOException {
+        final int length;
+
+        if (this.useVarInt) {
+            final long value = this.readRawVarLong(buffer, position);
+
+            length = (int) (value >> 1) ^ -((int) (value & 1));
+        } else if (prefixSize == 4) {
+            length = this.byteOrder == ByteOrder.LITTLE_ENDIAN ? buffer.getIntLE(position) : buffer.getInt(position);
+        } else {
+            length = 0;
+        }
+
+        if (length < 0) {
+            throw new IOException("The NBT data is invalid: A negative length was found");
+        }
+
+        return length;
+    }
+
+    /**
+     * Proofs whether the given size of the current document is within the maximum document size and the allocation
+     * limit, which the reader would exceed since it charges every encoded byte at least once
+     *
+     * @param documentSize which represents the amount of bytes the document has or declares so far
+     *
+     * @throws java.io.IOException when the document is too big
+     */
+    private void checkDocumentSize(final long documentSize) throws IOException {
+        if ((this.maxDocumentSize != -1 && documentSize > this.maxDocumentSize) ||
+                (this.allocationLimit != -1 && documentSize > this.allocationLimit)) {
+            throw new IOException("The NBT data is invalid: The document declares at least " + documentSize +
+                    " bytes which exceeds the limit");
+        }
+    }
+
+    /**
+     * Measures the variable length number which starts at the given position
+     *
+     * @return the amount of bytes of the number or -1 when it is incomplete
+     */
+    private int measureVarInt(final ByteBuf buffer, final int position, final int end) throws IOException {
+        for (int i = 0; i < NBTIncrementalDecoder.MAX_VARINT_LENGTH; i++) {
+            if (position + i >= end) {
+                return -1;
+            }
+
+            if ((buffer.getByte(position + i) & 0x80) == 0) {
+                return i + 1;
+            }
+        }
+
+        throw new IOException("The NBT data is invalid: A VarInt is too big");
+    }
+
+    private long readRawVarLong(final ByteBuf buffer, final int position) {
+        long value = 0L;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = buffer.getByte(position + (shift / 7));
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+}
@@ -0,0 +1,759 @@
+package org.terracottamc.taglib.nbt.io;
+
+import io.netty.buffer.ByteBuf;
+import org.terracottamc.taglib.util.BufferUtil;
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Changes single values of encoded nbt data inside a {@link io.netty.buffer.ByteBuf} without decoding it.
+ * A path consists of the names of nested compound entries which are separated by dots, every name may be followed
+ * by indices in brackets which select an element of a list, a byte array or an int array, for example
+ * {@code Inventory[0].Count} or {@code Pos[1]}.
+ * Values of a fixed width are overwritten in place. Varints and strings whose encoded size changes are spliced in
+ * by moving only the bytes which follow them, the encoded data does not contain any length which would have to be
+ * updated. The located value always starts at or after the reader index of the buffer
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTPatcher {
+
+    private static final int INITIAL_FRAME_CAPACITY = 16;
+    private static final int MAX_VAR_INT_SIZE = 5;
+    private static final int MAX_VAR_LONG_SIZE = 10;
+
+    private final ByteBuf buffer;
+    private final ByteOrder byteOrder;
+    private final byte[] encodedValue = new byte[NBTPatcher.MAX_VAR_LONG_SIZE];
+
+    private boolean useVarInt = false;
+    private byte locatedTagId = NBTConstants.TAG_END;
+    private int locatedSize = 0;
+    private int lengthSize = 0;
+
+    private byte[] frameTagIds = new byte[NBTPatcher.INITIAL_FRAME_CAPACITY];
+    private byte[] frameElementTagIds = new byte[NBTPatcher.INITIAL_FRAME_CAPACITY];
+    private int[] frameRemaining = new int[NBTPatcher.INITIAL_FRAME_CAPACITY];
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.nbt.io.NBTPatcher} with given
+     * {@link io.netty.buffer.ByteBuf} and {@link java.nio.ByteOrder}
+     *
+     * @param buffer    which contains the encoded data
+     * @param byteOrder which represents the order of the bytes of the encoded data
+     */
+    public NBTPatcher(final ByteBuf buffer, final ByteOrder byteOrder) {
+        this.buffer = buffer;
+        this.byteOrder = byteOrder;
+    }
+
+    /**
+     * Updates whether the encoded data uses varints
+     *
+     * @param useVarInt which should be updated
+     */
+    public void setUseVarInt(final boolean useVarInt) {
+        this.useVarInt = useVarInt;
+    }
+
+    /**
+     * Proofs whether the encoded data uses varints
+     *
+     * @return whether varints are used
+     */
+    public boolean isUsingVarInt() {
+        return this.useVarInt;
+    }
+
+    /**
+     * Locates the value at the given path
+     *
+     * @param path which leads to the value
+     *
+     * @return the index of the encoded value or -1 when the path does not exist
+     *
+     * @throws java.lang.IllegalArgumentException when the path is malformed or the encoded data is truncated
+     */
+    public int locate(final String path) {
+        final int end = this.buffer.writerIndex();
+        int position = this.buffer.readerIndex();
+        byte tagId = this.byteAt(position++);
+
+        position = this.skipString(position);
+
+        int segmentStart = 0;
+
+        while (segmentStart < path.length()) {
+            int segmentEnd = segmentStart;
+
+            while (segmentEnd < path.length() && path.charAt(segmentEnd) != '.' && path.charAt(segmentEnd) != '[') {
+                segmentEnd++;
+            }
+
+            if (segmentEnd > segmentStart) {
+                if (tagId != NBTConstants.TAG_COMPOUND) {
+                    return -1;
+                }
+
+                position = this.findEntry(position, path.substring(segmentStart, segmentEnd)
+                        .getBytes(StandardCharsets.UTF_8));
+
+                if (position == -1) {
+                    return -1;
+                }
+
+                tagId = this.locatedTagId;
+            }
+
+            while (segmentEnd < path.length() && path.charAt(segmentEnd) == '[') {
+                final int closingBracket = path.indexOf(']', segmentEnd);
+
+                if (closingBracket == -1) {
+                    throw new IllegalArgumentException("The path " + path + " contains an unclosed bracket");
+                }
+
+                final int index;
+
+                try {
+                    index = Integer.parseInt(path.substring(segmentEnd + 1, closingBracket));
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException("The path " + path + " contains an invalid index", e);
+                }
+
+                position = this.findElement(tagId, position, index);
+
+                if (position == -1) {
+                    return -1;
+                }
+
+                tagId = this.locatedTagId;
+                segmentEnd = closingBracket + 1;
+            }
+
+            if (segmentEnd < path.length() && path.charAt(segmentEnd) != '.') {
+                throw new IllegalArgumentException("The path " + path + " is malformed at index " + segmentEnd);
+            }
+
+            segmentStart = segmentEnd + 1;
+        }
+
+        this.locatedTagId = tagId;
+        this.locatedSize = this.skipValue(tagId, position) - position;
+
+        if (position + this.locatedSize > end) {
+            throw new IllegalArgumentException("The encoded data is truncated");
+        }
+
+        return position;
+    }
+
+    /**
+     * Retrieves the tag identifier of the value which has been located last
+     *
+     * @return a fresh byte
+     */
+    public byte getLocatedTagId() {
+        return this.locatedTagId;
+    }
+
+    /**
+     * Retrieves the amount of bytes of the encoded value which has been located last
+     *
+     * @return a fresh amount of bytes
+     */
+    public int getLocatedSize() {
+        return this.locatedSize;
+    }
+
+    /**
+     * Overwrites the byte at the given path
+     *
+     * @param path  which leads to the value
+     * @param value which should be written
+     *
+     * @return whether the path exists
+     */
+    public boolean setByte(final String path, final byte value) {
+        final int position = this.locate(path, NBTConstants.TAG_BYTE);
+
+        if (position != -1) {
+            this.buffer.setByte(position, value);
+        }
+
+        return position != -1;
+    }
+
+    /**
+     * Overwrites the short at the given path
+     *
+     * @param path  which leads to the value
+     * @param value which should be written
+     *
+     * @return whether the path exists
+     */
+    public boolean setShort(final String path, final short value) {
+        final int position = this.locate(path, NBTConstants.TAG_SHORT);
+
+        if (position != -1) {
+            if (this.byteOrder == ByteOrder.LITTLE_ENDIAN) {
+                this.buffer.setShortLE(position, value);
+            } else {
+                this.buffer.setShort(position, value);
+            }
+        }
+
+        return position != -1;
+    }
+
+    /**
+     * Overwrites the int at the given path, in varint mode the value is spliced in when its size changes
+     *
+     * @param path  which leads to the value
+     * @param value which should be written
+     *
+     * @return whether the path exists
+     */
+    public boolean setInt(final String path, final int value) {
+        final int position = this.locate(path, NBTConstants.TAG_INT);
+
+        if (position == -1) {
+            return false;
+        }
+
+        if (this.useVarInt) {
+            final int size = this.encodeUnsignedVarLong((value << 1 ^ value >> 31) & 0xFFFFFFFFL);
+
+            this.splice(position, this.locatedSize, this.encodedValue, 0, size);
+        } else if (this.byteOrder == ByteOrder.LITTLE_ENDIAN) {
+            this.buffer.setIntLE(position, value);
+        } else {
+            this.buffer.setInt(position, value);
+        }
+
+        return true;
+    }
+
+    /**
+     * Overwrites the long at the given path, in varint mode the value is spliced in when its size changes
+     *
+     * @param path  which leads to the value
+     * @param value which should be written
+     *
+     * @return whether the path exists
+     */
+    public boolean setLong(final String path, final long value) {
+        final int position = this.locate(path, NBTConstants.TAG_LONG);
+
+        if (position == -1) {
+            return false;
+        }
+
+        if (this.useVarInt) {
+            final int size = this.encodeUnsignedVarLong(value << 1 ^ value >> 63);
+
+            this.splice(position, this.locatedSize, this.encodedValue, 0, size);
+        } else if (this.byteOrder == ByteOrder.LITTLE_ENDIAN) {
+            this.buffer.setLongLE(position, value);
+        } else {
+            this.buffer.setLong(position, value);
+        }
+
+        return true;
+    }
+
+    /**
+     * Overwrites the float at the given path
+     *
+     * @param path  which leads to the value
+     * @param value which should be written
+     *
+     * @return whether the path exists
+     */
+    public boolean setFloat(final String path, final float value) {
+        final int position = this.locate(path, NBTConstants.TAG_FLOAT);
+
+        if (position != -1) {
+            if (this.byteOrder == ByteOrder.LITTLE_ENDIAN) {
+                this.buffer.setFloatLE(position, value);
+            } else {
+                this.buffer.setFloat(position, value);
+            }
+        }
+
+        return position != -1;
+    }
+
+    /**
+     * Overwrites the double at the given path
+     *
+     * @param path  which leads to the value
+     * @param value which should be written
+     *
+     * @return whether the path exists
+     */
+    public boolean setDouble(final String path, final double value) {
+        final int position = this.locate(path, NBTConstants.TAG_DOUBLE);
+
+        if (position != -1) {
+            if (this.byteOrder == ByteOrder.LITTLE_ENDIAN) {
+                this.buffer.setDoubleLE(position, value);
+            } else {
+                this.buffer.setDouble(position, value);
+            }
+        }
+
+        return position != -1;
+    }
+
+    /**
+     * Replaces the string at the given path by splicing it in when its size changes
+     *
+     * @param path  which leads to the value
+     * @param value which should be written
+     *
+     * @return whether the path exists
+     */
+    public boolean setString(final String path, final String value) {
+        final int position = this.locate(path, NBTConstants.TAG_STRING);
+
+        if (position == -1) {
+            return false;
+        }
+
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        final int prefixSize;
+
+        if (this.useVarInt) {
+            prefixSize = this.encodeUnsignedVarLong(bytes.length);
+        } else {
+            if (bytes.length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("The string exceeds the maximum length of " + Short.MAX_VALUE +
+                        " bytes");
+            }
+
+            prefixSize = 2;
+
+            if (this.byteOrder == ByteOrder.LITTLE_ENDIAN) {
+                this.encodedValue[0] = (byte) bytes.length;
+                this.encodedValue[1] = (byte) (bytes.length >>> 8);
+            } else {
+                this.encodedValue[0] = (byte) (bytes.length >>> 8);
+                this.encodedValue[1] = (byte) bytes.length;
+            }
+        }
+
+        final byte[] encodedString = new byte[prefixSize + bytes.length];
+
+        System.arraycopy(this.encodedValue, 0, encodedString, 0, prefixSize);
+        System.arraycopy(bytes, 0, encodedString, prefixSize, bytes.length);
+
+        this.splice(position, this.locatedSize, encodedString, 0, encodedString.length);
+
+        return true;
+    }
+
+    private int locate(final String path, final byte expectedTagId) {
+        final int position = this.locate(path);
+
+        if (position != -1 && this.locatedTagId != expectedTagId) {
+            throw new IllegalArgumentException("The value at " + path + " has the tag " + this.locatedTagId +
+                    " instead of " + expectedTagId);
+        }
+
+        return position;
+    }
+
+    /**
+     * Searches the entry with the given name within the compound whose entries start at the given position
+     *
+     * @param position which represents the index of the first entry
+     * @param name     which represents the encoded name of the entry
+     *
+     * @return the index of the value of the entry or -1 when there is no such entry
+     */
+    private int findEntry(int position, final byte[] name) {
+        while (true) {
+            final byte tagId = this.byteAt(position++);
+
+            if (tagId == NBTConstants.TAG_END) {
+                return -1;
+            }
+
+            // unknown tags do not carry a name and are skipped like the reader does
+            if (tagId < NBTConstants.TAG_BYTE || tagId > NBTConstants.TAG_INT_ARRAY) {
+                continue;
+            }
+
+            final int nameLength = this.readStringLength(position);
+            final int nameStart = position + this.lengthSize;
+
+            position = nameStart + nameLength;
+
+            if (nameLength == name.length && this.matches(nameStart, name)) {
+                this.locatedTagId = tagId;
+
+                return position;
+            }
+
+            position = this.skipValue(tagId, position);
+        }
+    }
+
+    /**
+     * Searches the element with the given index within the list or array which starts at the given position
+     *
+     * @param tagId    which represents the tag of the list or array
+     * @param position which represents the index of the list or array
+     * @param index    which represents the index of the element
+     *
+     * @return the index of the element or -1 when there is no such element
+     */
+    private int findElement(final byte tagId, int position, final int index) {
+        final byte elementTagId;
+
+        switch (tagId) {
+            case NBTConstants.TAG_LIST:
+                elementTagId = this.byteAt(position++);
+                break;
+            case NBTConstants.TAG_BYTE_ARRAY:
+                elementTagId = NBTConstants.TAG_BYTE;
+                break;
+            case NBTConstants.TAG_INT_ARRAY:
+                elementTagId = NBTConstants.TAG_INT;
+                break;
+            default:
+                return -1;
+        }
+
+        final int length = this.readInt(position);
+        position += this.lengthSize;
+
+        if (index < 0 || index >= length) {
+            return -1;
+        }
+
+        if (tagId == NBTConstants.TAG_BYTE_ARRAY) {
+            position += index;
+        } else if (tagId == NBTConstants.TAG_INT_ARRAY && !this.useVarInt) {
+            position += index * 4;
+        } else {
+            for (int i = 0; i < index; i++) {
+                position = this.skipValue(elementTagId, position);
+            }
+        }
+
+        this.locatedTagId = elementTagId;
+
+        return position;
+    }
+
+    /**
+     * Skips the value which starts at the given position. Nested compounds and lists are skipped with an explicit
+     * stack of frames, so deeply nested data does not overflow the call stack
+     *
+     * @param tagId    which represents the tag of the value
+     * @param position which represents the index of the value
+     *
+     * @return the index after the value
+     */
+    private int skipValue(final byte tagId, int position) {
+        int depth = 0;
+
+        position = this.enterValue(tagId, position, depth);
+
+        if (tagId == NBTConstants.TAG_COMPOUND || tagId == NBTConstants.TAG_LIST) {
+            depth++;
+        }
+
+        while (depth > 0) {
+            final int top = depth - 1;
+
+            if (this.frameTagIds[top] == NBTConstants.TAG_COMPOUND) {
+                final byte entryTagId = this.byteAt(position++);
+
+                if (entryTagId == NBTConstants.TAG_END) {
+                    depth--;
+
+                    continue;
+                }
+
+                if (entryTagId < NBTConstants.TAG_BYTE || entryTagId > NBTConstants.TAG_INT_ARRAY) {
+                    continue;
+                }
+
+                position = this.enterValue(entryTagId, this.skipString(position), depth);
+
+                if (entryTagId == NBTConstants.TAG_COMPOUND || entryTagId == NBTConstants.TAG_LIST) {
+                    depth++;
+                }
+            } else {
+                if (this.frameRemaining[top] <= 0) {
+                    depth--;
+
+                    continue;
+                }
+
+                this.frameRemaining[top]--;
+
+                final byte elementTagId = this.frameElementTagIds[top];
+
+                position = this.enterValue(elementTagId, position, depth);
+
+                if (elementTagId == NBTConstants.TAG_COMPOUND || elementTagId == NBTConstants.TAG_LIST) {
+                    depth++;
+                }
+            }
+        }
+
+        return position;
+    }
+
+    /**
+     * Skips the given value when it is no container or records a frame for it at the given depth otherwise
+     *
+     * @param tagId    which represents the tag of the value
+     * @param position which represents the index of the value
+     * @param depth    which represents the depth the frame is recorded at
+     *
+     * @return the index after the value or after the header of the container
+     */
+    private int enterValue(final byte tagId, final int position, final int depth) {
+        switch (tagId) {
+            case NBTConstants.TAG_BYTE:
+                return position + 1;
+            case NBTConstants.TAG_SHORT:
+                return position + 2;
+            case NBTConstants.TAG_INT:
+                return this.useVarInt ? this.skipVarInt(position, NBTPatcher.MAX_VAR_INT_SIZE) : position + 4;
+            case NBTConstants.TAG_LONG:
+                return this.useVarInt ? this.skipVarInt(position, NBTPatcher.MAX_VAR_LONG_SIZE) : position + 8;
+            case NBTConstants.TAG_FLOAT:
+                return position + 4;
+            case NBTConstants.TAG_DOUBLE:
+                return position + 8;
+            case NBTConstants.TAG_STRING:
+                return this.skipString(position);
+            case NBTConstants.TAG_BYTE_ARRAY: {
+                final int length = this.readInt(position);
+
+                this.checkReadable(position + this.lengthSize, length);
+
+                return position + this.lengthSize + length;
+            }
+            case NBTConstants.TAG_INT_ARRAY: {
+                final int length = this.readInt(position);
+                int arrayPosition = position + this.lengthSize;
+
+                if (!this.useVarInt) {
+                    this.checkReadable(arrayPosition, length > Integer.MAX_VALUE >> 2 ? -1 : length << 2);
+
+                    return arrayPosition + (length << 2);
+                }
+
+                for (int i = 0; i < length; i++) {
+                    arrayPosition = this.skipVarInt(arrayPosition, NBTPatcher.MAX_VAR_INT_SIZE);
+                }
+
+                return arrayPosition;
+            }
+            case NBTConstants.TAG_LIST: {
+                final byte elementTagId = this.byteAt(position);
+                final int length = this.readInt(position + 1);
+
+                if (length < 0) {
+                    throw new IllegalArgumentException("The encoded list has a negative length");
+                }
+
+                this.pushFrame(depth, tagId, elementTagId, length);
+
+                return position + 1 + this.lengthSize;
+            }
+            case NBTConstants.TAG_COMPOUND:
+                this.pushFrame(depth, tagId, NBTConstants.TAG_END, 0);
+
+                return position;
+            default:
+                throw new IllegalArgumentException("The tag " + tagId + " cannot be skipped");
+        }
+    }
+
+    private void pushFrame(final int depth, final byte tagId, final byte elementTagId, final int remaining) {
+        if (depth == this.frameTagIds.length) {
+            final int newCapacity = depth << 1;
+
+            this.frameTagIds = Arrays.copyOf(this.frameTagIds, newCapacity);
+            this.frameElementTagIds = Arrays.copyOf(this.frameElementTagIds, newCapacity);
+            this.frameRemaining = Arrays.copyOf(this.frameRemaining, newCapacity);
+        }
+
+        this.frameTagIds[depth] = tagId;
+        this.frameElementTagIds[depth] = elementTagId;
+        this.frameRemaining[depth] = remaining;
+    }
+
+    private int skipString(final int position) {
+        final int length = this.readStringLength(position);
+
+        this.checkReadable(position + this.lengthSize, length);
+
+        return position + this.lengthSize + length;
+    }
+
+    private int skipVarInt(int position, final int maxSize) {
+        for (int size = 1; size <= maxSize; size++) {
+            if ((this.byteAt(position++) & 0x80) == 0) {
+                return position;
+            }
+        }
+
+        throw new IllegalArgumentException("The encoded varint is too long");
+    }
+
+    /**
+     * Reads the length of a string and stores the size of the prefix in {@link NBTPatcher#lengthSize}
+     *
+     * @param position which represents the index of the prefix
+     *
+     * @return the length in bytes
+     */
+    private int readStringLength(final int position) {
+        if (this.useVarInt) {
+            return this.readUnsignedVarInt(position);
+        }
+
+        this.checkReadable(position, 2);
+
+        this.lengthSize = 2;
+
+        return this.byteOrder == ByteOrder.LITTLE_ENDIAN ? this.buffer.getShortLE(position) :
+                this.buffer.getShort(position);
+    }
+
+    /**
+     * Reads an int and stores its encoded size in {@link NBTPatcher#lengthSize}
+     *
+     * @param position which represents the index of the int
+     *
+     * @return the int which has been read
+     */
+    private int readInt(final int position) {
+        if (this.useVarInt) {
+            final int zigZag = this.readUnsignedVarInt(position);
+
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+
+        this.checkReadable(position, 4);
+
+        this.lengthSize = 4;
+
+        return this.byteOrder == ByteOrder.LITTLE_ENDIAN ? this.buffer.getIntLE(position) :
+                this.buffer.getInt(position);
+    }
+
+    private int readUnsignedVarInt(final int position) {
+        int value = 0;
+        int size = 0;
+        byte byteValue;
+
+        do {
+            if (size == NBTPatcher.MAX_VAR_INT_SIZE) {
+                throw new IllegalArgumentException("The encoded varint is too long");
+            }
+
+            byteValue = this.byteAt(position + size);
+            value |= (byteValue & 0x7F) << (size++ * 7);
+        } while ((byteValue & 0x80) != 0);
+
+        this.lengthSize = size;
+
+        return value;
+    }
+
+    /**
+     * Encodes the given unsigned value as varint into {@link NBTPatcher#encodedValue}
+     *
+     * @param value which should be encoded
+     *
+     * @return the amount of encoded bytes
+     */
+    private int encodeUnsignedVarLong(long value) {
+        int size = 0;
+
+        while ((value & ~0x7FL) != 0) {
+            this.encodedValue[size++] = (byte) (value & 0x7F | 0x80);
+
+            value >>>= 7;
+        }
+
+        this.encodedValue[size++] = (byte) value;
+
+        return size;
+    }
+
+    /**
+     * Replaces the given amount of bytes at the given position with the given bytes. Only the bytes which follow
+     * the replaced ones are moved when the size changes
+     *
+     * @param position which represents the index of the replaced bytes
+     * @param oldSize  which represents the amount of replaced bytes
+     * @param bytes    which contain the new bytes
+     * @param offset   which represents the index of the first new byte
+     * @param newSize  which represents the amount of new bytes
+     */
+    private void splice(final int position, final int oldSize, final byte[] bytes, final int offset,
+                        final int newSize) {
+        final int delta = newSize - oldSize;
+
+        if (delta != 0) {
+            final int tailStart = position + oldSize;
+            final int tailLength = this.buffer.writerIndex() - tailStart;
+
+            if (delta > 0) {
+                this.buffer.ensureWritable(delta);
+            }
+
+            BufferUtil.moveBytes(this.buffer, tailStart, tailStart + delta, tailLength);
+
+            this.buffer.writerIndex(this.buffer.writerIndex() + delta);
+        }
+
+        this.buffer.setBytes(position, bytes, offset, newSize);
+    }
+
+    private boolean matches(final int position, final byte[] name) {
+        this.checkReadable(position, name.length);
+
+        for (int i = 0; i < name.length; i++) {
+            if (this.buffer.getByte(position + i) != name[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private byte byteAt(final int position) {
+        this.checkReadable(position, 1);
+
+        return this.buffer.getByte(position);
+    }
+
+    private void checkReadable(final int position, final int length) {
+        if (length < 0 || length > this.buffer.writerIndex() - position) {
+            throw new IllegalArgumentException("The encoded data is truncated");
+        }
+    }
+}
@@ -1,14 +1,21 @@
 package org.terracottamc.taglib.nbt.io;
 
 import io.netty.buffer.ByteBuf;
+import org.terracottamc.taglib.metrics.INBTMetrics;
+import org.terracottamc.taglib.metrics.NBTAllocationProfiler;
+import org.terracottamc.taglib.nbt.tag.NBTCompoundInterner;
 import org.terracottamc.taglib.nbt.tag.NBTTagCompound;
+import org.terracottamc.taglib.nbt.tag.NBTTagList;
 import org.terracottamc.taglib.util.allocation.Allocation;
 import org.terracottamc.taglib.util.allocation.AllocationLimitReachedException;
 import org.terracottamc.taglib.util.nbt.NBTConstants;
+import org.terracottamc.taglib.util.VarIntUtil;
+import org.terracottamc.taglib.util.nbt.NBTDepthLimitReachedException;
 
 import java.io.IOException;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -24,20 +31,125 @@ import java.util.List;
  */
 public class NBTReader extends NBTStreamReader {
 
+    private static final int INITIAL_FRAME_CAPACITY = 16;
+
+    private byte[] frameTagIds = new byte[NBTReader.INITIAL_FRAME_CAPACITY];
+    private byte[] frameElementTagIds = new byte[NBTReader.INITIAL_FRAME_CAPACITY];
+    private int[] frameRemaining = new int[NBTReader.INITIAL_FRAME_CAPACITY];
+    private Object[] frameValues = new Object[NBTReader.INITIAL_FRAME_CAPACITY];
+    private String[] frameNames = new String[NBTReader.INITIAL_FRAME_CAPACITY];
+    private String[] framePaths = new String[NBTReader.INITIAL_FRAME_CAPACITY];
+    private String[] frameElementPaths = new String[NBTReader.INITIAL_FRAME_CAPACITY];
+    private int depth = 0;
+    private int maxDepthReached = 0;
+    private NBTCompoundInterner compoundInterner = null;
+    private NBTDecodeCache decodeCache = null;
+    private NBTPatcher measuringPatcher = null;
+    private boolean keyDictionary = false;
+    private final List<String> dictionaryKeys = new ArrayList<>();
+
     public NBTReader(final ByteBuf buffer, final ByteOrder byteOrder) {
         super(buffer, byteOrder);
     }
 
+    /**
+     * Set the {@link org.terracottamc.taglib.nbt.tag.NBTCompoundInterner} which resolves structurally identical
+     * nested compounds to one shared immutable instance. The compound which is returned itself is never interned
+     *
+     * @param compoundInterner which should be set or null when nothing should be interned
+     */
+    public void setCompoundInterner(final NBTCompoundInterner compoundInterner) {
+        this.compoundInterner = compoundInterner;
+    }
+
+    /**
+     * Retrieves the {@link org.terracottamc.taglib.nbt.tag.NBTCompoundInterner} of this reader
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTCompoundInterner} or null
+     */
+    public NBTCompoundInterner getCompoundInterner() {
+        return this.compoundInterner;
+    }
+
+    /**
+     * Set the {@link org.terracottamc.taglib.nbt.io.NBTDecodeCache} which resolves compounds whose encoded bytes
+     * have been read before to one shared immutable instance. Data whose keys are encoded with a key dictionary is
+     * never cached
+     *
+     * @param decodeCache which should be set or null when nothing should be cached
+     */
+    public void setDecodeCache(final NBTDecodeCache decodeCache) {
+        this.decodeCache = decodeCache;
+    }
+
+    /**
+     * Retrieves the {@link org.terracottamc.taglib.nbt.io.NBTDecodeCache} of this reader
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.io.NBTDecodeCache} or null
+     */
+    public NBTDecodeCache getDecodeCache() {
+        return this.decodeCache;
+    }
+
+    /**
+     * Updates whether the keys are encoded with the key dictionary of {@link NBTWriter#setKeyDictionary(boolean)}
+     *
+     * @param keyDictionary which should be updated
+     */
+    public void setKeyDictionary(final boolean keyDictionary) {
+        this.keyDictionary = keyDictionary;
+    }
+
+    /**
+     * Proofs whether the keys are encoded with a key dictionary
+     *
+     * @return whether a key dictionary is used
+     */
+    public boolean isUsingKeyDictionary() {
+        return this.keyDictionary;
+    }
+
     /**
      * Retrieves the {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} which has been read by {@link NBTReader#readTagCompoundValue()}
      *
-     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} or a shared immutable one when a
+     * {@link org.terracottamc.taglib.nbt.io.NBTDecodeCache} is set
      */
     public NBTTagCompound createCompound() {
+        if (this.decodeCache != null && !this.keyDictionary) {
+            return this.decodeCache.decode(this);
+        }
+
+        return this.decodeCompound();
+    }
+
+    /**
+     * Retrieves the deepest nesting level of the compound or list which has been read last
+     *
+     * @return a fresh depth
+     */
+    int getMaxDepthReached() {
+        return this.maxDepthReached;
+    }
+
+    /**
+     * Decodes the {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} at the reader index without consulting the
+     * decode cache
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}
+     */
+    NBTTagCompound decodeCompound() {
+        final INBTMetrics metrics = this.getMetrics();
+        final boolean measuringTime = metrics.isMeasuringTime();
+        final long startNanos = measuringTime ? System.nanoTime() : 0L;
+        final int startIndex = this.getBuffer().readerIndex();
+
         this.checkForExpectedInput((this.isUsingVarInt() ? 2 : 3), "The NBT data is invalid: There is not enough data available", false);
 
+        this.dictionaryKeys.clear();
+
         final byte tagId = this.readByteValue();
-        final String name = this.readStringValue();
+        final String name = this.readKey();
         final NBTTagCompound nbtTagCompound = this.readTagCompoundValue();
         nbtTagCompound.setName(name);
 
@@ -49,17 +161,52 @@ public class NBTReader extends NBTStreamReader {
             }
         }
 
+        metrics.onDecode(this.getBuffer().readerIndex() - startIndex, this.maxDepthReached,
+                measuringTime ? System.nanoTime() - startNanos : 0L);
+
         return nbtTagCompound;
     }
 
+    /**
+     * Measures the encoded size of the compound which starts at the reader index without decoding it
+     *
+     * @return the amount of bytes or -1 when the data is no complete compound
+     */
+    int measureCompound() {
+        if (this.measuringPatcher == null) {
+            this.measuringPatcher = new NBTPatcher(this.getBuffer(), this.getByteOrder());
+        }
+
+        this.measuringPatcher.setUseVarInt(this.isUsingVarInt());
+
+        try {
+            final int valueIndex = this.measuringPatcher.locate("");
+
+            if (this.measuringPatcher.getLocatedTagId() != NBTConstants.TAG_COMPOUND) {
+                return -1;
+            }
+
+            return valueIndex + this.measuringPatcher.getLocatedSize() - this.getBuffer().readerIndex();
+        } catch (final IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
     /**
      * Retrieves the {@link java.util.List} of objects which has been read by {@link NBTReader#readTagListValue()}
      *
      * @return a fresh {@link java.util.List}
      */
     public List<Object> createList() {
+        final INBTMetrics metrics = this.getMetrics();
+        final boolean measuringTime = metrics.isMeasuringTime();
+        final long startNanos = measuringTime ? System.nanoTime() : 0L;
+        final int startIndex = this.getBuffer().readerIndex();
+
         this.checkForExpectedInput((this.isUsingVarInt() ? 2 : 3), "The NBT data is invalid: There is not enough data available", false);
 
+        this.dictionaryKeys.clear();
+
         final byte tagId = this.readByteValue();
 
         if (tagId != NBTConstants.TAG_LIST) {
@@ -70,9 +217,14 @@ public class NBTReader extends NBTStreamReader {
             }
         }
 
-        this.readStringValue();
+        this.readKey();
+
+        final List<Object> list = this.readTagListValue();
 
-        return this.readTagListValue();
+        metrics.onDecode(this.getBuffer().readerIndex() - startIndex, this.maxDepthReached,
+                measuringTime ? System.nanoTime() - startNanos : 0L);
+
+        return list;
     }
 
     /**
@@ -81,62 +233,41 @@ public class NBTReader extends NBTStreamReader {
      * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}
      */
     private NBTTagCompound readTagCompoundValue() {
-        try {
-            this.doAlterAllocationLimit(Allocation.TAG_COMPOUND);
-        } catch (final AllocationLimitReachedException e) {
-            e.printStackTrace();
-        }
-
-        this.checkForExpectedInput(1, "The NBT data is invalid: A tag identifier was expected", false);
-
-        byte tagId = this.readByteValue();
-        final NBTTagCompound nbtTagCompound = new NBTTagCompound();
-
-        while (tagId != NBTConstants.TAG_END) {
-            switch (tagId) {
-                case NBTConstants.TAG_BYTE:
-                    nbtTagCompound.setValue(this.readStringValue(), this.readByteValue());
-                    break;
-                case NBTConstants.TAG_SHORT:
-                    nbtTagCompound.setValue(this.readStringValue(), this.readShortValue());
-                    break;
-                case NBTConstants.TAG_INT:
-                    nbtTagCompound.setValue(this.readStringValue(), this.readIntValue());
-                    break;
-                case NBTConstants.TAG_LONG:
-                    nbtTagCompound.setValue(this.readStringValue(), this.readLongValue());
-                    break;
-                case NBTConstants.TAG_FLOAT:
-                    nbtTagCompound.setValue(this.readStringValue(), this.readFloatValue());
-                    break;
-                case NBTConstants.TAG_DOUBLE:
-                    nbtTagCompound.setValue(this.readStringValue(), this.readDoubleValue());
-                    break;
-                case NBTConstants.TAG_BYTE_ARRAY:
-                    nbtTagCompound.setValue(this.readStringValue(), this.readByteArrayValue());
-                    break;
-                case NBTConstants.TAG_STRING:
-                    nbtTagCompound.setValue(this.readStringValue(), this.readStringValue());
-                    break;
-                case NBTConstants.TAG_LIST:
-                    nbtTagCompound.setValue(this.readStringValue(), this.readTagListValue());
-                    break;
-                case NBTConstants.TAG_COMPOUND:
-                    final String name = this.readStringValue();
-                    final NBTTagCompound childCompound = this.readTagCompoundValue();
-                    childCompound.setName(name);
+        return (NBTTagCompound) this.readNestedValue(NBTConstants.TAG_COMPOUND);
+    }
+
+    /**
+     * Reads the key of a tag. With a key dictionary every key is either a new key which is added to the dictionary
+     * or the index of a key which has been read before
+     *
+     * @return a fresh {@link java.lang.String}
+     */
+    protected String readKey() {
+        if (!this.keyDictionary) {
+            return this.readStringValue();
+        }
 
-                    nbtTagCompound.setChildTag(childCompound);
-                    break;
-                case NBTConstants.TAG_INT_ARRAY:
-                    nbtTagCompound.setValue(this.readStringValue(), this.readIntArrayValue());
-                    break;
+        final int index = VarIntUtil.readUnsignedVarInt(this);
+
+        if (index == 0) {
+            final String key = this.readStringValue();
+
+            this.dictionaryKeys.add(key);
+
+            return key;
+        }
+
+        if (index > this.dictionaryKeys.size()) {
+            try {
+                throw new IOException("The NBT data is invalid: The key " + index + " is not part of the dictionary");
+            } catch (final IOException e) {
+                e.printStackTrace();
             }
 
-            tagId = this.readByteValue();
+            return "";
         }
 
-        return nbtTagCompound;
+        return this.dictionaryKeys.get(index - 1);
     }
 
     /**
@@ -145,86 +276,340 @@ public class NBTReader extends NBTStreamReader {
      * @return a fresh {@link java.util.List}
      */
     private List<Object> readTagListValue() {
-        this.checkForExpectedInput((this.isUsingVarInt() ? 2 : 5), "The NBT data is invalid: A TagList header was expected", false);
+        return (NBTTagList) this.readNestedValue(NBTConstants.TAG_LIST);
+    }
 
-        final byte type = this.readByteValue();
-        final int length = this.readIntValue();
+    /**
+     * Reads a compound or list value and all of its children. Nested values are tracked with the frame stack
+     * of this reader instead of recursion, so deeply nested data cannot overflow the thread stack
+     *
+     * @param tagId which is representative for the identifier of the value to read
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} or {@link org.terracottamc.taglib.nbt.tag.NBTTagList}
+     */
+    private Object readNestedValue(final byte tagId) {
+        final NBTAllocationProfiler profiler = this.getAllocationProfiler();
+
+        this.maxDepthReached = 0;
 
         try {
-            this.doAlterAllocationLimit(Allocation.ARRAY_LIST);
-            this.doAlterAllocationLimit(Allocation.REFERENCE * length);
-        } catch (final AllocationLimitReachedException e) {
-            e.printStackTrace();
+            this.getMetrics().onTagDecoded(tagId);
+
+            if (profiler == null) {
+                this.pushFrame(tagId, null);
+            } else {
+                final long allocatedBytes = this.getAllocatedBytes();
+                final long startNanos = System.nanoTime();
+
+                this.pushFrame(tagId, null);
+                this.profile(profiler, -1, "", allocatedBytes, startNanos);
+            }
+
+            while (true) {
+                final int top = this.depth - 1;
+
+                if (this.frameTagIds[top] == NBTConstants.TAG_COMPOUND) {
+                    final byte entryTagId = this.readByteValue();
+
+                    if (entryTagId == NBTConstants.TAG_END) {
+                        final Object value = this.popFrame();
+
+                        if (this.depth == 0) {
+                            return value;
+                        }
+
+                        continue;
+                    }
+
+                    this.getMetrics().onTagDecoded(entryTagId);
+
+                    // unknown tags do not carry a name and are skipped
+                    if (entryTagId < NBTConstants.TAG_BYTE || entryTagId > NBTConstants.TAG_INT_ARRAY) {
+                        continue;
+                    }
+
+                    final NBTTagCompound nbtTagCompound = (NBTTagCompound) this.frameValues[top];
+
+                    if (profiler == null) {
+                        this.readCompoundEntry(nbtTagCompound, entryTagId, this.readKey());
+                    } else {
+                        final long allocatedBytes = this.getAllocatedBytes();
+                        final long startNanos = System.nanoTime();
+                        final String name = this.readKey();
+                        final String parentPath = this.framePaths[top];
+
+                        this.readCompoundEntry(nbtTagCompound, entryTagId, name);
+                        this.profile(profiler, top, parentPath.isEmpty() ? name : parentPath + "." + name,
+                                allocatedBytes, startNanos);
+                    }
+                } else {
+                    if (this.frameRemaining[top] <= 0) {
+                        final Object value = this.popFrame();
+
+                        if (this.depth == 0) {
+                            return value;
+                        }
+
+                        continue;
+                    }
+
+                    this.frameRemaining[top]--;
+
+                    final NBTTagList list = (NBTTagList) this.frameValues[top];
+
+                    if (profiler == null) {
+                        this.readListElement(list, this.frameElementTagIds[top]);
+                    } else {
+                        final long allocatedBytes = this.getAllocatedBytes();
+                        final long startNanos = System.nanoTime();
+
+                        this.readListElement(list, this.frameElementTagIds[top]);
+                        this.profile(profiler, top, this.frameElementPaths[top], allocatedBytes, startNanos);
+                    }
+                }
+            }
+        } finally {
+            while (this.depth > 0) {
+                this.frameValues[--this.depth] = null;
+                this.frameNames[this.depth] = null;
+                this.framePaths[this.depth] = null;
+                this.frameElementPaths[this.depth] = null;
+            }
         }
+    }
+
+    /**
+     * Attributes the allocation and time which has been consumed since the given snapshot to the given path
+     * and assigns the path to the frame which may have been pushed in the meantime
+     *
+     * @param profiler       which receives the consumption
+     * @param parentTop      which represents the index of the parent frame or -1 for the root
+     * @param path           that is the nbt path of the value which has been read
+     * @param allocatedBytes which is the amount of allocated bytes before the value has been read
+     * @param startNanos     which is the time before the value has been read
+     */
+    private void profile(final NBTAllocationProfiler profiler, final int parentTop, final String path,
+                         final long allocatedBytes, final long startNanos) {
+        final int childTop = parentTop + 1;
 
-        final List<Object> list = new ArrayList<>(length);
+        if (this.depth > childTop) {
+            this.framePaths[childTop] = path;
 
-        switch (type) {
-            case NBTConstants.TAG_END:
-                break;
+            if (this.frameTagIds[childTop] == NBTConstants.TAG_LIST) {
+                this.frameElementPaths[childTop] = path + "[]";
+            }
+        }
+
+        profiler.record(path, this.getAllocatedBytes() - allocatedBytes, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Reads the entry with given tag identifier of a compound. Compounds and lists are pushed onto the frame stack
+     *
+     * @param nbtTagCompound which the entry should be added to
+     * @param tagId          which is representative for the identifier of the entry
+     * @param name           which represents the key of the entry
+     */
+    private void readCompoundEntry(final NBTTagCompound nbtTagCompound, final byte tagId, final String name) {
+        switch (tagId) {
             case NBTConstants.TAG_BYTE:
-                for (int i = 0; i < length; i++) {
-                    list.add(this.readByteValue());
-                }
+                nbtTagCompound.setValue(name, this.readByteValue());
                 break;
             case NBTConstants.TAG_SHORT:
-                for (int i = 0; i < length; i++) {
-                    list.add(this.readShortValue());
-                }
+                nbtTagCompound.setValue(name, this.readShortValue());
                 break;
             case NBTConstants.TAG_INT:
-                for (int i = 0; i < length; i++) {
-                    list.add(this.readIntValue());
-                }
+                nbtTagCompound.setValue(name, this.readIntValue());
                 break;
             case NBTConstants.TAG_LONG:
-                for (int i = 0; i < length; i++) {
-                    list.add(this.readLongValue());
-                }
+                nbtTagCompound.setValue(name, this.readLongValue());
                 break;
             case NBTConstants.TAG_FLOAT:
-                for (int i = 0; i < length; i++) {
-                    list.add(this.readFloatValue());
-                }
+                nbtTagCompound.setValue(name, this.readFloatValue());
                 break;
             case NBTConstants.TAG_DOUBLE:
-                for (int i = 0; i < length; i++) {
-                    list.add(this.readDoubleValue());
-                }
+                nbtTagCompound.setValue(name, this.readDoubleValue());
                 break;
             case NBTConstants.TAG_BYTE_ARRAY:
-                for (int i = 0; i < length; i++) {
-                    list.add(this.readByteArrayValue());
-                }
+                nbtTagCompound.setValue(name, this.readByteArrayValue());
                 break;
             case NBTConstants.TAG_STRING:
-                for (int i = 0; i < length; i++) {
-                    list.add(this.readStringValue());
-                }
+                nbtTagCompound.setValue(name, this.readStringValue());
                 break;
             case NBTConstants.TAG_LIST:
-                for (int i = 0; i < length; i++) {
-                    list.add(this.readTagListValue());
-                }
+            case NBTConstants.TAG_COMPOUND:
+                this.pushFrame(tagId, name);
+                break;
+            case NBTConstants.TAG_INT_ARRAY:
+                nbtTagCompound.setValue(name, this.readIntArrayValue());
+                break;
+        }
+    }
+
+    /**
+     * Reads the next element of a list. Compounds and lists are pushed onto the frame stack
+     *
+     * @param list  which the element should be added to
+     * @param tagId which is representative for the identifier of the element
+     */
+    private void readListElement(final NBTTagList list, final byte tagId) {
+        this.getMetrics().onTagDecoded(tagId);
+
+        switch (tagId) {
+            case NBTConstants.TAG_BYTE:
+                list.add(this.readByteValue());
+                break;
+            case NBTConstants.TAG_SHORT:
+                list.add(this.readShortValue());
+                break;
+            case NBTConstants.TAG_INT:
+                list.add(this.readIntValue());
+                break;
+            case NBTConstants.TAG_LONG:
+                list.add(this.readLongValue());
+                break;
+            case NBTConstants.TAG_FLOAT:
+                list.add(this.readFloatValue());
+                break;
+            case NBTConstants.TAG_DOUBLE:
+                list.add(this.readDoubleValue());
+                break;
+            case NBTConstants.TAG_BYTE_ARRAY:
+                list.add(this.readByteArrayValue());
+                break;
+            case NBTConstants.TAG_STRING:
+                list.add(this.readStringValue());
                 break;
+            case NBTConstants.TAG_LIST:
             case NBTConstants.TAG_COMPOUND:
-                for (int i = 0; i < length; i++) {
-                    list.add(this.readTagCompoundValue());
-                }
+                this.pushFrame(tagId, null);
                 break;
             case NBTConstants.TAG_INT_ARRAY:
-                for (int i = 0; i < length; i++) {
-                    list.add(this.readIntArrayValue());
-                }
+                list.add(this.readIntArrayValue());
                 break;
-            default:
+        }
+    }
+
+    /**
+     * Reads the header of a compound or list and pushes a new frame for it onto the frame stack
+     *
+     * @param tagId which is representative for the identifier of the value to read
+     * @param name  which is the key of the value inside of its parent compound or null
+     */
+    private void pushFrame(final byte tagId, final String name) {
+        final int maxDepth = this.getMaxDepth();
+
+        if (maxDepth != -1 && this.depth >= maxDepth) {
+            throw new NBTDepthLimitReachedException(maxDepth);
+        }
+
+        if (this.depth == this.frameTagIds.length) {
+            final int newLength = this.frameTagIds.length << 1;
+
+            this.frameTagIds = Arrays.copyOf(this.frameTagIds, newLength);
+            this.frameElementTagIds = Arrays.copyOf(this.frameElementTagIds, newLength);
+            this.frameRemaining = Arrays.copyOf(this.frameRemaining, newLength);
+            this.frameValues = Arrays.copyOf(this.frameValues, newLength);
+            this.frameNames = Arrays.copyOf(this.frameNames, newLength);
+            this.framePaths = Arrays.copyOf(this.framePaths, newLength);
+            this.frameElementPaths = Arrays.copyOf(this.frameElementPaths, newLength);
+        }
+
+        final Object value;
+
+        if (tagId == NBTConstants.TAG_COMPOUND) {
+            try {
+                this.doAlterAllocationLimit(Allocation.TAG_COMPOUND);
+            } catch (final AllocationLimitReachedException e) {
+                e.printStackTrace();
+            }
+
+            this.checkForExpectedInput(1, "The NBT data is invalid: A tag identifier was expected", false);
+
+            value = new NBTTagCompound();
+        } else {
+            this.checkForExpectedInput((this.isUsingVarInt() ? 2 : 5), "The NBT data is invalid: A TagList header was expected", false);
+
+            final byte type = this.readByteValue();
+            final int length = this.readIntValue();
+
+            try {
+                this.doAlterAllocationLimit(Allocation.ARRAY_LIST);
+                this.doAlterAllocationLimit(Allocation.REFERENCE * length);
+            } catch (final AllocationLimitReachedException e) {
+                e.printStackTrace();
+            }
+
+            value = new NBTTagList(type, length);
+
+            int remaining = length;
+
+            if (type == NBTConstants.TAG_END) {
+                remaining = 0;
+            } else if (type < NBTConstants.TAG_BYTE || type > NBTConstants.TAG_INT_ARRAY) {
+                remaining = 0;
+
                 try {
                     throw new IOException("The NBT data is invalid: The tag " + type + " is unknown");
                 } catch (final IOException e) {
                     e.printStackTrace();
                 }
+            }
+
+            this.frameElementTagIds[this.depth] = type;
+            this.frameRemaining[this.depth] = remaining;
         }
 
-        return list;
+        this.frameTagIds[this.depth] = tagId;
+        this.frameValues[this.depth] = value;
+        this.frameNames[this.depth] = name;
+        this.depth++;
+
+        if (this.depth > this.maxDepthReached) {
+            this.maxDepthReached = this.depth;
+        }
+    }
+
+    /**
+     * Pops the top frame from the frame stack and adds its value to the parent frame if there is one
+     *
+     * @return the value of the popped frame
+     */
+    private Object popFrame() {
+        final int top = --this.depth;
+        final Object value = this.frameValues[top];
+        final String name = this.frameNames[top];
+
+        this.frameValues[top] = null;
+        this.frameNames[top] = null;
+        this.framePaths[top] = null;
+        this.frameElementPaths[top] = null;
+
+        if (this.depth > 0) {
+            final Object parent = this.frameValues[top - 1];
+
+            if (parent instanceof NBTTagCompound) {
+                final NBTTagCompound parentCompound = (NBTTagCompound) parent;
+
+                if (value instanceof NBTTagCompound) {
+                    final NBTTagCompound childCompound = (NBTTagCompound) value;
+                    childCompound.setName(name);
+
+                    parentCompound.setChildTag(this.intern(childCompound));
+                } else {
+                    parentCompound.setValue(name, (NBTTagList) value);
+                }
+            } else if (value instanceof NBTTagCompound) {
+                ((NBTTagList) parent).add(this.intern((NBTTagCompound) value));
+            } else {
+                ((NBTTagList) parent).add(value);
+            }
+        }
+
+        return value;
+    }
+
+    private NBTTagCompound intern(final NBTTagCompound nbtTagCompound) {
+        return this.compoundInterner == null ? nbtTagCompound : this.compoundInterner.intern(nbtTagCompound);
     }
-}
\ No newline at end of file
+}
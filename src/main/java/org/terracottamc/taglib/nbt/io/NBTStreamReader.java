@@ -1,6 +1,9 @@
 package org.terracottamc.taglib.nbt.io;
 
 import io.netty.buffer.ByteBuf;
+import org.terracottamc.taglib.metrics.INBTMetrics;
+import org.terracottamc.taglib.metrics.NBTAllocationProfiler;
+import org.terracottamc.taglib.metrics.NoOpNBTMetrics;
 import org.terracottamc.taglib.util.VarIntUtil;
 import org.terracottamc.taglib.util.allocation.AllocationLimitReachedException;
 import org.terracottamc.taglib.util.deserializer.StringDeserializer;
@@ -26,6 +29,10 @@ public abstract class NBTStreamReader {
 
     private boolean useVarInt = false;
     private int allocationLimit = -1;
+    private int maxDepth = -1;
+    private INBTMetrics metrics = NoOpNBTMetrics.INSTANCE;
+    private NBTAllocationProfiler allocationProfiler = null;
+    private long allocatedBytes = 0L;
 
     /**
      * Creates a new {@link org.terracottamc.taglib.nbt.io.NBTStreamReader} with given
@@ -66,6 +73,97 @@ public abstract class NBTStreamReader {
         this.allocationLimit = allocationLimit;
     }
 
+    /**
+     * Retrieves the amount of bytes which may still be allocated
+     *
+     * @return a fresh int which is -1 when the allocation is not limited
+     */
+    public int getAllocationLimit() {
+        return this.allocationLimit;
+    }
+
+    /**
+     * Set the maximum amount of nested compounds and lists which may be read
+     *
+     * @param maxDepth which should be set or -1 when the depth should not be limited
+     */
+    public void setMaxDepth(final int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Retrieves the maximum amount of nested compounds and lists which may be read
+     *
+     * @return a fresh int which is -1 when the depth is not limited
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * Set the {@link org.terracottamc.taglib.metrics.INBTMetrics} which receives the measurements of this reader
+     *
+     * @param metrics which should be set
+     */
+    public void setMetrics(final INBTMetrics metrics) {
+        this.metrics = metrics == null ? NoOpNBTMetrics.INSTANCE : metrics;
+    }
+
+    /**
+     * Retrieves the {@link org.terracottamc.taglib.metrics.INBTMetrics} which receives the measurements of this reader
+     *
+     * @return a fresh {@link org.terracottamc.taglib.metrics.INBTMetrics}
+     */
+    public INBTMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Set the {@link org.terracottamc.taglib.metrics.NBTAllocationProfiler} which attributes the consumption of
+     * this reader to nbt paths
+     *
+     * @param allocationProfiler which should be set or null when nothing should be profiled
+     */
+    public void setAllocationProfiler(final NBTAllocationProfiler allocationProfiler) {
+        this.allocationProfiler = allocationProfiler;
+    }
+
+    /**
+     * Retrieves the {@link org.terracottamc.taglib.metrics.NBTAllocationProfiler} of this reader
+     *
+     * @return a fresh {@link org.terracottamc.taglib.metrics.NBTAllocationProfiler} or null
+     */
+    public NBTAllocationProfiler getAllocationProfiler() {
+        return this.allocationProfiler;
+    }
+
+    /**
+     * Retrieves the amount of bytes which have been charged against the allocation limit so far
+     *
+     * @return a fresh long
+     */
+    public long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    /**
+     * Retrieves the buffer this reader works with
+     *
+     * @return a fresh {@link io.netty.buffer.ByteBuf}
+     */
+    protected ByteBuf getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Retrieves the order of the bytes this reader handles
+     *
+     * @return a fresh {@link java.nio.ByteOrder}
+     */
+    protected ByteOrder getByteOrder() {
+        return this.byteOrder;
+    }
+
     /**
      * This method is present to reduce the allocation limit
      *
@@ -74,6 +172,10 @@ public abstract class NBTStreamReader {
      * @throws org.terracottamc.taglib.util.allocation.AllocationLimitReachedException which can be thrown when the allocation limit has been reached
      */
     protected void doAlterAllocationLimit(final int remaining) throws AllocationLimitReachedException {
+        this.metrics.onAllocation(remaining);
+
+        this.allocatedBytes += remaining;
+
         if (this.allocationLimit != -1) {
             if ((this.allocationLimit - remaining) < 0) {
                 throw new AllocationLimitReachedException("Could not allocate more bytes because the allocation limit has been reached");
@@ -186,11 +288,46 @@ public abstract class NBTStreamReader {
         this.checkForExpectedInput((this.useVarInt ? length : (length * 4)), "The NBT data is invalid: An int array value was expected");
 
         final int[] ints = new int[length];
+        final int decoded = this.useVarInt ? this.readVarIntArray(ints) : 0;
 
-        for (int i = 0; i < length; i++) {
+        for (int i = decoded; i < length; i++) {
             ints[i] = this.readIntValue();
         }
 
         return ints;
     }
+
+    /**
+     * Decodes as many varints of the given array as possible with
+     * {@link org.terracottamc.taglib.util.VarIntUtil#readVarIntArray(io.netty.buffer.ByteBuf, int[], int)} and charges
+     * the consumed bytes like reading them one by one would do
+     *
+     * @param ints which should be filled
+     *
+     * @return the amount of decoded values, the remaining values have to be read one by one
+     */
+    private int readVarIntArray(final int[] ints) {
+        final int startIndex = this.buffer.readerIndex();
+        final int decoded = VarIntUtil.readVarIntArray(this.buffer, ints, 0);
+        final int consumed = this.buffer.readerIndex() - startIndex;
+
+        if (consumed == 0) {
+            return 0;
+        }
+
+        // the byte-wise path reports exactly where the limit is reached, so it takes over in that case
+        if (this.allocationLimit != -1 && this.allocationLimit < consumed) {
+            this.buffer.readerIndex(startIndex);
+
+            return 0;
+        }
+
+        try {
+            this.doAlterAllocationLimit(consumed);
+        } catch (final AllocationLimitReachedException e) {
+            e.printStackTrace();
+        }
+
+        return decoded;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package org.terracottamc.taglib.nbt.io;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public enum NBTTextFormat {
+
+    /**
+     * The stringified NBT format, e.g. {@code {Health:20.0f,Tags:["a","b"]}}
+     */
+    SNBT,
+    /**
+     * Plain JSON in which every number loses its NBT type, e.g. {@code {"Health":20.0,"Tags":["a","b"]}}
+     */
+    JSON
+}
@@ -0,0 +1,464 @@
+package org.terracottamc.taglib.nbt.io;
+
+import io.netty.buffer.ByteBuf;
+import org.terracottamc.taglib.util.VarIntUtil;
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+import org.terracottamc.taglib.util.nbt.NBTDepthLimitReachedException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Transcodes binary NBT data into SNBT or JSON while it is read. No tree and no {@link String} per value is
+ * created, the text is appended straight to the target
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTTextTranscoder extends NBTStreamReader {
+
+    private static final int INITIAL_FRAME_CAPACITY = 16;
+
+    private final NBTTextFormat format;
+    private final char[] digits = new char[20];
+
+    private byte[] frameTagIds = new byte[NBTTextTranscoder.INITIAL_FRAME_CAPACITY];
+    private byte[] frameElementTagIds = new byte[NBTTextTranscoder.INITIAL_FRAME_CAPACITY];
+    private int[] frameRemaining = new int[NBTTextTranscoder.INITIAL_FRAME_CAPACITY];
+    private boolean[] frameEmpty = new boolean[NBTTextTranscoder.INITIAL_FRAME_CAPACITY];
+    private int depth = 0;
+
+    /**
+     * Creates a new {@link NBTTextTranscoder}
+     *
+     * @param buffer    which contains the binary NBT data
+     * @param byteOrder which represents the order of the bytes to handle
+     * @param format    which is the text format that should be produced
+     */
+    public NBTTextTranscoder(final ByteBuf buffer, final ByteOrder byteOrder, final NBTTextFormat format) {
+        super(buffer, byteOrder);
+
+        this.format = format;
+    }
+
+    /**
+     * Transcodes the named root compound of the buffer into the given {@link Appendable}
+     *
+     * @param target which the text is appended to
+     *
+     * @throws java.io.IOException when the text could not be appended
+     */
+    public void transcodeCompound(final Appendable target) throws IOException {
+        this.transcodeRoot(NBTConstants.TAG_COMPOUND, target);
+    }
+
+    /**
+     * Transcodes the named root compound of the buffer into the given {@link io.netty.buffer.ByteBuf} as UTF-8
+     *
+     * @param target which the text is written to
+     */
+    public void transcodeCompound(final ByteBuf target) {
+        try {
+            this.transcodeRoot(NBTConstants.TAG_COMPOUND, new ByteBufAppendable(target));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Transcodes the named root list of the buffer into the given {@link Appendable}
+     *
+     * @param target which the text is appended to
+     *
+     * @throws java.io.IOException when the text could not be appended
+     */
+    public void transcodeList(final Appendable target) throws IOException {
+        this.transcodeRoot(NBTConstants.TAG_LIST, target);
+    }
+
+    /**
+     * Transcodes the named root list of the buffer into the given {@link io.netty.buffer.ByteBuf} as UTF-8
+     *
+     * @param target which the text is written to
+     */
+    public void transcodeList(final ByteBuf target) {
+        try {
+            this.transcodeRoot(NBTConstants.TAG_LIST, new ByteBufAppendable(target));
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void transcodeRoot(final byte expectedTagId, final Appendable target) throws IOException {
+        this.checkForExpectedInput((this.isUsingVarInt() ? 2 : 3), "The NBT data is invalid: There is not enough data available", false);
+
+        final byte tagId = this.readByteValue();
+
+        if (tagId != expectedTagId) {
+            throw new IOException("The NBT data is invalid: The tag " + expectedTagId + " was expected but " + tagId + " was found");
+        }
+
+        this.skipString();
+
+        this.depth = 0;
+        this.pushFrame(tagId, target);
+
+        while (this.depth > 0) {
+            final int top = this.depth - 1;
+
+            if (this.frameTagIds[top] == NBTConstants.TAG_COMPOUND) {
+                final byte entryTagId = this.readByteValue();
+
+                if (entryTagId == NBTConstants.TAG_END) {
+                    target.append('}');
+
+                    this.depth--;
+
+                    continue;
+                }
+
+                this.appendSeparator(top, target);
+                this.appendKey(target);
+
+                target.append(':');
+
+                this.appendValue(entryTagId, target);
+            } else {
+                if (this.frameRemaining[top] <= 0) {
+                    target.append(']');
+
+                    this.depth--;
+
+                    continue;
+                }
+
+                this.frameRemaining[top]--;
+
+                this.appendSeparator(top, target);
+                this.appendValue(this.frameElementTagIds[top], target);
+            }
+        }
+    }
+
+    private void appendValue(final byte tagId, final Appendable target) throws IOException {
+        final boolean snbt = this.format == NBTTextFormat.SNBT;
+
+        switch (tagId) {
+            case NBTConstants.TAG_BYTE:
+                this.appendLong(this.readByteValue(), target);
+
+                if (snbt) {
+                    target.append('b');
+                }
+                break;
+            case NBTConstants.TAG_SHORT:
+                this.appendLong(this.readShortValue(), target);
+
+                if (snbt) {
+                    target.append('s');
+                }
+                break;
+            case NBTConstants.TAG_INT:
+                this.appendLong(this.readIntValue(), target);
+                break;
+            case NBTConstants.TAG_LONG:
+                this.appendLong(this.readLongValue(), target);
+
+                if (snbt) {
+                    target.append('L');
+                }
+                break;
+            case NBTConstants.TAG_FLOAT:
+                this.appendFloatingPoint(this.readFloatValue(), true, target);
+                break;
+            case NBTConstants.TAG_DOUBLE:
+                this.appendFloatingPoint(this.readDoubleValue(), false, target);
+                break;
+            case NBTConstants.TAG_BYTE_ARRAY: {
+                final int length = this.readIntValue();
+
+                this.checkForExpectedInput(length, "The NBT data is invalid: A byte array value was expected");
+
+                final ByteBuf buffer = this.getBuffer();
+
+                target.append(snbt ? "[B;" : "[");
+
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        target.append(',');
+                    }
+
+                    this.appendLong(buffer.readByte(), target);
+
+                    if (snbt) {
+                        target.append('b');
+                    }
+                }
+
+                target.append(']');
+                break;
+            }
+            case NBTConstants.TAG_STRING:
+                this.appendString(target);
+                break;
+            case NBTConstants.TAG_LIST:
+            case NBTConstants.TAG_COMPOUND:
+                this.pushFrame(tagId, target);
+                break;
+            case NBTConstants.TAG_INT_ARRAY: {
+                final int length = this.readIntValue();
+
+                this.checkForExpectedInput((this.isUsingVarInt() ? length : (length * 4)), "The NBT data is invalid: An int array value was expected");
+
+                target.append(snbt ? "[I;" : "[");
+
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        target.append(',');
+                    }
+
+                    this.appendLong(this.readIntValue(), target);
+                }
+
+                target.append(']');
+                break;
+            }
+            default:
+                throw new IOException("The NBT data is invalid: The tag " + tagId + " is unknown");
+        }
+    }
+
+    /**
+     * Reads the header of a compound or list, pushes a new frame for it and appends its opening bracket
+     *
+     * @param tagId  which is representative for the identifier of the compound or list
+     * @param target which the opening bracket is appended to
+     *
+     * @throws java.io.IOException when the text could not be appended
+     */
+    private void pushFrame(final byte tagId, final Appendable target) throws IOException {
+        final int maxDepth = this.getMaxDepth();
+
+        if (maxDepth != -1 && this.depth >= maxDepth) {
+            throw new NBTDepthLimitReachedException(maxDepth);
+        }
+
+        if (this.depth == this.frameTagIds.length) {
+            final int newLength = this.frameTagIds.length << 1;
+
+            this.frameTagIds = Arrays.copyOf(this.frameTagIds, newLength);
+            this.frameElementTagIds = Arrays.copyOf(this.frameElementTagIds, newLength);
+            this.frameRemaining = Arrays.copyOf(this.frameRemaining, newLength);
+            this.frameEmpty = Arrays.copyOf(this.frameEmpty, newLength);
+        }
+
+        if (tagId == NBTConstants.TAG_COMPOUND) {
+            this.checkForExpectedInput(1, "The NBT data is invalid: A tag identifier was expected", false);
+
+            target.append('{');
+        } else {
+            this.checkForExpectedInput((this.isUsingVarInt() ? 2 : 5), "The NBT data is invalid: A TagList header was expected", false);
+
+            final byte elementTagId = this.readByteValue();
+            final int length = this.readIntValue();
+
+            this.frameElementTagIds[this.depth] = elementTagId;
+            this.frameRemaining[this.depth] = elementTagId == NBTConstants.TAG_END ? 0 : length;
+
+            target.append('[');
+        }
+
+        this.frameTagIds[this.depth] = tagId;
+        this.frameEmpty[this.depth] = true;
+        this.depth++;
+    }
+
+    private void appendSeparator(final int top, final Appendable target) throws IOException {
+        if (this.frameEmpty[top]) {
+            this.frameEmpty[top] = false;
+        } else {
+            target.append(',');
+        }
+    }
+
+    /**
+     * Appends the key of the next compound entry. SNBT keys are only quoted when they contain characters which
+     * are not allowed in unquoted keys
+     *
+     * @param target which the key is appended to
+     *
+     * @throws java.io.IOException when the text could not be appended
+     */
+    private void appendKey(final Appendable target) throws IOException {
+        if (this.format == NBTTextFormat.JSON) {
+            this.appendString(target);
+
+            return;
+        }
+
+        final int length = this.readStringLength();
+        final ByteBuf buffer = this.getBuffer();
+        final int readerIndex = buffer.readerIndex();
+
+        boolean quoted = length == 0;
+
+        for (int i = 0; i < length && !quoted; i++) {
+            quoted = !NBTTextTranscoder.isUnquotedCharacter(buffer.getByte(readerIndex + i));
+        }
+
+        if (quoted) {
+            this.appendQuotedBytes(length, target);
+        } else {
+            for (int i = 0; i < length; i++) {
+                target.append((char) buffer.readByte());
+            }
+        }
+    }
+
+    private void appendString(final Appendable target) throws IOException {
+        this.appendQuotedBytes(this.readStringLength(), target);
+    }
+
+    /**
+     * Decodes the given amount of UTF-8 bytes and appends them as a quoted and escaped string
+     *
+     * @param length which represents the amount of bytes to decode
+     * @param target which the string is appended to
+     *
+     * @throws java.io.IOException when the text could not be appended
+     */
+    private void appendQuotedBytes(final int length, final Appendable target) throws IOException {
+        final ByteBuf buffer = this.getBuffer();
+        final int end = buffer.readerIndex() + length;
+
+        target.append('"');
+
+        while (buffer.readerIndex() < end) {
+            final int first = buffer.readByte() & 0xff;
+
+            if (first < 0x80) {
+                this.appendEscaped((char) first, target);
+            } else if (first >= 0xc0 && first < 0xe0 && buffer.readerIndex() < end) {
+                this.appendEscaped((char) (((first & 0x1f) << 6) | (buffer.readByte() & 0x3f)), target);
+            } else if (first >= 0xe0 && first < 0xf0 && buffer.readerIndex() + 1 < end) {
+                final int second = buffer.readByte() & 0x3f;
+                final int third = buffer.readByte() & 0x3f;
+
+                target.append((char) (((first & 0x0f) << 12) | (second << 6) | third));
+            } else if (first >= 0xf0 && first < 0xf8 && buffer.readerIndex() + 2 < end) {
+                final int second = buffer.readByte() & 0x3f;
+                final int third = buffer.readByte() & 0x3f;
+                final int fourth = buffer.readByte() & 0x3f;
+                final int codePoint = ((first & 0x07) << 18) | (second << 12) | (third << 6) | fourth;
+
+                target.append(Character.highSurrogate(codePoint));
+                target.append(Character.lowSurrogate(codePoint));
+            } else {
+                target.append('\ufffd');
+            }
+        }
+
+        buffer.readerIndex(end);
+
+        target.append('"');
+    }
+
+    private void appendEscaped(final char c, final Appendable target) throws IOException {
+        if (c == '"' || c == '\\') {
+            target.append('\\').append(c);
+        } else if (c < 0x20 && this.format == NBTTextFormat.JSON) {
+            target.append("\\u00");
+            target.append(Character.forDigit(c >> 4, 16));
+            target.append(Character.forDigit(c & 0xf, 16));
+        } else {
+            target.append(c);
+        }
+    }
+
+    private void appendLong(long value, final Appendable target) throws IOException {
+        if (target instanceof StringBuilder) {
+            ((StringBuilder) target).append(value);
+
+            return;
+        }
+
+        if (value == Long.MIN_VALUE) {
+            target.append("-9223372036854775808");
+
+            return;
+        }
+
+        if (value < 0) {
+            target.append('-');
+
+            value = -value;
+        }
+
+        int position = this.digits.length;
+
+        do {
+            this.digits[--position] = (char) ('0' + (value % 10));
+
+            value /= 10;
+        } while (value != 0);
+
+        while (position < this.digits.length) {
+            target.append(this.digits[position++]);
+        }
+    }
+
+    private void appendFloatingPoint(final double value, final boolean isFloat, final Appendable target) throws IOException {
+        final boolean snbt = this.format == NBTTextFormat.SNBT;
+
+        if (!snbt && (Double.isNaN(value) || Double.isInfinite(value))) {
+            target.append("null");
+
+            return;
+        }
+
+        if (target instanceof StringBuilder) {
+            if (isFloat) {
+                ((StringBuilder) target).append((float) value);
+            } else {
+                ((StringBuilder) target).append(value);
+            }
+        } else {
+            target.append(isFloat ? Float.toString((float) value) : Double.toString(value));
+        }
+
+        // NaN and the infinities keep their suffix as well, so SNBTParser reads them as numbers again
+        if (snbt) {
+            target.append(isFloat ? 'f' : 'd');
+        }
+    }
+
+    private int readStringLength() {
+        final int length = this.isUsingVarInt() ? VarIntUtil.readUnsignedVarInt(this) : this.readShortValue();
+
+        this.checkForExpectedInput(length, "The NBT data is invalid: A String value was expected");
+
+        return length;
+    }
+
+    private void skipString() {
+        final int length = this.readStringLength();
+        final ByteBuf buffer = this.getBuffer();
+
+        buffer.readerIndex(buffer.readerIndex() + length);
+    }
+
+    private static boolean isUnquotedCharacter(final byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') ||
+                b == '_' || b == '-' || b == '.' || b == '+';
+    }
+}
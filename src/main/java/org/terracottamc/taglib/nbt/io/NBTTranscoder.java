@@ -0,0 +1,455 @@
+package org.terracottamc.taglib.nbt.io;
+
+import io.netty.buffer.ByteBuf;
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+import org.terracottamc.taglib.util.nbt.NBTDepthLimitReachedException;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Converts encoded nbt data from one encoding into another one, for example from the big endian encoding of files
+ * into the little endian encoding with {@link org.terracottamc.taglib.util.VarIntUtil} of the network. The data is
+ * converted value by value without building a tree, numbers are never boxed and strings are copied as raw bytes
+ * with only their length prefix being encoded again. Unknown tags within compounds are dropped like the
+ * {@link org.terracottamc.taglib.nbt.io.NBTReader} does. A transcoder is not thread safe
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTTranscoder {
+
+    private static final int INITIAL_FRAME_CAPACITY = 16;
+    private static final int MAX_VAR_INT_SIZE = 5;
+    private static final int MAX_VAR_LONG_SIZE = 10;
+
+    private final ByteOrder sourceByteOrder;
+    private final ByteOrder targetByteOrder;
+
+    private boolean sourceUsingVarInt = false;
+    private boolean targetUsingVarInt = false;
+    private int maxDepth = -1;
+
+    private ByteBuf source;
+    private ByteBuf target;
+
+    private byte[] frameTagIds = new byte[NBTTranscoder.INITIAL_FRAME_CAPACITY];
+    private byte[] frameElementTagIds = new byte[NBTTranscoder.INITIAL_FRAME_CAPACITY];
+    private int[] frameRemaining = new int[NBTTranscoder.INITIAL_FRAME_CAPACITY];
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.nbt.io.NBTTranscoder} with given {@link java.nio.ByteOrder}s
+     *
+     * @param sourceByteOrder which represents the order of the bytes which are read
+     * @param targetByteOrder which represents the order of the bytes which are written
+     */
+    public NBTTranscoder(final ByteOrder sourceByteOrder, final ByteOrder targetByteOrder) {
+        this.sourceByteOrder = sourceByteOrder;
+        this.targetByteOrder = targetByteOrder;
+    }
+
+    /**
+     * Updates whether the data which is read uses {@link org.terracottamc.taglib.util.VarIntUtil} encoding
+     *
+     * @param sourceUsingVarInt which should be updated
+     */
+    public void setSourceUseVarInt(final boolean sourceUsingVarInt) {
+        this.sourceUsingVarInt = sourceUsingVarInt;
+    }
+
+    /**
+     * Proofs whether the data which is read uses {@link org.terracottamc.taglib.util.VarIntUtil} encoding
+     *
+     * @return whether the source uses varints
+     */
+    public boolean isSourceUsingVarInt() {
+        return this.sourceUsingVarInt;
+    }
+
+    /**
+     * Updates whether the data which is written uses {@link org.terracottamc.taglib.util.VarIntUtil} encoding
+     *
+     * @param targetUsingVarInt which should be updated
+     */
+    public void setTargetUseVarInt(final boolean targetUsingVarInt) {
+        this.targetUsingVarInt = targetUsingVarInt;
+    }
+
+    /**
+     * Proofs whether the data which is written uses {@link org.terracottamc.taglib.util.VarIntUtil} encoding
+     *
+     * @return whether the target uses varints
+     */
+    public boolean isTargetUsingVarInt() {
+        return this.targetUsingVarInt;
+    }
+
+    /**
+     * Updates the maximum amount of nested compounds and lists, -1 disables the limit
+     *
+     * @param maxDepth which should be updated
+     */
+    public void setMaxDepth(final int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Retrieves the maximum amount of nested compounds and lists
+     *
+     * @return a fresh depth limit or -1 when there is no limit
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * Converts the named tag at the reader index of the given source into the given target. The reader index of the
+     * source is moved behind the tag
+     *
+     * @param source which contains the encoded tag
+     * @param target which receives the converted tag
+     *
+     * @throws java.lang.IllegalArgumentException                            when the encoded data is malformed or truncated
+     * @throws org.terracottamc.taglib.util.nbt.NBTDepthLimitReachedException when the data is nested too deeply
+     */
+    public void transcode(final ByteBuf source, final ByteBuf target) {
+        this.source = source;
+        this.target = target;
+
+        try {
+            final byte tagId = source.readByte();
+
+            if (tagId < NBTConstants.TAG_END || tagId > NBTConstants.TAG_INT_ARRAY) {
+                throw new IllegalArgumentException("The tag " + tagId + " is unknown");
+            }
+
+            target.writeByte(tagId);
+
+            if (tagId != NBTConstants.TAG_END) {
+                this.transcodeString();
+                this.transcodeValue(tagId);
+            }
+        } catch (final IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("The encoded data is truncated", e);
+        } finally {
+            this.source = null;
+            this.target = null;
+        }
+    }
+
+    /**
+     * Converts the value with the given tag. Nested compounds and lists are converted with an explicit stack of
+     * frames, so deeply nested data does not overflow the call stack
+     *
+     * @param tagId which represents the tag of the value
+     */
+    private void transcodeValue(final byte tagId) {
+        int depth = 0;
+
+        if (this.enterValue(tagId, depth)) {
+            depth++;
+        }
+
+        while (depth > 0) {
+            final int top = depth - 1;
+            final byte elementTagId;
+
+            if (this.frameTagIds[top] == NBTConstants.TAG_COMPOUND) {
+                elementTagId = this.source.readByte();
+
+                if (elementTagId == NBTConstants.TAG_END) {
+                    this.target.writeByte(NBTConstants.TAG_END);
+
+                    depth--;
+
+                    continue;
+                }
+
+                // unknown tags do not carry a name and are dropped
+                if (elementTagId < NBTConstants.TAG_BYTE || elementTagId > NBTConstants.TAG_INT_ARRAY) {
+                    continue;
+                }
+
+                this.target.writeByte(elementTagId);
+                this.transcodeString();
+            } else {
+                if (this.frameRemaining[top] <= 0) {
+                    depth--;
+
+                    continue;
+                }
+
+                this.frameRemaining[top]--;
+
+                elementTagId = this.frameElementTagIds[top];
+            }
+
+            if (this.enterValue(elementTagId, depth)) {
+                depth++;
+            }
+        }
+    }
+
+    /**
+     * Converts the given value when it is no container or converts its header and records a frame for it at the
+     * given depth otherwise
+     *
+     * @param tagId which represents the tag of the value
+     * @param depth which represents the depth the frame is recorded at
+     *
+     * @return whether a frame has been recorded
+     */
+    private boolean enterValue(final byte tagId, final int depth) {
+        switch (tagId) {
+            case NBTConstants.TAG_BYTE:
+                this.target.writeByte(this.source.readByte());
+
+                return false;
+            case NBTConstants.TAG_SHORT:
+                this.writeShort(this.readShort());
+
+                return false;
+            case NBTConstants.TAG_INT:
+                this.writeInt(this.readInt());
+
+                return false;
+            case NBTConstants.TAG_LONG:
+                this.writeLong(this.readLong());
+
+                return false;
+            case NBTConstants.TAG_FLOAT:
+                this.writeFixedInt(this.readFixedInt());
+
+                return false;
+            case NBTConstants.TAG_DOUBLE:
+                this.writeFixedLong(this.readFixedLong());
+
+                return false;
+            case NBTConstants.TAG_STRING:
+                this.transcodeString();
+
+                return false;
+            case NBTConstants.TAG_BYTE_ARRAY: {
+                final int length = this.readLength();
+
+                this.writeInt(length);
+                this.target.writeBytes(this.source, length);
+
+                return false;
+            }
+            case NBTConstants.TAG_INT_ARRAY:
+                this.transcodeIntArray();
+
+                return false;
+            case NBTConstants.TAG_LIST: {
+                final byte elementTagId = this.source.readByte();
+                final int length = this.readLength();
+
+                if (length > 0 && (elementTagId < NBTConstants.TAG_BYTE || elementTagId > NBTConstants.TAG_INT_ARRAY)) {
+                    throw new IllegalArgumentException("The list contains the unknown tag " + elementTagId);
+                }
+
+                this.target.writeByte(elementTagId);
+                this.writeInt(length);
+                this.pushFrame(depth, tagId, elementTagId, length);
+
+                return true;
+            }
+            case NBTConstants.TAG_COMPOUND:
+                this.pushFrame(depth, tagId, NBTConstants.TAG_END, 0);
+
+                return true;
+            default:
+                throw new IllegalArgumentException("The tag " + tagId + " is unknown");
+        }
+    }
+
+    private void pushFrame(final int depth, final byte tagId, final byte elementTagId, final int remaining) {
+        if (this.maxDepth != -1 && depth >= this.maxDepth) {
+            throw new NBTDepthLimitReachedException(this.maxDepth);
+        }
+
+        if (depth == this.frameTagIds.length) {
+            final int newCapacity = depth << 1;
+
+            this.frameTagIds = Arrays.copyOf(this.frameTagIds, newCapacity);
+            this.frameElementTagIds = Arrays.copyOf(this.frameElementTagIds, newCapacity);
+            this.frameRemaining = Arrays.copyOf(this.frameRemaining, newCapacity);
+        }
+
+        this.frameTagIds[depth] = tagId;
+        this.frameElementTagIds[depth] = elementTagId;
+        this.frameRemaining[depth] = remaining;
+    }
+
+    /**
+     * Converts the length prefix of a string and copies its bytes without decoding them
+     */
+    private void transcodeString() {
+        final int length;
+
+        if (this.sourceUsingVarInt) {
+            length = this.readUnsignedVarInt();
+        } else {
+            length = this.sourceByteOrder == ByteOrder.LITTLE_ENDIAN ? this.source.readUnsignedShortLE() :
+                    this.source.readUnsignedShort();
+        }
+
+        if (this.targetUsingVarInt) {
+            this.writeUnsignedVarLong(length & 0xFFFFFFFFL);
+        } else {
+            if (length < 0 || length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("The string exceeds the maximum length of " + Short.MAX_VALUE +
+                        " bytes");
+            }
+
+            this.writeShort((short) length);
+        }
+
+        this.target.writeBytes(this.source, length);
+    }
+
+    /**
+     * Converts an int array, arrays whose encoding does not change are copied at once
+     */
+    private void transcodeIntArray() {
+        final int length = this.readLength();
+
+        this.writeInt(length);
+
+        if (!this.sourceUsingVarInt && !this.targetUsingVarInt && this.sourceByteOrder == this.targetByteOrder) {
+            this.target.writeBytes(this.source, length << 2);
+
+            return;
+        }
+
+        for (int i = 0; i < length; i++) {
+            this.writeInt(this.readInt());
+        }
+    }
+
+    private int readLength() {
+        final int length = this.readInt();
+
+        if (length < 0) {
+            throw new IllegalArgumentException("The encoded data contains the negative length " + length);
+        }
+
+        // every element occupies at least one byte
+        if (length > this.source.readableBytes()) {
+            throw new IllegalArgumentException("The encoded data is truncated");
+        }
+
+        return length;
+    }
+
+    private short readShort() {
+        return this.sourceByteOrder == ByteOrder.LITTLE_ENDIAN ? this.source.readShortLE() : this.source.readShort();
+    }
+
+    private int readInt() {
+        if (this.sourceUsingVarInt) {
+            final int zigZag = this.readUnsignedVarInt();
+
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+
+        return this.readFixedInt();
+    }
+
+    private long readLong() {
+        if (this.sourceUsingVarInt) {
+            final long zigZag = this.readUnsignedVarLong(NBTTranscoder.MAX_VAR_LONG_SIZE);
+
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+
+        return this.readFixedLong();
+    }
+
+    private int readFixedInt() {
+        return this.sourceByteOrder == ByteOrder.LITTLE_ENDIAN ? this.source.readIntLE() : this.source.readInt();
+    }
+
+    private long readFixedLong() {
+        return this.sourceByteOrder == ByteOrder.LITTLE_ENDIAN ? this.source.readLongLE() : this.source.readLong();
+    }
+
+    private int readUnsignedVarInt() {
+        return (int) this.readUnsignedVarLong(NBTTranscoder.MAX_VAR_INT_SIZE);
+    }
+
+    private long readUnsignedVarLong(final int maxSize) {
+        long value = 0L;
+
+        for (int size = 0; size < maxSize; size++) {
+            final byte byteValue = this.source.readByte();
+
+            value |= (long) (byteValue & 0x7F) << (size * 7);
+
+            if ((byteValue & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("The encoded varint is too long");
+    }
+
+    private void writeShort(final short value) {
+        if (this.targetByteOrder == ByteOrder.LITTLE_ENDIAN) {
+            this.target.writeShortLE(value);
+        } else {
+            this.target.writeShort(value);
+        }
+    }
+
+    private void writeInt(final int value) {
+        if (this.targetUsingVarInt) {
+            this.writeUnsignedVarLong((value << 1 ^ value >> 31) & 0xFFFFFFFFL);
+        } else {
+            this.writeFixedInt(value);
+        }
+    }
+
+    private void writeLong(final long value) {
+        if (this.targetUsingVarInt) {
+            this.writeUnsignedVarLong(value << 1 ^ value >> 63);
+        } else {
+            this.writeFixedLong(value);
+        }
+    }
+
+    private void writeFixedInt(final int value) {
+        if (this.targetByteOrder == ByteOrder.LITTLE_ENDIAN) {
+            this.target.writeIntLE(value);
+        } else {
+            this.target.writeInt(value);
+        }
+    }
+
+    private void writeFixedLong(final long value) {
+        if (this.targetByteOrder == ByteOrder.LITTLE_ENDIAN) {
+            this.target.writeLongLE(value);
+        } else {
+            this.target.writeLong(value);
+        }
+    }
+
+    private void writeUnsignedVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            this.target.writeByte((int) (value & 0x7F | 0x80));
+
+            value >>>= 7;
+        }
+
+        this.target.writeByte((int) value);
+    }
+}
@@ -0,0 +1,56 @@
+package org.terracottamc.taglib.nbt.io;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public enum NBTValidationResult {
+
+    /**
+     * The data is a well-formed compound which is within all limits
+     */
+    VALID,
+    /**
+     * The data ends before the compound is complete
+     */
+    TRUNCATED,
+    /**
+     * The root tag is no compound
+     */
+    INVALID_ROOT,
+    /**
+     * A list declares an element tag which is unknown
+     */
+    UNKNOWN_TAG,
+    /**
+     * A string, array or list declares a negative length
+     */
+    NEGATIVE_LENGTH,
+    /**
+     * A varint is longer than the reader accepts
+     */
+    VAR_INT_TOO_LONG,
+    /**
+     * A string is longer than the configured maximum length
+     */
+    STRING_TOO_LONG,
+    /**
+     * A key refers to an index which is not part of the key dictionary
+     */
+    UNKNOWN_KEY,
+    /**
+     * The compounds and lists are nested deeper than the configured maximum depth
+     */
+    DEPTH_LIMIT_REACHED,
+    /**
+     * Decoding the data would consume more than the configured allocation limit
+     */
+    ALLOCATION_LIMIT_REACHED
+}
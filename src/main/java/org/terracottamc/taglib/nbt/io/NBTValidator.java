@@ -0,0 +1,573 @@
+package org.terracottamc.taglib.nbt.io;
+
+import io.netty.buffer.ByteBuf;
+import org.terracottamc.taglib.util.allocation.Allocation;
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Validates an encoded compound without decoding it, so that untrusted data can be rejected before any resources
+ * are spent on it. The tag identifiers, lengths, varints, depth and string lengths are checked exactly like a
+ * {@link org.terracottamc.taglib.nbt.io.NBTReader} with the same configuration checks them, and the
+ * {@link org.terracottamc.taglib.util.allocation.Allocation} costs are charged in the same way, so
+ * {@link NBTValidator#getDecodeCost()} equals the amount of allocated bytes a reader reports for valid data.
+ * The data is walked with an explicit stack of frames which is only grown when a document is nested deeper than
+ * every document before, apart from that the validator does not allocate anything. The reader index of the buffer
+ * is never moved. A validator is not thread safe
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTValidator {
+
+    private static final int INITIAL_FRAME_CAPACITY = 16;
+    private static final int MAX_VAR_INT_SIZE = 7;
+    private static final int MAX_UNSIGNED_VAR_INT_SIZE = 6;
+    private static final int MAX_VAR_LONG_SIZE = 10;
+
+    private final ByteOrder byteOrder;
+
+    private boolean useVarInt = false;
+    private boolean keyDictionary = false;
+    private int allocationLimit = -1;
+    private int maxDepth = -1;
+    private int maxStringLength = -1;
+
+    private byte[] frameTagIds = new byte[NBTValidator.INITIAL_FRAME_CAPACITY];
+    private byte[] frameElementTagIds = new byte[NBTValidator.INITIAL_FRAME_CAPACITY];
+    private int[] frameRemaining = new int[NBTValidator.INITIAL_FRAME_CAPACITY];
+    private int depth = 0;
+    private int maxDepthReached = 0;
+
+    private ByteBuf buffer = null;
+    private int position = 0;
+    private int end = 0;
+    private int value = 0;
+    private int dictionaryKeys = 0;
+    private long decodeCost = 0L;
+    private int encodedSize = 0;
+    private int errorIndex = -1;
+    private NBTValidationResult result = NBTValidationResult.VALID;
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.nbt.io.NBTValidator} with given {@link java.nio.ByteOrder}
+     *
+     * @param byteOrder which represents the order of the bytes to validate
+     */
+    public NBTValidator(final ByteOrder byteOrder) {
+        this.byteOrder = byteOrder;
+    }
+
+    /**
+     * Updates whether {@link org.terracottamc.taglib.util.VarIntUtil} encoded numbers are expected
+     *
+     * @param useVarInt which should be updated
+     */
+    public void setUseVarInt(final boolean useVarInt) {
+        this.useVarInt = useVarInt;
+    }
+
+    /**
+     * Updates whether the keys are encoded with the key dictionary of {@link NBTWriter#setKeyDictionary(boolean)}
+     *
+     * @param keyDictionary which should be updated
+     */
+    public void setKeyDictionary(final boolean keyDictionary) {
+        this.keyDictionary = keyDictionary;
+    }
+
+    /**
+     * Set the allocation limit the decode cost of a document must not exceed
+     *
+     * @param allocationLimit which should be set or -1 when the cost should not be limited
+     */
+    public void setAllocationLimit(final int allocationLimit) {
+        this.allocationLimit = allocationLimit;
+    }
+
+    /**
+     * Set the maximum amount of nested compounds and lists a document may contain
+     *
+     * @param maxDepth which should be set or -1 when the depth should not be limited
+     */
+    public void setMaxDepth(final int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Set the maximum amount of bytes of every encoded string, including the keys
+     *
+     * @param maxStringLength which should be set or -1 when the length should not be limited
+     */
+    public void setMaxStringLength(final int maxStringLength) {
+        this.maxStringLength = maxStringLength;
+    }
+
+    /**
+     * Validates the compound at the reader index of the given {@link io.netty.buffer.ByteBuf}
+     *
+     * @param buffer which contains the encoded compound
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.io.NBTValidationResult}
+     */
+    public NBTValidationResult validate(final ByteBuf buffer) {
+        this.buffer = buffer;
+        this.position = buffer.readerIndex();
+        this.end = buffer.writerIndex();
+        this.depth = 0;
+        this.maxDepthReached = 0;
+        this.dictionaryKeys = 0;
+        this.decodeCost = 0L;
+        this.encodedSize = 0;
+        this.errorIndex = -1;
+        this.result = NBTValidationResult.VALID;
+
+        final int startIndex = this.position;
+
+        if (this.validateRoot()) {
+            this.encodedSize = this.position - startIndex;
+        } else {
+            this.errorIndex = this.position;
+        }
+
+        this.buffer = null;
+
+        return this.result;
+    }
+
+    /**
+     * Retrieves the amount of bytes a {@link org.terracottamc.taglib.nbt.io.NBTReader} charges against its
+     * allocation limit to decode the document which has been validated last. For invalid documents it is the cost
+     * up to the error
+     *
+     * @return a fresh amount of bytes
+     */
+    public long getDecodeCost() {
+        return this.decodeCost;
+    }
+
+    /**
+     * Retrieves the amount of encoded bytes of the valid document which has been validated last
+     *
+     * @return a fresh amount of bytes or 0 when the document is invalid
+     */
+    public int getEncodedSize() {
+        return this.encodedSize;
+    }
+
+    /**
+     * Retrieves the index within the buffer at which the document which has been validated last became invalid
+     *
+     * @return a fresh index or -1 when the document is valid
+     */
+    public int getErrorIndex() {
+        return this.errorIndex;
+    }
+
+    /**
+     * Retrieves the deepest nesting level of the document which has been validated last
+     *
+     * @return a fresh depth
+     */
+    public int getMaxDepthReached() {
+        return this.maxDepthReached;
+    }
+
+    /**
+     * Walks the root compound and all of its children in the order the reader decodes them
+     *
+     * @return whether the document is valid
+     */
+    private boolean validateRoot() {
+        if (!this.readByte()) {
+            return false;
+        }
+
+        final byte rootTagId = (byte) this.value;
+
+        if (!this.skipKey()) {
+            return false;
+        }
+
+        if (rootTagId != NBTConstants.TAG_COMPOUND) {
+            return this.fail(NBTValidationResult.INVALID_ROOT);
+        }
+
+        if (!this.pushFrame(NBTConstants.TAG_COMPOUND)) {
+            return false;
+        }
+
+        while (this.depth > 0) {
+            final int top = this.depth - 1;
+
+            if (this.frameTagIds[top] == NBTConstants.TAG_COMPOUND) {
+                if (!this.readByte()) {
+                    return false;
+                }
+
+                final byte entryTagId = (byte) this.value;
+
+                if (entryTagId == NBTConstants.TAG_END) {
+                    this.depth--;
+
+                    continue;
+                }
+
+                // unknown tags do not carry a name and are skipped like the reader does
+                if (entryTagId < NBTConstants.TAG_BYTE || entryTagId > NBTConstants.TAG_INT_ARRAY) {
+                    continue;
+                }
+
+                if (!this.skipKey() || !this.skipValue(entryTagId)) {
+                    return false;
+                }
+            } else {
+                if (this.frameRemaining[top] <= 0) {
+                    this.depth--;
+
+                    continue;
+                }
+
+                this.frameRemaining[top]--;
+
+                if (!this.skipValue(this.frameElementTagIds[top])) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Skips the given value or pushes a frame for it when it is a compound or a list
+     *
+     * @param tagId which is representative for the identifier of the value
+     *
+     * @return whether the value is valid so far
+     */
+    private boolean skipValue(final byte tagId) {
+        switch (tagId) {
+            case NBTConstants.TAG_BYTE:
+                return this.skipBytes(1);
+            case NBTConstants.TAG_SHORT:
+                return this.skipBytes(2);
+            case NBTConstants.TAG_INT:
+                return this.readInt();
+            case NBTConstants.TAG_LONG:
+                return this.skipLong();
+            case NBTConstants.TAG_FLOAT:
+                return this.skipBytes(4);
+            case NBTConstants.TAG_DOUBLE:
+                return this.skipBytes(8);
+            case NBTConstants.TAG_BYTE_ARRAY:
+                if (!this.readInt()) {
+                    return false;
+                }
+
+                if (this.value < 0) {
+                    return this.fail(NBTValidationResult.NEGATIVE_LENGTH);
+                }
+
+                return this.skipBytes(this.value);
+            case NBTConstants.TAG_STRING:
+                return this.skipString();
+            case NBTConstants.TAG_LIST:
+            case NBTConstants.TAG_COMPOUND:
+                return this.pushFrame(tagId);
+            case NBTConstants.TAG_INT_ARRAY:
+                return this.skipIntArray();
+            default:
+                return this.fail(NBTValidationResult.UNKNOWN_TAG);
+        }
+    }
+
+    private boolean skipIntArray() {
+        if (!this.readInt()) {
+            return false;
+        }
+
+        final int length = this.value;
+
+        if (length < 0) {
+            return this.fail(NBTValidationResult.NEGATIVE_LENGTH);
+        }
+
+        // the reader charges the expected size before it reads every int on its own
+        if (!this.charge(this.useVarInt ? length : (long) length << 2)) {
+            return false;
+        }
+
+        if (!this.useVarInt) {
+            return this.skipBytes((long) length << 2);
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (!this.readInt()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean skipKey() {
+        if (!this.keyDictionary) {
+            return this.skipString();
+        }
+
+        if (!this.readUnsignedVarInt()) {
+            return false;
+        }
+
+        final int index = this.value;
+
+        if (index == 0) {
+            this.dictionaryKeys++;
+
+            return this.skipString();
+        }
+
+        if (index < 0 || index > this.dictionaryKeys) {
+            return this.fail(NBTValidationResult.UNKNOWN_KEY);
+        }
+
+        return true;
+    }
+
+    private boolean skipString() {
+        if (this.useVarInt ? !this.readUnsignedVarInt() : !this.readShort()) {
+            return false;
+        }
+
+        final int length = this.value;
+
+        if (length < 0) {
+            return this.fail(NBTValidationResult.NEGATIVE_LENGTH);
+        }
+
+        if (this.maxStringLength != -1 && length > this.maxStringLength) {
+            return this.fail(NBTValidationResult.STRING_TOO_LONG);
+        }
+
+        return this.skipBytes(length);
+    }
+
+    /**
+     * Reads the header of a compound or list and pushes a frame for it
+     *
+     * @param tagId which is representative for the identifier of the value
+     *
+     * @return whether the header is valid
+     */
+    private boolean pushFrame(final byte tagId) {
+        if (this.maxDepth != -1 && this.depth >= this.maxDepth) {
+            return this.fail(NBTValidationResult.DEPTH_LIMIT_REACHED);
+        }
+
+        if (this.depth == this.frameTagIds.length) {
+            final int newLength = this.depth << 1;
+
+            this.frameTagIds = Arrays.copyOf(this.frameTagIds, newLength);
+            this.frameElementTagIds = Arrays.copyOf(this.frameElementTagIds, newLength);
+            this.frameRemaining = Arrays.copyOf(this.frameRemaining, newLength);
+        }
+
+        if (tagId == NBTConstants.TAG_COMPOUND) {
+            if (!this.charge(Allocation.TAG_COMPOUND)) {
+                return false;
+            }
+        } else {
+            if (!this.readByte()) {
+                return false;
+            }
+
+            final byte elementTagId = (byte) this.value;
+
+            if (!this.readInt()) {
+                return false;
+            }
+
+            final int length = this.value;
+
+            if (length < 0) {
+                return this.fail(NBTValidationResult.NEGATIVE_LENGTH);
+            }
+
+            if (!this.charge(Allocation.ARRAY_LIST) || !this.charge((long) Allocation.REFERENCE * length)) {
+                return false;
+            }
+
+            if (elementTagId != NBTConstants.TAG_END &&
+                    (elementTagId < NBTConstants.TAG_BYTE || elementTagId > NBTConstants.TAG_INT_ARRAY)) {
+                return this.fail(NBTValidationResult.UNKNOWN_TAG);
+            }
+
+            this.frameElementTagIds[this.depth] = elementTagId;
+            this.frameRemaining[this.depth] = elementTagId == NBTConstants.TAG_END ? 0 : length;
+        }
+
+        this.frameTagIds[this.depth] = tagId;
+        this.depth++;
+
+        if (this.depth > this.maxDepthReached) {
+            this.maxDepthReached = this.depth;
+        }
+
+        return true;
+    }
+
+    private boolean readByte() {
+        if (!this.charge(1) || !this.checkReadable(1)) {
+            return false;
+        }
+
+        this.value = this.buffer.getByte(this.position++);
+
+        return true;
+    }
+
+    private boolean readShort() {
+        if (!this.charge(2) || !this.checkReadable(2)) {
+            return false;
+        }
+
+        this.value = this.byteOrder == ByteOrder.LITTLE_ENDIAN ? this.buffer.getShortLE(this.position) :
+                this.buffer.getShort(this.position);
+        this.position += 2;
+
+        return true;
+    }
+
+    /**
+     * Reads an int like {@link NBTStreamReader#readIntValue()} does, varints are decoded as zigzag encoded longs
+     * of up to seven bytes
+     *
+     * @return whether the int is valid
+     */
+    private boolean readInt() {
+        if (!this.useVarInt) {
+            if (!this.charge(4) || !this.checkReadable(4)) {
+                return false;
+            }
+
+            this.value = this.byteOrder == ByteOrder.LITTLE_ENDIAN ? this.buffer.getIntLE(this.position) :
+                    this.buffer.getInt(this.position);
+            this.position += 4;
+
+            return true;
+        }
+
+        long zigZag = 0L;
+        int size = 0;
+
+        do {
+            if (!this.readByte()) {
+                return false;
+            }
+
+            zigZag |= (long) (this.value & 0x7F) << (size++ * 7);
+
+            if (size > NBTValidator.MAX_VAR_INT_SIZE) {
+                return this.fail(NBTValidationResult.VAR_INT_TOO_LONG);
+            }
+        } while ((this.value & 0x80) == 0x80);
+
+        this.value = (int) (zigZag >> 1) ^ -((int) (zigZag & 1));
+
+        return true;
+    }
+
+    /**
+     * Reads an unsigned varint like {@link org.terracottamc.taglib.util.VarIntUtil#readUnsignedVarInt(NBTStreamReader)}
+     * does, including its overflow of the int
+     *
+     * @return whether the varint is valid
+     */
+    private boolean readUnsignedVarInt() {
+        int unsignedValue = 0;
+        int size = 0;
+
+        do {
+            if (!this.readByte()) {
+                return false;
+            }
+
+            unsignedValue |= (this.value & 0x7F) << (size++ * 7);
+
+            if (size > NBTValidator.MAX_UNSIGNED_VAR_INT_SIZE) {
+                return this.fail(NBTValidationResult.VAR_INT_TOO_LONG);
+            }
+        } while ((this.value & 0x80) == 0x80);
+
+        this.value = unsignedValue;
+
+        return true;
+    }
+
+    private boolean skipLong() {
+        if (!this.useVarInt) {
+            return this.skipBytes(8);
+        }
+
+        int size = 0;
+
+        do {
+            if (size >= NBTValidator.MAX_VAR_LONG_SIZE) {
+                return this.fail(NBTValidationResult.VAR_INT_TOO_LONG);
+            }
+
+            if (!this.readByte()) {
+                return false;
+            }
+
+            size++;
+        } while ((this.value & 0x80) != 0);
+
+        return true;
+    }
+
+    private boolean skipBytes(final long length) {
+        if (!this.charge(length) || !this.checkReadable(length)) {
+            return false;
+        }
+
+        this.position += (int) length;
+
+        return true;
+    }
+
+    private boolean checkReadable(final long length) {
+        return length <= this.end - this.position || this.fail(NBTValidationResult.TRUNCATED);
+    }
+
+    /**
+     * Charges the given amount of bytes like {@link NBTStreamReader#doAlterAllocationLimit(int)} does
+     *
+     * @param amount which represents the amount of bytes
+     *
+     * @return whether the allocation limit has not been exceeded
+     */
+    private boolean charge(final long amount) {
+        this.decodeCost += amount;
+
+        return this.allocationLimit == -1 || this.decodeCost <= this.allocationLimit ||
+                this.fail(NBTValidationResult.ALLOCATION_LIMIT_REACHED);
+    }
+
+    private boolean fail(final NBTValidationResult result) {
+        this.result = result;
+
+        return false;
+    }
+}
@@ -1,13 +1,19 @@
 package org.terracottamc.taglib.nbt.io;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.terracottamc.taglib.metrics.INBTMetrics;
+import org.terracottamc.taglib.metrics.NoOpNBTMetrics;
+import org.terracottamc.taglib.nbt.tag.NBTOffHeapCompound;
 import org.terracottamc.taglib.nbt.tag.NBTTagCompound;
+import org.terracottamc.taglib.nbt.tag.NBTTagList;
 import org.terracottamc.taglib.util.VarIntUtil;
 import org.terracottamc.taglib.util.nbt.NBTConstants;
+import org.terracottamc.taglib.util.nbt.NBTTagIdResolver;
 
-import java.io.IOException;
 import java.nio.ByteOrder;
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,10 +30,24 @@ import java.util.Map;
  */
 public class NBTWriter {
 
+    private static final int VAR_INT_ARRAY_CHUNK_SIZE = 1024;
+    private static final int INITIAL_STREAM_CAPACITY = 16;
+
     private final ByteBuf buffer;
     private final ByteOrder byteOrder;
 
     private boolean useVarInt;
+    private boolean canonical = false;
+    private boolean keyDictionary = false;
+    private final Map<String, Integer> dictionaryIndices = new HashMap<>();
+    private INBTMetrics metrics = NoOpNBTMetrics.INSTANCE;
+
+    private byte[] streamTagIds = new byte[NBTWriter.INITIAL_STREAM_CAPACITY];
+    private byte[] streamElementTagIds = new byte[NBTWriter.INITIAL_STREAM_CAPACITY];
+    private int[] streamRemaining = new int[NBTWriter.INITIAL_STREAM_CAPACITY];
+    private int streamDepth = 0;
+    private int streamStartIndex = 0;
+    private long streamStartNanos = 0L;
 
     public NBTWriter(final ByteBuf buffer, final ByteOrder byteOrder) {
         this.buffer = buffer;
@@ -52,14 +72,107 @@ public class NBTWriter {
         return this.useVarInt;
     }
 
+    /**
+     * Updates whether the canonical encoding should be written, in which the entries of every compound are ordered
+     * by their keys and every empty list has the element type {@link NBTConstants#TAG_END}, so that equal data is
+     * always encoded to the same bytes
+     *
+     * @param canonical which should be updated
+     */
+    public void setCanonical(final boolean canonical) {
+        this.canonical = canonical;
+    }
+
+    /**
+     * Proofs whether the canonical encoding will be written
+     *
+     * @return whether the canonical encoding will be written
+     */
+    public boolean isCanonical() {
+        return this.canonical;
+    }
+
+    /**
+     * Updates whether the keys should be encoded with a key dictionary. This compact encoding is no standard nbt and
+     * can only be read by a {@link org.terracottamc.taglib.nbt.io.NBTReader} which uses a key dictionary as well.
+     * Every key which appears for the first time within a written tag is encoded as 0 followed by the key and added
+     * to the dictionary, every following appearance is only encoded as its index in the dictionary plus one
+     *
+     * @param keyDictionary which should be updated
+     */
+    public void setKeyDictionary(final boolean keyDictionary) {
+        this.keyDictionary = keyDictionary;
+    }
+
+    /**
+     * Proofs whether the keys are encoded with a key dictionary
+     *
+     * @return whether a key dictionary is used
+     */
+    public boolean isUsingKeyDictionary() {
+        return this.keyDictionary;
+    }
+
+    /**
+     * Set the {@link org.terracottamc.taglib.metrics.INBTMetrics} which receives the measurements of this writer
+     *
+     * @param metrics which should be set
+     */
+    public void setMetrics(final INBTMetrics metrics) {
+        this.metrics = metrics == null ? NoOpNBTMetrics.INSTANCE : metrics;
+    }
+
+    /**
+     * Retrieves the {@link org.terracottamc.taglib.metrics.INBTMetrics} which receives the measurements of this writer
+     *
+     * @return a fresh {@link org.terracottamc.taglib.metrics.INBTMetrics}
+     */
+    public INBTMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Retrieves the buffer this writer writes into
+     *
+     * @return a fresh {@link io.netty.buffer.ByteBuf}
+     */
+    ByteBuf getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Retrieves the order of the bytes this writer writes
+     *
+     * @return a fresh {@link java.nio.ByteOrder}
+     */
+    ByteOrder getByteOrder() {
+        return this.byteOrder;
+    }
+
+    /**
+     * Guarantees that the given amount of bytes can be written without resizing the buffer again
+     *
+     * @param bytes which represents the amount of bytes
+     */
+    void reserve(final int bytes) {
+        this.guaranteeBufferCapacity(bytes);
+    }
+
     /**
      * Writes a {@link java.util.List}
      *
      * @param list which should be written
      */
     public void writeTagList(final List<Object> list) {
+        final boolean measuringTime = this.metrics.isMeasuringTime();
+        final long startNanos = measuringTime ? System.nanoTime() : 0L;
+        final int startIndex = this.buffer.writerIndex();
+
+        this.dictionaryIndices.clear();
         this.writeTagHeader(NBTConstants.TAG_LIST, "");
         this.writeTagListValue(list);
+
+        this.metrics.onEncode(this.buffer.writerIndex() - startIndex, measuringTime ? System.nanoTime() - startNanos : 0L);
     }
 
     /**
@@ -68,8 +181,304 @@ public class NBTWriter {
      * @param nbtTagCompound which should be written
      */
     public void writeTagCompound(final NBTTagCompound nbtTagCompound) {
+        final boolean measuringTime = this.metrics.isMeasuringTime();
+        final long startNanos = measuringTime ? System.nanoTime() : 0L;
+        final int startIndex = this.buffer.writerIndex();
+
+        this.dictionaryIndices.clear();
         this.writeTagHeader(NBTConstants.TAG_COMPOUND, nbtTagCompound.getName());
         this.writeTagCompoundValue(nbtTagCompound);
+
+        this.metrics.onEncode(this.buffer.writerIndex() - startIndex, measuringTime ? System.nanoTime() - startNanos : 0L);
+    }
+
+    /**
+     * Writes a {@link org.terracottamc.taglib.nbt.tag.NBTOffHeapCompound}. Its encoded bytes are copied at once when
+     * this writer uses the big endian encoding without {@link org.terracottamc.taglib.util.VarIntUtil} and without the
+     * canonical encoding and without a key dictionary, otherwise it is decoded and written like a {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}
+     *
+     * @param offHeapCompound which should be written
+     */
+    public void writeTagCompound(final NBTOffHeapCompound offHeapCompound) {
+        if (this.byteOrder != ByteOrder.BIG_ENDIAN || this.useVarInt || this.canonical || this.keyDictionary) {
+            this.writeTagCompound(offHeapCompound.toCompound());
+
+            return;
+        }
+
+        final boolean measuringTime = this.metrics.isMeasuringTime();
+        final long startNanos = measuringTime ? System.nanoTime() : 0L;
+        final int encodedSize = offHeapCompound.getEncodedSize();
+
+        this.guaranteeBufferCapacity(encodedSize);
+
+        offHeapCompound.copyEncoded(this.buffer);
+
+        this.metrics.onEncode(encodedSize, measuringTime ? System.nanoTime() - startNanos : 0L);
+    }
+
+    /**
+     * Writes a single entry of a compound, which consists of the header and the value of the entry
+     *
+     * @param tagId which is representative for the identifier of the value
+     * @param key   which stands for the key name
+     * @param value which should be written
+     */
+    public void writeTagEntry(final byte tagId, final String key, final Object value) {
+        this.writeTagHeader(tagId, key);
+        this.writeValuesByTagId(tagId, value);
+    }
+
+    /**
+     * Begins a compound which is written entry by entry without building a
+     * {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}. The compound is either the root tag or an entry of the
+     * compound which has been begun last, every begun compound and list has to be finished by {@link NBTWriter#end()}.
+     * The structure is only validated by the stack of begun compounds and lists, the entries are written in the
+     * given order even if the canonical encoding is used
+     *
+     * @param name which stands for the key name
+     *
+     * @throws java.lang.IllegalStateException when the compound cannot be written at this position
+     */
+    public void beginCompound(final String name) {
+        this.beginNamed(NBTConstants.TAG_COMPOUND, name);
+        this.pushStreamFrame(NBTConstants.TAG_COMPOUND, NBTConstants.TAG_END, 0);
+    }
+
+    /**
+     * Begins a compound which is an element of the list which has been begun last
+     *
+     * @throws java.lang.IllegalStateException when the list does not expect another compound
+     */
+    public void beginCompound() {
+        this.beginElement(NBTConstants.TAG_COMPOUND);
+        this.pushStreamFrame(NBTConstants.TAG_COMPOUND, NBTConstants.TAG_END, 0);
+    }
+
+    /**
+     * Begins a list which is either the root tag or an entry of the compound which has been begun last. Exactly the
+     * given amount of elements with the given tag has to be written before the list is finished by
+     * {@link NBTWriter#end()}
+     *
+     * @param name         which stands for the key name
+     * @param elementTagId which is representative for the identifier of the elements
+     * @param size         which represents the amount of elements
+     *
+     * @throws java.lang.IllegalStateException when the list cannot be written at this position
+     */
+    public void beginList(final String name, final byte elementTagId, final int size) {
+        this.beginNamed(NBTConstants.TAG_LIST, name);
+        this.writeListHeader(elementTagId, size);
+    }
+
+    /**
+     * Begins a list which is an element of the list which has been begun last
+     *
+     * @param elementTagId which is representative for the identifier of the elements
+     * @param size         which represents the amount of elements
+     *
+     * @throws java.lang.IllegalStateException when the list does not expect another list
+     */
+    public void beginList(final byte elementTagId, final int size) {
+        this.beginElement(NBTConstants.TAG_LIST);
+        this.writeListHeader(elementTagId, size);
+    }
+
+    /**
+     * Finishes the compound or list which has been begun last
+     *
+     * @throws java.lang.IllegalStateException when nothing has been begun or the list misses elements
+     */
+    public void end() {
+        if (this.streamDepth == 0) {
+            throw new IllegalStateException("There is no compound or list which could be finished");
+        }
+
+        final int top = this.streamDepth - 1;
+
+        if (this.streamTagIds[top] == NBTConstants.TAG_COMPOUND) {
+            this.writeByteValue(NBTConstants.TAG_END);
+        } else if (this.streamRemaining[top] != 0) {
+            throw new IllegalStateException("The list misses " + this.streamRemaining[top] + " elements");
+        }
+
+        this.streamDepth--;
+
+        if (this.streamDepth == 0) {
+            this.metrics.onEncode(this.buffer.writerIndex() - this.streamStartIndex,
+                    this.metrics.isMeasuringTime() ? System.nanoTime() - this.streamStartNanos : 0L);
+        }
+    }
+
+    /**
+     * Retrieves the amount of compounds and lists which have been begun but not finished yet
+     *
+     * @return a fresh depth
+     */
+    public int getStreamDepth() {
+        return this.streamDepth;
+    }
+
+    public void writeByte(final String name, final byte value) {
+        this.beginNamed(NBTConstants.TAG_BYTE, name);
+        this.writeByteValue(value);
+    }
+
+    public void writeByte(final byte value) {
+        this.beginElement(NBTConstants.TAG_BYTE);
+        this.writeByteValue(value);
+    }
+
+    public void writeShort(final String name, final short value) {
+        this.beginNamed(NBTConstants.TAG_SHORT, name);
+        this.writeShortValue(value);
+    }
+
+    public void writeShort(final short value) {
+        this.beginElement(NBTConstants.TAG_SHORT);
+        this.writeShortValue(value);
+    }
+
+    public void writeInt(final String name, final int value) {
+        this.beginNamed(NBTConstants.TAG_INT, name);
+        this.writeIntValue(value);
+    }
+
+    public void writeInt(final int value) {
+        this.beginElement(NBTConstants.TAG_INT);
+        this.writeIntValue(value);
+    }
+
+    public void writeLong(final String name, final long value) {
+        this.beginNamed(NBTConstants.TAG_LONG, name);
+        this.writeLongValue(value);
+    }
+
+    public void writeLong(final long value) {
+        this.beginElement(NBTConstants.TAG_LONG);
+        this.writeLongValue(value);
+    }
+
+    public void writeFloat(final String name, final float value) {
+        this.beginNamed(NBTConstants.TAG_FLOAT, name);
+        this.writeFloatValue(value);
+    }
+
+    public void writeFloat(final float value) {
+        this.beginElement(NBTConstants.TAG_FLOAT);
+        this.writeFloatValue(value);
+    }
+
+    public void writeDouble(final String name, final double value) {
+        this.beginNamed(NBTConstants.TAG_DOUBLE, name);
+        this.writeDoubleValue(value);
+    }
+
+    public void writeDouble(final double value) {
+        this.beginElement(NBTConstants.TAG_DOUBLE);
+        this.writeDoubleValue(value);
+    }
+
+    public void writeString(final String name, final String value) {
+        this.beginNamed(NBTConstants.TAG_STRING, name);
+        this.writeStringValue(value);
+    }
+
+    public void writeString(final String value) {
+        this.beginElement(NBTConstants.TAG_STRING);
+        this.writeStringValue(value);
+    }
+
+    public void writeByteArray(final String name, final byte[] value) {
+        this.beginNamed(NBTConstants.TAG_BYTE_ARRAY, name);
+        this.writeByteArrayValue(value);
+    }
+
+    public void writeByteArray(final byte[] value) {
+        this.beginElement(NBTConstants.TAG_BYTE_ARRAY);
+        this.writeByteArrayValue(value);
+    }
+
+    public void writeIntArray(final String name, final int[] value) {
+        this.beginNamed(NBTConstants.TAG_INT_ARRAY, name);
+        this.writeIntArrayValue(value);
+    }
+
+    public void writeIntArray(final int[] value) {
+        this.beginElement(NBTConstants.TAG_INT_ARRAY);
+        this.writeIntArrayValue(value);
+    }
+
+    /**
+     * Writes the header of a named entry of the compound which has been begun last or of a root tag
+     *
+     * @param tagId which is representative for the identifier of the entry
+     * @param name  which stands for the key name
+     */
+    private void beginNamed(final byte tagId, final String name) {
+        if (this.streamDepth == 0) {
+            if (tagId != NBTConstants.TAG_COMPOUND && tagId != NBTConstants.TAG_LIST) {
+                throw new IllegalStateException("The root tag has to be a compound or a list");
+            }
+
+            this.dictionaryIndices.clear();
+
+            this.streamStartIndex = this.buffer.writerIndex();
+            this.streamStartNanos = this.metrics.isMeasuringTime() ? System.nanoTime() : 0L;
+        } else if (this.streamTagIds[this.streamDepth - 1] != NBTConstants.TAG_COMPOUND) {
+            throw new IllegalStateException("The elements of a list do not have a name");
+        }
+
+        this.writeTagHeader(tagId, name);
+    }
+
+    /**
+     * Accounts an element of the list which has been begun last
+     *
+     * @param tagId which is representative for the identifier of the element
+     */
+    private void beginElement(final byte tagId) {
+        final int top = this.streamDepth - 1;
+
+        if (top < 0 || this.streamTagIds[top] != NBTConstants.TAG_LIST) {
+            throw new IllegalStateException("The value has to be written with a name outside of a list");
+        }
+
+        if (this.streamElementTagIds[top] != tagId) {
+            throw new IllegalStateException("The list contains elements with the tag " +
+                    this.streamElementTagIds[top] + " instead of " + tagId);
+        }
+
+        if (this.streamRemaining[top] == 0) {
+            throw new IllegalStateException("The list does not expect more elements");
+        }
+
+        this.streamRemaining[top]--;
+    }
+
+    private void writeListHeader(final byte elementTagId, final int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("The size of a list cannot be negative");
+        }
+
+        this.writeByteValue(elementTagId);
+        this.writeIntValue(size);
+        this.pushStreamFrame(NBTConstants.TAG_LIST, elementTagId, size);
+    }
+
+    private void pushStreamFrame(final byte tagId, final byte elementTagId, final int remaining) {
+        if (this.streamDepth == this.streamTagIds.length) {
+            final int newCapacity = this.streamDepth << 1;
+
+            this.streamTagIds = Arrays.copyOf(this.streamTagIds, newCapacity);
+            this.streamElementTagIds = Arrays.copyOf(this.streamElementTagIds, newCapacity);
+            this.streamRemaining = Arrays.copyOf(this.streamRemaining, newCapacity);
+        }
+
+        this.streamTagIds[this.streamDepth] = tagId;
+        this.streamElementTagIds[this.streamDepth] = elementTagId;
+        this.streamRemaining[this.streamDepth] = remaining;
+        this.streamDepth++;
     }
 
     /**
@@ -78,9 +487,35 @@ public class NBTWriter {
      * @param tagId which is representative for the identifier of this tag
      * @param name  which stands for the key name
      */
-    private void writeTagHeader(final byte tagId, final String name) {
+    void writeTagHeader(final byte tagId, final String name) {
         this.writeByteValue(tagId);
-        this.writeStringValue(name);
+        this.writeKey(name);
+    }
+
+    /**
+     * Writes the key of a tag, either as string or with the key dictionary
+     *
+     * @param key which stands for the key name
+     */
+    protected void writeKey(final String key) {
+        if (!this.keyDictionary) {
+            this.writeStringValue(key);
+
+            return;
+        }
+
+        final Integer index = this.dictionaryIndices.get(key);
+
+        if (index != null) {
+            VarIntUtil.writeUnsignedVarInt(this, index + 1);
+
+            return;
+        }
+
+        this.writeByteValue((byte) 0);
+        this.writeStringValue(key);
+
+        this.dictionaryIndices.put(key, this.dictionaryIndices.size());
     }
 
     public void writeByteValue(final byte value) {
@@ -89,7 +524,7 @@ public class NBTWriter {
         this.buffer.writeByte(value);
     }
 
-    private void writeShortValue(final short value) {
+    void writeShortValue(final short value) {
         this.guaranteeBufferCapacity(2);
 
         if (this.byteOrder == ByteOrder.LITTLE_ENDIAN) {
@@ -99,7 +534,7 @@ public class NBTWriter {
         }
     }
 
-    private void writeIntValue(final int value) {
+    void writeIntValue(final int value) {
         if (this.useVarInt) {
             VarIntUtil.writeVarInt(this, value);
         } else {
@@ -113,7 +548,7 @@ public class NBTWriter {
         }
     }
 
-    private void writeLongValue(final long value) {
+    void writeLongValue(final long value) {
         if (this.useVarInt) {
             VarIntUtil.writeVarLong(this, value);
         } else {
@@ -127,7 +562,7 @@ public class NBTWriter {
         }
     }
 
-    private void writeFloatValue(final float value) {
+    void writeFloatValue(final float value) {
         this.guaranteeBufferCapacity(4);
 
         if (this.byteOrder == ByteOrder.LITTLE_ENDIAN) {
@@ -137,7 +572,7 @@ public class NBTWriter {
         }
     }
 
-    private void writeDoubleValue(final double value) {
+    void writeDoubleValue(final double value) {
         this.guaranteeBufferCapacity(8);
 
         if (this.byteOrder == ByteOrder.LITTLE_ENDIAN) {
@@ -147,7 +582,15 @@ public class NBTWriter {
         }
     }
 
-    private void writeStringValue(final String value) {
+    /**
+     * Writes a string whose characters are encoded as UTF-8 directly into the buffer without copying them into a
+     * temporary array first. The short length prefix is written once the encoded length is known
+     *
+     * @param value which should be written
+     *
+     * @throws java.lang.IllegalArgumentException when the encoded string does not fit into the short length prefix
+     */
+    void writeStringValue(final String value) {
         if (value == null) {
             if (this.useVarInt) {
                 this.writeByteValue((byte) 0);
@@ -158,18 +601,43 @@ public class NBTWriter {
             return;
         }
 
-        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
-        final int length = bytes.length;
-
         if (this.useVarInt) {
+            final int length = ByteBufUtil.utf8Bytes(value);
+
             VarIntUtil.writeUnsignedVarInt(this, length);
-        } else {
-            this.writeShortValue((short) length);
+
+            this.guaranteeBufferCapacity(length);
+
+            ByteBufUtil.reserveAndWriteUtf8(this.buffer, value, length);
+
+            return;
         }
 
-        this.guaranteeBufferCapacity(length);
+        // every character occupies at least one byte
+        if (value.length() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("The string exceeds the maximum length of " + Short.MAX_VALUE +
+                    " bytes");
+        }
+
+        final int prefixIndex = this.buffer.writerIndex();
+
+        this.writeShortValue((short) 0);
+        this.guaranteeBufferCapacity(value.length());
+
+        final int length = ByteBufUtil.writeUtf8(this.buffer, value);
+
+        if (length > Short.MAX_VALUE) {
+            this.buffer.writerIndex(prefixIndex);
+
+            throw new IllegalArgumentException("The string exceeds the maximum length of " + Short.MAX_VALUE +
+                    " bytes");
+        }
 
-        this.buffer.writeBytes(bytes);
+        if (this.byteOrder == ByteOrder.LITTLE_ENDIAN) {
+            this.buffer.setShortLE(prefixIndex, length);
+        } else {
+            this.buffer.setShort(prefixIndex, length);
+        }
     }
 
     private void writeByteArrayValue(final byte[] value) {
@@ -189,23 +657,41 @@ public class NBTWriter {
 
         this.writeIntValue(length);
 
-        for (final int i : value) {
-            this.writeIntValue(i);
+        if (!this.useVarInt) {
+            for (final int i : value) {
+                this.writeIntValue(i);
+            }
+
+            return;
+        }
+
+        for (int from = 0; from < length; from += NBTWriter.VAR_INT_ARRAY_CHUNK_SIZE) {
+            final int to = Math.min(length, from + NBTWriter.VAR_INT_ARRAY_CHUNK_SIZE);
+
+            this.guaranteeBufferCapacity((to - from) * VarIntUtil.MAX_VAR_INT_SIZE + 8);
+
+            VarIntUtil.writeVarIntArray(this.buffer, value, from, to);
         }
     }
 
     private void writeTagListValue(final List<Object> value) {
         this.guaranteeBufferCapacity(5);
 
-        if (value.size() <= 0) {
-            this.writeByteValue(NBTConstants.TAG_BYTE);
+        final byte tagId = value instanceof NBTTagList ? ((NBTTagList) value).getElementTagId() :
+                (value.isEmpty() ? NBTConstants.TAG_END : NBTTagIdResolver.retrieveTagIdFromValue(value.get(0)));
+
+        if (value.isEmpty()) {
+            if (this.canonical) {
+                this.writeByteValue(NBTConstants.TAG_END);
+            } else {
+                this.writeByteValue(tagId == NBTConstants.TAG_END ? NBTConstants.TAG_BYTE : tagId);
+            }
+
             this.writeIntValue(0);
 
             return;
         }
 
-        final byte tagId = this.retrieveTagIdFromValue(value.get(0));
-
         this.writeByteValue(tagId);
         this.writeIntValue(value.size());
 
@@ -215,15 +701,15 @@ public class NBTWriter {
     }
 
     private void writeTagCompoundValue(final NBTTagCompound nbtTagCompound) {
-        for (final Map.Entry<String, Object> nbtEntry : nbtTagCompound.retrieveNBTEntries()) {
-            final String key = nbtEntry.getKey();
-            final Object rawValue = nbtEntry.getValue();
+        for (int i = 0; i < nbtTagCompound.size(); i++) {
+            final int index = this.canonical ? nbtTagCompound.getIndexInKeyOrder(i) : i;
+            final byte tagId = nbtTagCompound.getTagIdAt(index);
 
-            final byte tagId = this.retrieveTagIdFromValue(rawValue);
-
-            this.writeTagHeader(tagId, key);
-            this.writeValuesByTagId(tagId, rawValue);
+            this.writeTagHeader(tagId, nbtTagCompound.getKeyAt(index));
+            this.writeValuesByTagId(tagId, nbtTagCompound.getValueAt(index));
         }
+
+        this.writeByteValue(NBTConstants.TAG_END);
     }
 
     /**
@@ -232,6 +718,7 @@ public class NBTWriter {
      * @param tagId    which is needed to write the values
      * @param rawValue the value which should be written
      */
+    @SuppressWarnings("unchecked")
     private void writeValuesByTagId(final byte tagId, final Object rawValue) {
         switch (tagId) {
             case NBTConstants.TAG_BYTE:
@@ -267,51 +754,11 @@ public class NBTWriter {
             case NBTConstants.TAG_INT_ARRAY:
                 this.writeIntArrayValue((int[]) rawValue);
                 break;
+            default:
+                throw new IllegalArgumentException("The tag " + tagId + " cannot be written");
         }
     }
 
-    /**
-     * Retrieves the tag identifier from the given value
-     *
-     * @param value which is needed to retrieve the id
-     *
-     * @return a fresh byte
-     */
-    private byte retrieveTagIdFromValue(final Object value) {
-        if (value.getClass().equals(Byte.class)) {
-            return NBTConstants.TAG_BYTE;
-        } else if (value.getClass().equals(Short.class)) {
-            return NBTConstants.TAG_SHORT;
-        } else if (value.getClass().equals(Integer.class)) {
-            return NBTConstants.TAG_INT;
-        } else if (value.getClass().equals(Long.class)) {
-            return NBTConstants.TAG_LONG;
-        } else if (value.getClass().equals(Float.class)) {
-            return NBTConstants.TAG_FLOAT;
-        } else if (value.getClass().equals(Double.class)) {
-            return NBTConstants.TAG_DOUBLE;
-        } else if (value.getClass().equals(String.class)) {
-            return NBTConstants.TAG_STRING;
-        } else if (value instanceof byte[]) {
-            return NBTConstants.TAG_BYTE_ARRAY;
-        } else if (value instanceof List) {
-            return NBTConstants.TAG_LIST;
-        } else if (value.getClass().equals(NBTTagCompound.class)) {
-            return NBTConstants.TAG_COMPOUND;
-        } else if (value instanceof int[]) {
-            return NBTConstants.TAG_INT_ARRAY;
-        } else {
-            try {
-                throw new IOException("The NBT data is invalid: Could not create a tagId from the given value: " +
-                        value.getClass().getSimpleName());
-            } catch (final IOException e) {
-                e.printStackTrace();
-            }
-        }
-
-        return NBTConstants.TAG_END;
-    }
-
     /**
      * Guarantees the capacity of this {@link io.netty.buffer.ByteBuf} buffer
      *
@@ -332,6 +779,8 @@ public class NBTWriter {
                 (this.buffer.writerIndex() + maxFastWritableBytes) :
                 this.buffer.alloc().calculateNewCapacity(targetCapacity, maxSize);
 
+        this.metrics.onBufferResize(this.buffer.capacity(), newCapacity);
+
         this.buffer.capacity(newCapacity);
     }
 }
\ No newline at end of file
@@ -0,0 +1,723 @@
+package org.terracottamc.taglib.nbt.io;
+
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+import org.terracottamc.taglib.util.nbt.NBTDepthLimitReachedException;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Parses SNBT text and writes it as binary NBT through a {@link NBTWriter} while parsing,
+ * so no {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} is built in between
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class SNBTParser {
+
+    private static final int DEFAULT_MAX_DEPTH = 512;
+
+    private final NBTWriter nbtWriter;
+    private final StringBuilder stringBuilder = new StringBuilder();
+
+    private CharSequence input = null;
+    private int position = 0;
+    private int depth = 0;
+    private int maxDepth = SNBTParser.DEFAULT_MAX_DEPTH;
+
+    /**
+     * Creates a new {@link SNBTParser}
+     *
+     * @param nbtWriter which the parsed data is written with
+     */
+    public SNBTParser(final NBTWriter nbtWriter) {
+        this.nbtWriter = nbtWriter;
+    }
+
+    /**
+     * Set the maximum amount of nested compounds and lists the parsed text may contain. Nested values are parsed
+     * recursively, so an unlimited depth lets deeply nested text overflow the thread stack
+     *
+     * @param maxDepth which should be set or -1 when the depth should not be limited
+     */
+    public void setMaxDepth(final int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Retrieves the maximum amount of nested compounds and lists the parsed text may contain
+     *
+     * @return a fresh depth or -1 when the depth is not limited
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * Parses the given SNBT compound and writes it as root compound without a name
+     *
+     * @param input which represents the SNBT text
+     */
+    public void parseCompound(final CharSequence input) {
+        this.parseCompound("", input);
+    }
+
+    /**
+     * Parses the given SNBT compound and writes it as root compound with the given name
+     *
+     * @param name  which represents the name of the root compound
+     * @param input which represents the SNBT text
+     */
+    public void parseCompound(final String name, final CharSequence input) {
+        this.input = input;
+        this.position = 0;
+        this.depth = 0;
+
+        try {
+            if (this.peekTagId() != NBTConstants.TAG_COMPOUND) {
+                throw this.createException("A compound was expected");
+            }
+
+            this.nbtWriter.writeTagHeader(NBTConstants.TAG_COMPOUND, name);
+            this.writeValue(NBTConstants.TAG_COMPOUND);
+            this.skipWhitespace();
+
+            if (this.position < this.input.length()) {
+                throw this.createException("Unexpected trailing data");
+            }
+        } finally {
+            this.input = null;
+        }
+    }
+
+    private void writeValue(final byte tagId) {
+        switch (tagId) {
+            case NBTConstants.TAG_BYTE: {
+                final int end = this.scanToken();
+
+                if (this.isToken(end, "true")) {
+                    this.nbtWriter.writeByteValue((byte) 1);
+                } else if (this.isToken(end, "false")) {
+                    this.nbtWriter.writeByteValue((byte) 0);
+                } else {
+                    this.nbtWriter.writeByteValue((byte) this.parseInteger(end - 1, Byte.MIN_VALUE, Byte.MAX_VALUE));
+                }
+
+                this.position = end;
+                break;
+            }
+            case NBTConstants.TAG_SHORT: {
+                final int end = this.scanToken();
+
+                this.nbtWriter.writeShortValue((short) this.parseInteger(end - 1, Short.MIN_VALUE, Short.MAX_VALUE));
+
+                this.position = end;
+                break;
+            }
+            case NBTConstants.TAG_INT: {
+                final int end = this.scanToken();
+
+                this.nbtWriter.writeIntValue((int) this.parseInteger(end, Integer.MIN_VALUE, Integer.MAX_VALUE));
+
+                this.position = end;
+                break;
+            }
+            case NBTConstants.TAG_LONG: {
+                final int end = this.scanToken();
+
+                this.nbtWriter.writeLongValue(this.parseInteger(end - 1, Long.MIN_VALUE, Long.MAX_VALUE));
+
+                this.position = end;
+                break;
+            }
+            case NBTConstants.TAG_FLOAT: {
+                final int end = this.scanToken();
+
+                this.nbtWriter.writeFloatValue(Float.parseFloat(this.input.subSequence(this.position, end - 1).toString()));
+
+                this.position = end;
+                break;
+            }
+            case NBTConstants.TAG_DOUBLE: {
+                final int end = this.scanToken();
+                final char last = this.input.charAt(end - 1);
+                final int valueEnd = last == 'd' || last == 'D' ? end - 1 : end;
+
+                this.nbtWriter.writeDoubleValue(Double.parseDouble(this.input.subSequence(this.position, valueEnd).toString()));
+
+                this.position = end;
+                break;
+            }
+            case NBTConstants.TAG_STRING:
+                this.nbtWriter.writeStringValue(this.parseString());
+                break;
+            case NBTConstants.TAG_BYTE_ARRAY:
+            case NBTConstants.TAG_INT_ARRAY:
+                this.writeArray(tagId);
+                break;
+            case NBTConstants.TAG_LIST:
+                this.enterNested();
+                this.writeList();
+                this.depth--;
+                break;
+            case NBTConstants.TAG_COMPOUND:
+                this.enterNested();
+                this.writeCompound();
+                this.depth--;
+                break;
+        }
+    }
+
+    private void writeCompound() {
+        this.expect('{');
+        this.skipWhitespace();
+
+        if (this.peekCharacter() == '}') {
+            this.position++;
+            this.nbtWriter.writeByteValue(NBTConstants.TAG_END);
+
+            return;
+        }
+
+        while (true) {
+            final String key = this.parseKey();
+
+            this.skipWhitespace();
+            this.expect(':');
+
+            final byte tagId = this.peekTagId();
+
+            this.nbtWriter.writeTagHeader(tagId, key);
+            this.writeValue(tagId);
+            this.skipWhitespace();
+
+            if (this.peekCharacter() == ',') {
+                this.position++;
+                this.skipWhitespace();
+
+                continue;
+            }
+
+            this.expect('}');
+            this.nbtWriter.writeByteValue(NBTConstants.TAG_END);
+
+            return;
+        }
+    }
+
+    private void writeList() {
+        this.expect('[');
+        this.skipWhitespace();
+
+        if (this.peekCharacter() == ']') {
+            this.position++;
+            this.nbtWriter.writeByteValue(NBTConstants.TAG_END);
+            this.nbtWriter.writeIntValue(0);
+
+            return;
+        }
+
+        final byte elementTagId = this.peekTagId();
+        final int length = this.countElements();
+
+        this.nbtWriter.writeByteValue(elementTagId);
+        this.nbtWriter.writeIntValue(length);
+
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                this.skipWhitespace();
+                this.expect(',');
+            }
+
+            if (this.peekTagId() != elementTagId) {
+                throw this.createException("The list elements do not have the same type");
+            }
+
+            this.writeValue(elementTagId);
+        }
+
+        this.skipWhitespace();
+        this.expect(']');
+    }
+
+    private void writeArray(final byte tagId) {
+        // skips the array prefix [B; or [I;
+        this.position += 3;
+        this.skipWhitespace();
+
+        final int length = this.peekCharacter() == ']' ? 0 : this.countElements();
+
+        this.nbtWriter.writeIntValue(length);
+
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                this.skipWhitespace();
+                this.expect(',');
+            }
+
+            this.skipWhitespace();
+
+            final int end = this.scanToken();
+            final char last = end > this.position ? this.input.charAt(end - 1) : 0;
+
+            if (tagId == NBTConstants.TAG_BYTE_ARRAY) {
+                final int valueEnd = last == 'b' || last == 'B' ? end - 1 : end;
+
+                this.nbtWriter.writeByteValue((byte) this.parseInteger(valueEnd, Byte.MIN_VALUE, Byte.MAX_VALUE));
+            } else {
+                this.nbtWriter.writeIntValue((int) this.parseInteger(end, Integer.MIN_VALUE, Integer.MAX_VALUE));
+            }
+
+            this.position = end;
+        }
+
+        this.skipWhitespace();
+        this.expect(']');
+    }
+
+    /**
+     * Retrieves the tag identifier of the value which starts at the current position without consuming it
+     *
+     * @return a fresh byte
+     */
+    private byte peekTagId() {
+        this.skipWhitespace();
+
+        final char c = this.peekCharacter();
+
+        if (c == '{') {
+            return NBTConstants.TAG_COMPOUND;
+        }
+
+        if (c == '[') {
+            if (this.position + 2 < this.input.length() && this.input.charAt(this.position + 2) == ';') {
+                switch (this.input.charAt(this.position + 1)) {
+                    case 'B':
+                        return NBTConstants.TAG_BYTE_ARRAY;
+                    case 'I':
+                        return NBTConstants.TAG_INT_ARRAY;
+                    default:
+                        throw this.createException("The array type " + this.input.charAt(this.position + 1) + " is not supported");
+                }
+            }
+
+            return NBTConstants.TAG_LIST;
+        }
+
+        if (c == '"' || c == '\'') {
+            return NBTConstants.TAG_STRING;
+        }
+
+        final int end = this.scanToken();
+
+        if (end == this.position) {
+            throw this.createException("A value was expected");
+        }
+
+        if (this.isToken(end, "true") || this.isToken(end, "false")) {
+            return NBTConstants.TAG_BYTE;
+        }
+
+        final char last = this.input.charAt(end - 1);
+
+        switch (last) {
+            case 'b':
+            case 'B':
+                if (this.isInteger(end - 1)) {
+                    return NBTConstants.TAG_BYTE;
+                }
+                break;
+            case 's':
+            case 'S':
+                if (this.isInteger(end - 1)) {
+                    return NBTConstants.TAG_SHORT;
+                }
+                break;
+            case 'l':
+            case 'L':
+                if (this.isInteger(end - 1)) {
+                    return NBTConstants.TAG_LONG;
+                }
+                break;
+            case 'f':
+            case 'F':
+                if (this.isDecimal(end - 1) || this.isNonFinite(end - 1)) {
+                    return NBTConstants.TAG_FLOAT;
+                }
+                break;
+            case 'd':
+            case 'D':
+                if (this.isDecimal(end - 1) || this.isNonFinite(end - 1)) {
+                    return NBTConstants.TAG_DOUBLE;
+                }
+                break;
+        }
+
+        if (this.isInteger(end) && end - this.position <= 11) {
+            final long value = this.parseInteger(end, Long.MIN_VALUE, Long.MAX_VALUE);
+
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return NBTConstants.TAG_INT;
+            }
+        }
+
+        if (this.isDecimal(end)) {
+            return NBTConstants.TAG_DOUBLE;
+        }
+
+        return NBTConstants.TAG_STRING;
+    }
+
+    /**
+     * Counts the elements of the list or array which starts at the current position without consuming them
+     *
+     * @return a fresh int
+     */
+    private int countElements() {
+        int nestedDepth = 0;
+        int commas = 0;
+        char quote = 0;
+
+        for (int i = this.position; i < this.input.length(); i++) {
+            final char c = this.input.charAt(i);
+
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+
+                continue;
+            }
+
+            switch (c) {
+                case '"':
+                case '\'':
+                    quote = c;
+                    break;
+                case '[':
+                case '{':
+                    nestedDepth++;
+                    break;
+                case ']':
+                case '}':
+                    if (nestedDepth == 0) {
+                        return commas + 1;
+                    }
+
+                    nestedDepth--;
+                    break;
+                case ',':
+                    if (nestedDepth == 0) {
+                        commas++;
+                    }
+                    break;
+            }
+        }
+
+        throw this.createException("The list is not closed");
+    }
+
+    private String parseKey() {
+        final char c = this.peekCharacter();
+
+        if (c == '"' || c == '\'') {
+            return this.parseString();
+        }
+
+        final int end = this.scanToken();
+
+        if (end == this.position) {
+            throw this.createException("A key was expected");
+        }
+
+        final String key = this.input.subSequence(this.position, end).toString();
+
+        this.position = end;
+
+        return key;
+    }
+
+    private String parseString() {
+        final char quote = this.peekCharacter();
+
+        if (quote != '"' && quote != '\'') {
+            final int end = this.scanToken();
+            final String value = this.input.subSequence(this.position, end).toString();
+
+            this.position = end;
+
+            return value;
+        }
+
+        this.position++;
+        this.stringBuilder.setLength(0);
+
+        while (this.position < this.input.length()) {
+            final char c = this.input.charAt(this.position++);
+
+            if (c == quote) {
+                return this.stringBuilder.toString();
+            }
+
+            if (c == '\\') {
+                if (this.position >= this.input.length()) {
+                    break;
+                }
+
+                final char escaped = this.input.charAt(this.position++);
+
+                switch (escaped) {
+                    case 'n':
+                        this.stringBuilder.append('\n');
+                        break;
+                    case 't':
+                        this.stringBuilder.append('\t');
+                        break;
+                    case 'r':
+                        this.stringBuilder.append('\r');
+                        break;
+                    case 'u':
+                        if (this.position + 4 > this.input.length()) {
+                            throw this.createException("An unicode escape sequence was expected");
+                        }
+
+                        this.stringBuilder.append((char) Integer.parseInt(
+                                this.input.subSequence(this.position, this.position + 4).toString(), 16));
+
+                        this.position += 4;
+                        break;
+                    default:
+                        this.stringBuilder.append(escaped);
+                }
+            } else {
+                this.stringBuilder.append(c);
+            }
+        }
+
+        throw this.createException("The string is not closed");
+    }
+
+    /**
+     * Parses the integer which starts at the current position and ends at the given index
+     *
+     * @param end      which represents the exclusive end of the integer
+     * @param minValue which is the smallest allowed value
+     * @param maxValue which is the biggest allowed value
+     *
+     * @return a fresh long
+     */
+    private long parseInteger(final int end, final long minValue, final long maxValue) {
+        if (!this.isInteger(end)) {
+            throw this.createException("An integer was expected");
+        }
+
+        int i = this.position;
+
+        final boolean negative = this.input.charAt(i) == '-';
+
+        if (negative || this.input.charAt(i) == '+') {
+            i++;
+        }
+
+        long value = 0;
+
+        for (; i < end; i++) {
+            final int digit = this.input.charAt(i) - '0';
+
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                throw this.createException("The integer is out of range");
+            }
+
+            value = value * 10 - digit;
+        }
+
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw this.createException("The integer is out of range");
+            }
+
+            value = -value;
+        }
+
+        if (value < minValue || value > maxValue) {
+            throw this.createException("The integer is out of range");
+        }
+
+        return value;
+    }
+
+    private boolean isInteger(final int end) {
+        int i = this.position;
+
+        if (i < end && (this.input.charAt(i) == '-' || this.input.charAt(i) == '+')) {
+            i++;
+        }
+
+        if (i == end) {
+            return false;
+        }
+
+        for (; i < end; i++) {
+            final char c = this.input.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isDecimal(final int end) {
+        int i = this.position;
+        int digits = 0;
+
+        if (i < end && (this.input.charAt(i) == '-' || this.input.charAt(i) == '+')) {
+            i++;
+        }
+
+        while (i < end && Character.isDigit(this.input.charAt(i))) {
+            i++;
+            digits++;
+        }
+
+        if (i < end && this.input.charAt(i) == '.') {
+            i++;
+
+            while (i < end && Character.isDigit(this.input.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+
+        if (digits == 0) {
+            return false;
+        }
+
+        if (i < end && (this.input.charAt(i) == 'e' || this.input.charAt(i) == 'E')) {
+            i++;
+
+            if (i < end && (this.input.charAt(i) == '-' || this.input.charAt(i) == '+')) {
+                i++;
+            }
+
+            final int exponentStart = i;
+
+            while (i < end && Character.isDigit(this.input.charAt(i))) {
+                i++;
+            }
+
+            if (i == exponentStart) {
+                return false;
+            }
+        }
+
+        return i == end;
+    }
+
+    /**
+     * Proofs whether the token which starts at the current position and ends at the given index is NaN or an
+     * infinity, which are only read as numbers when they carry a float or double suffix
+     *
+     * @param end which represents the exclusive end of the token
+     *
+     * @return whether the token is a non-finite number
+     */
+    private boolean isNonFinite(final int end) {
+        int start = this.position;
+
+        if (start < end && (this.input.charAt(start) == '-' || this.input.charAt(start) == '+')) {
+            start++;
+        }
+
+        return this.regionEquals(start, end, "Infinity") ||
+                (start == this.position && this.regionEquals(start, end, "NaN"));
+    }
+
+    private boolean regionEquals(final int start, final int end, final String token) {
+        if (end - start != token.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < token.length(); i++) {
+            if (this.input.charAt(start + i) != token.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isToken(final int end, final String token) {
+        if (end - this.position != token.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < token.length(); i++) {
+            if (Character.toLowerCase(this.input.charAt(this.position + i)) != token.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Retrieves the exclusive end of the unquoted token which starts at the current position
+     *
+     * @return a fresh int
+     */
+    private int scanToken() {
+        int end = this.position;
+
+        while (end < this.input.length() && SNBTParser.isUnquotedCharacter(this.input.charAt(end))) {
+            end++;
+        }
+
+        return end;
+    }
+
+    private void enterNested() {
+        if (++this.depth > this.maxDepth && this.maxDepth != -1) {
+            throw new NBTDepthLimitReachedException(this.maxDepth);
+        }
+    }
+
+    private void skipWhitespace() {
+        while (this.position < this.input.length() && Character.isWhitespace(this.input.charAt(this.position))) {
+            this.position++;
+        }
+    }
+
+    private char peekCharacter() {
+        if (this.position >= this.input.length()) {
+            throw this.createException("Unexpected end of input");
+        }
+
+        return this.input.charAt(this.position);
+    }
+
+    private void expect(final char c) {
+        if (this.peekCharacter() != c) {
+            throw this.createException("The character " + c + " was expected");
+        }
+
+        this.position++;
+    }
+
+    private IllegalArgumentException createException(final String message) {
+        return new IllegalArgumentException("The SNBT data is invalid at position " + this.position + ": " + message);
+    }
+
+    private static boolean isUnquotedCharacter(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                c == '_' || c == '-' || c == '.' || c == '+';
+    }
+}
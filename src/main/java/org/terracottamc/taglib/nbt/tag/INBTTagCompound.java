@@ -129,7 +129,8 @@ public interface INBTTagCompound {
      * Adds a new value with given key to this {@link INBTTagCompound}
      *
      * @param key   which stands for the holder of the value
-     * @param value which represents the list value that should be added
+     * @param value which represents the list value that should be added. Lists which are no
+     *              {@link NBTTagList} are copied into one, so their elements are validated once
      */
     void setValue(final String key, final List<Object> value);
 
@@ -238,4 +239,77 @@ public interface INBTTagCompound {
      * @return a fresh {@link NBTTagCompound}
      */
     NBTTagCompound getChildTag(final String name);
+
+    /**
+     * Adds a new value with given {@link NBTKey} to this {@link INBTTagCompound}
+     *
+     * @param key   which stands for the typed holder of the value
+     * @param value which represents the value that should be added
+     * @param <T>   which represents the type of the value
+     */
+    <T> void setValue(final NBTKey<T> key, final T value);
+
+    /**
+     * Retrieves the value by its given {@link NBTKey}
+     *
+     * @param key which is needed to find the value
+     * @param <T> which represents the type of the value
+     *
+     * @return a fresh value or null when there is no value with the given key
+     */
+    <T> T getValue(final NBTKey<T> key);
+
+    /**
+     * Retrieves the byte value by its given {@link NBTKey}
+     *
+     * @param key which is needed to find the value
+     *
+     * @return a fresh byte value
+     */
+    byte getByte(final NBTKey<Byte> key);
+
+    /**
+     * Retrieves the short value by its given {@link NBTKey}
+     *
+     * @param key which is needed to find the value
+     *
+     * @return a fresh short value
+     */
+    short getShort(final NBTKey<Short> key);
+
+    /**
+     * Retrieves the int value by its given {@link NBTKey}
+     *
+     * @param key which is needed to find the value
+     *
+     * @return a fresh int value
+     */
+    int getInt(final NBTKey<Integer> key);
+
+    /**
+     * Retrieves the long value by its given {@link NBTKey}
+     *
+     * @param key which is needed to find the value
+     *
+     * @return a fresh long value
+     */
+    long getLong(final NBTKey<Long> key);
+
+    /**
+     * Retrieves the float value by its given {@link NBTKey}
+     *
+     * @param key which is needed to find the value
+     *
+     * @return a fresh float value
+     */
+    float getFloat(final NBTKey<Float> key);
+
+    /**
+     * Retrieves the double value by its given {@link NBTKey}
+     *
+     * @param key which is needed to find the value
+     *
+     * @return a fresh double value
+     */
+    double getDouble(final NBTKey<Double> key);
 }
\ No newline at end of file
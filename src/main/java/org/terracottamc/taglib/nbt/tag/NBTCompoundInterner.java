@@ -0,0 +1,223 @@
+package org.terracottamc.taglib.nbt.tag;
+
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * A bounded table which resolves structurally identical small compounds, such as palette entries, to one shared
+ * immutable {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}.
+ * Only compounds whose values are numbers, strings or compounds which have been interned already are interned.
+ * Each structural hash maps to one slot of the table, so a colliding compound replaces the previous one instead of
+ * growing the table. Compounds are compared including their name and the order of their entries, so an interned
+ * compound is always written exactly like the compound it replaced
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTCompoundInterner {
+
+    private final AtomicReferenceArray<NBTTagCompound> table;
+    private final int mask;
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.nbt.tag.NBTCompoundInterner} with 4096 slots which interns
+     * compounds up to 16 entries
+     */
+    public NBTCompoundInterner() {
+        this(4096, 16);
+    }
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.nbt.tag.NBTCompoundInterner} with given capacity
+     *
+     * @param capacity   which represents the amount of slots and is rounded up to a power of two
+     * @param maxEntries which represents the maximum amount of entries of a compound which is interned
+     */
+    public NBTCompoundInterner(final int capacity, final int maxEntries) {
+        if (capacity <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("The capacity and the maximum amount of entries have to be positive");
+        }
+
+        int tableSize = 1;
+
+        while (tableSize < capacity && tableSize < (1 << 30)) {
+            tableSize <<= 1;
+        }
+
+        this.table = new AtomicReferenceArray<>(tableSize);
+        this.mask = tableSize - 1;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Resolves the given {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} to the shared instance which has
+     * the same structure. When no such instance is known, the given compound is made immutable and shared from now on
+     *
+     * @param nbtTagCompound which should be interned
+     *
+     * @return the shared {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} or the given compound when it
+     * cannot be interned
+     */
+    public NBTTagCompound intern(final NBTTagCompound nbtTagCompound) {
+        if (!this.isInternable(nbtTagCompound)) {
+            this.rejections.increment();
+
+            return nbtTagCompound;
+        }
+
+        final int hash = NBTCompoundInterner.hash(nbtTagCompound);
+        final int slot = hash & this.mask;
+        final NBTTagCompound shared = this.table.get(slot);
+
+        if (shared != null && NBTCompoundInterner.isStructurallyEqual(shared, nbtTagCompound)) {
+            this.hits.increment();
+
+            return shared;
+        }
+
+        nbtTagCompound.makeImmutable();
+
+        this.table.set(slot, nbtTagCompound);
+        this.misses.increment();
+
+        return nbtTagCompound;
+    }
+
+    /**
+     * Retrieves the amount of compounds which have been resolved to a shared instance
+     *
+     * @return a fresh amount
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Retrieves the amount of internable compounds which have not been known yet
+     *
+     * @return a fresh amount
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Retrieves the amount of compounds which could not be interned due to their size or values
+     *
+     * @return a fresh amount
+     */
+    public long getRejections() {
+        return this.rejections.sum();
+    }
+
+    /**
+     * Retrieves the amount of compounds which are currently shared by this interner
+     *
+     * @return a fresh amount
+     */
+    public int getSharedCompounds() {
+        int sharedCompounds = 0;
+
+        for (int i = 0; i < this.table.length(); i++) {
+            if (this.table.get(i) != null) {
+                sharedCompounds++;
+            }
+        }
+
+        return sharedCompounds;
+    }
+
+    /**
+     * Forgets all shared compounds and resets the counters. Compounds which have been shared before stay immutable
+     */
+    public void clear() {
+        for (int i = 0; i < this.table.length(); i++) {
+            this.table.set(i, null);
+        }
+
+        this.hits.reset();
+        this.misses.reset();
+        this.rejections.reset();
+    }
+
+    private boolean isInternable(final NBTTagCompound nbtTagCompound) {
+        final int size = nbtTagCompound.size();
+
+        if (size > this.maxEntries) {
+            return false;
+        }
+
+        for (int i = 0; i < size; i++) {
+            switch (nbtTagCompound.getTagIdAt(i)) {
+                case NBTConstants.TAG_BYTE_ARRAY:
+                case NBTConstants.TAG_INT_ARRAY:
+                case NBTConstants.TAG_LIST:
+                    return false;
+                case NBTConstants.TAG_COMPOUND:
+                    if (!((NBTTagCompound) nbtTagCompound.getValueAt(i)).isImmutable()) {
+                        return false;
+                    }
+
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        return true;
+    }
+
+    private static int hash(final NBTTagCompound nbtTagCompound) {
+        int hash = Objects.hashCode(nbtTagCompound.getName());
+
+        for (int i = 0; i < nbtTagCompound.size(); i++) {
+            final Object value = nbtTagCompound.getValueAt(i);
+
+            hash = 31 * hash + Objects.hashCode(nbtTagCompound.getKeyAt(i));
+            hash = 31 * hash + nbtTagCompound.getTagIdAt(i);
+            // child compounds are interned already, so equal children are usually the same instance
+            hash = 31 * hash + (value instanceof NBTTagCompound ? System.identityHashCode(value) : value.hashCode());
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean isStructurallyEqual(final NBTTagCompound shared, final NBTTagCompound nbtTagCompound) {
+        final int size = shared.size();
+
+        if (size != nbtTagCompound.size() || !Objects.equals(shared.getName(), nbtTagCompound.getName())) {
+            return false;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (shared.getTagIdAt(i) != nbtTagCompound.getTagIdAt(i) ||
+                    !Objects.equals(shared.getKeyAt(i), nbtTagCompound.getKeyAt(i))) {
+                return false;
+            }
+
+            final Object sharedValue = shared.getValueAt(i);
+            final Object value = nbtTagCompound.getValueAt(i);
+
+            if (sharedValue instanceof NBTTagCompound ? sharedValue != value : !sharedValue.equals(value)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,152 @@
+package org.terracottamc.taglib.nbt.tag;
+
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * A typed key which can be kept in a constant and is used to access the values of a {@link INBTTagCompound}
+ * without rehashing the name and without casting the result
+ *
+ * @param <T> which represents the type of the value this {@link NBTKey} points to
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public final class NBTKey<T> {
+
+    private final String name;
+    private final int hash;
+    private final byte tagId;
+    private final Class<T> type;
+
+    private int slot = 0;
+
+    /**
+     * Creates a new {@link NBTKey} with given name, tag identifier and type
+     *
+     * @param name  which represents the key name inside of a {@link INBTTagCompound}
+     * @param tagId which is representative for the identifier of the tag this {@link NBTKey} points to
+     * @param type  which is the class of the value this {@link NBTKey} points to
+     */
+    private NBTKey(final String name, final byte tagId, final Class<T> type) {
+        this.name = Objects.requireNonNull(name, "The name of a NBTKey cannot be null");
+        this.hash = NBTTagMap.hash(name);
+        this.tagId = tagId;
+        this.type = type;
+    }
+
+    public static NBTKey<Byte> ofByte(final String name) {
+        return new NBTKey<>(name, NBTConstants.TAG_BYTE, Byte.class);
+    }
+
+    public static NBTKey<Short> ofShort(final String name) {
+        return new NBTKey<>(name, NBTConstants.TAG_SHORT, Short.class);
+    }
+
+    public static NBTKey<Integer> ofInt(final String name) {
+        return new NBTKey<>(name, NBTConstants.TAG_INT, Integer.class);
+    }
+
+    public static NBTKey<Long> ofLong(final String name) {
+        return new NBTKey<>(name, NBTConstants.TAG_LONG, Long.class);
+    }
+
+    public static NBTKey<Float> ofFloat(final String name) {
+        return new NBTKey<>(name, NBTConstants.TAG_FLOAT, Float.class);
+    }
+
+    public static NBTKey<Double> ofDouble(final String name) {
+        return new NBTKey<>(name, NBTConstants.TAG_DOUBLE, Double.class);
+    }
+
+    public static NBTKey<String> ofString(final String name) {
+        return new NBTKey<>(name, NBTConstants.TAG_STRING, String.class);
+    }
+
+    public static NBTKey<byte[]> ofByteArray(final String name) {
+        return new NBTKey<>(name, NBTConstants.TAG_BYTE_ARRAY, byte[].class);
+    }
+
+    public static NBTKey<int[]> ofIntArray(final String name) {
+        return new NBTKey<>(name, NBTConstants.TAG_INT_ARRAY, int[].class);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static NBTKey<List<Object>> ofList(final String name) {
+        return new NBTKey<>(name, NBTConstants.TAG_LIST, (Class<List<Object>>) (Class<?>) List.class);
+    }
+
+    public static NBTKey<NBTTagCompound> ofCompound(final String name) {
+        return new NBTKey<>(name, NBTConstants.TAG_COMPOUND, NBTTagCompound.class);
+    }
+
+    /**
+     * Retrieves the name of this {@link NBTKey}
+     *
+     * @return a fresh {@link String}
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Retrieves the identifier of the tag this {@link NBTKey} points to
+     *
+     * @return a fresh byte
+     */
+    public byte getTagId() {
+        return this.tagId;
+    }
+
+    /**
+     * Retrieves the class of the value this {@link NBTKey} points to
+     *
+     * @return a fresh {@link Class}
+     */
+    public Class<T> getType() {
+        return this.type;
+    }
+
+    /**
+     * Retrieves the precomputed hash of the name of this {@link NBTKey}
+     *
+     * @return a fresh int
+     */
+    int getHash() {
+        return this.hash;
+    }
+
+    /**
+     * Retrieves the slot this {@link NBTKey} was found at the last time.
+     * Compounds of the same shape store their entries at the same slots, so this is usually a hit
+     *
+     * @return a fresh int
+     */
+    int getSlot() {
+        return this.slot;
+    }
+
+    /**
+     * Updates the cached slot of this {@link NBTKey}
+     *
+     * @param slot which should be cached
+     */
+    void setSlot(final int slot) {
+        this.slot = slot;
+    }
+
+    @Override
+    public String toString() {
+        return "NBTKey{name=" + this.name + ", tagId=" + this.tagId + "}";
+    }
+}
@@ -0,0 +1,1217 @@
+package org.terracottamc.taglib.nbt.tag;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
+import org.terracottamc.taglib.NBTBuilder;
+import org.terracottamc.taglib.nbt.io.NBTReader;
+import org.terracottamc.taglib.nbt.io.NBTWriter;
+import org.terracottamc.taglib.util.BufferUtil;
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * A compound whose whole tree is stored outside of the heap in a single pooled direct {@link io.netty.buffer.ByteBuf},
+ * so large compounds do not keep lots of small objects alive. The tree is kept in the big endian encoding without
+ * {@link org.terracottamc.taglib.util.VarIntUtil}, the entries of a compound are found through an index of their
+ * offsets which is rebuilt after structural modifications. Values of a fixed size are overwritten in place, every
+ * other modification splices the encoded entry into the buffer.
+ *
+ * <p>
+ * Lists and child compounds which are retrieved by {@link NBTOffHeapCompound#getList(String)} and
+ * {@link NBTOffHeapCompound#getChildTag(String)} are decoded copies, {@link NBTOffHeapCompound#getOffHeapChild(String)}
+ * retrieves a view which shares the buffer instead. The buffer is reference counted and has to be released once the
+ * compound is not needed anymore
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTOffHeapCompound implements INBTTagCompound, ReferenceCounted {
+
+    private static final int HEADER_SIZE = 3;
+    private static final int INITIAL_FRAME_CAPACITY = 16;
+    private static final int MIN_INDEX_CAPACITY = 8;
+
+    private final ByteBuf arena;
+    private final NBTOffHeapCompound root;
+    private final NBTOffHeapCompound parent;
+    private final String key;
+    private final byte[] keyBytes;
+
+    private NBTOffHeapCompound lastChild = null;
+
+    private int version = 0;
+    private int resolvedVersion;
+    private int valueIndex;
+
+    private int indexedVersion = -1;
+    private int endIndex;
+    private int entryCount;
+    private int[] entryIndices = new int[NBTOffHeapCompound.MIN_INDEX_CAPACITY];
+    private int[] slots = new int[NBTOffHeapCompound.MIN_INDEX_CAPACITY << 1];
+
+    private byte[] frameTagIds = new byte[NBTOffHeapCompound.INITIAL_FRAME_CAPACITY];
+    private byte[] frameElementTagIds = new byte[NBTOffHeapCompound.INITIAL_FRAME_CAPACITY];
+    private int[] frameRemaining = new int[NBTOffHeapCompound.INITIAL_FRAME_CAPACITY];
+
+    private NBTOffHeapCompound(final ByteBuf arena) {
+        this.arena = arena;
+        this.root = this;
+        this.parent = null;
+        this.key = null;
+        this.keyBytes = null;
+        this.valueIndex = NBTOffHeapCompound.HEADER_SIZE + arena.getUnsignedShort(1);
+        this.resolvedVersion = 0;
+    }
+
+    private NBTOffHeapCompound(final NBTOffHeapCompound parent, final String key) {
+        this.arena = parent.arena;
+        this.root = parent.root;
+        this.parent = parent;
+        this.key = key;
+        this.keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        this.resolvedVersion = -1;
+    }
+
+    /**
+     * Copies the given {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} into a new
+     * {@link NBTOffHeapCompound}
+     *
+     * @param nbtTagCompound which should be copied
+     *
+     * @return a fresh {@link NBTOffHeapCompound}
+     */
+    public static NBTOffHeapCompound copyOf(final NBTTagCompound nbtTagCompound) {
+        final ByteBuf arena = PooledByteBufAllocator.DEFAULT.directBuffer();
+
+        try {
+            new NBTWriter(arena, ByteOrder.BIG_ENDIAN).writeTagCompound(nbtTagCompound);
+        } catch (final RuntimeException e) {
+            arena.release();
+
+            throw e;
+        }
+
+        return new NBTOffHeapCompound(arena);
+    }
+
+    /**
+     * Copies the compound which is encoded big endian without {@link org.terracottamc.taglib.util.VarIntUtil} at the
+     * reader index of the given {@link io.netty.buffer.ByteBuf} into a new {@link NBTOffHeapCompound} without
+     * decoding it. The reader index is moved behind the compound
+     *
+     * @param buffer which contains the encoded compound
+     *
+     * @return a fresh {@link NBTOffHeapCompound}
+     *
+     * @throws java.lang.IllegalArgumentException when the encoded data is no complete compound
+     */
+    public static NBTOffHeapCompound copyOf(final ByteBuf buffer) {
+        final int length = buffer.readableBytes();
+
+        if (length < NBTOffHeapCompound.HEADER_SIZE ||
+                buffer.getByte(buffer.readerIndex()) != NBTConstants.TAG_COMPOUND) {
+            throw new IllegalArgumentException("The encoded data does not start with a compound");
+        }
+
+        final ByteBuf arena = PooledByteBufAllocator.DEFAULT.directBuffer(length);
+        arena.writeBytes(buffer, buffer.readerIndex(), length);
+
+        try {
+            final NBTOffHeapCompound offHeapCompound = new NBTOffHeapCompound(arena);
+            final int end = offHeapCompound.skipValue(NBTConstants.TAG_COMPOUND, offHeapCompound.valueIndex);
+
+            arena.writerIndex(end);
+            buffer.skipBytes(end);
+
+            return offHeapCompound;
+        } catch (final RuntimeException e) {
+            arena.release();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes this {@link NBTOffHeapCompound} into a {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}
+     */
+    public NBTTagCompound toCompound() {
+        return new NBTReader(this.arena.slice(this.retrieveEntryIndex(), this.getEncodedSize()), ByteOrder.BIG_ENDIAN)
+                .createCompound();
+    }
+
+    /**
+     * Copies the encoded bytes of this {@link NBTOffHeapCompound} including its header into the given
+     * {@link io.netty.buffer.ByteBuf}
+     *
+     * @param buffer which receives the bytes
+     */
+    public void copyEncoded(final ByteBuf buffer) {
+        buffer.writeBytes(this.arena, this.retrieveEntryIndex(), this.getEncodedSize());
+    }
+
+    /**
+     * Retrieves the amount of bytes this {@link NBTOffHeapCompound} occupies including its header
+     *
+     * @return a fresh amount of bytes
+     */
+    public int getEncodedSize() {
+        this.ensureIndexed();
+
+        return this.endIndex + 1 - this.retrieveEntryIndex();
+    }
+
+    /**
+     * Retrieves the name of this {@link NBTOffHeapCompound}
+     *
+     * @return a fresh {@link java.lang.String}
+     */
+    public String getName() {
+        if (this.parent != null) {
+            return this.key;
+        }
+
+        return this.arena.toString(NBTOffHeapCompound.HEADER_SIZE, this.valueIndex - NBTOffHeapCompound.HEADER_SIZE,
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retrieves the amount of entries of this {@link NBTOffHeapCompound}
+     *
+     * @return a fresh amount
+     */
+    public int size() {
+        this.ensureIndexed();
+
+        return this.entryCount;
+    }
+
+    /**
+     * Proofs whether this {@link NBTOffHeapCompound} contains an entry with the given key
+     *
+     * @param key which should be checked
+     *
+     * @return whether there is such an entry
+     */
+    public boolean containsKey(final String key) {
+        return this.findEntry(key) != -1;
+    }
+
+    /**
+     * Removes the entry with the given key
+     *
+     * @param key which represents the entry
+     *
+     * @return whether there was such an entry
+     */
+    public boolean remove(final String key) {
+        final int entry = this.findEntry(key);
+
+        if (entry == -1) {
+            return false;
+        }
+
+        this.splice(this.entryIndices[entry], this.retrieveEntrySize(entry), Unpooled.EMPTY_BUFFER);
+
+        return true;
+    }
+
+    /**
+     * Retrieves a view of the child compound with the given name which shares the buffer of this
+     * {@link NBTOffHeapCompound}, so that modifications of the view are applied to this compound.
+     * The view which has been retrieved last is reused when the same child is retrieved again, any other child
+     * allocates a new view together with its index
+     *
+     * @param name which represents the child compound
+     *
+     * @return a fresh {@link NBTOffHeapCompound} or null when there is no such child compound
+     */
+    public NBTOffHeapCompound getOffHeapChild(final String name) {
+        if (this.findValue(name, NBTConstants.TAG_COMPOUND) == -1) {
+            return null;
+        }
+
+        final NBTOffHeapCompound lastChild = this.lastChild;
+
+        if (lastChild != null && lastChild.key.equals(name)) {
+            return lastChild;
+        }
+
+        final NBTOffHeapCompound child = new NBTOffHeapCompound(this, name);
+
+        this.lastChild = child;
+
+        return child;
+    }
+
+    @Override
+    public void write(final ByteBuf buffer, final ByteOrder byteOrder) {
+        final NBTWriter nbtWriter = new NBTBuilder()
+                .withIOBuffer(buffer)
+                .withByteOrder(byteOrder)
+                .buildWriter();
+
+        nbtWriter.writeTagCompound(this);
+    }
+
+    @Override
+    public void write(final File file, final ByteOrder byteOrder) {
+        try (final FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+            final ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer();
+
+            try {
+                this.write(buffer, byteOrder);
+
+                buffer.readBytes(fileOutputStream, buffer.readableBytes());
+            } finally {
+                buffer.release();
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void writeAndFlush(final ByteBuf buffer, final ByteOrder byteOrder) {
+        this.write(buffer, byteOrder);
+        this.clear();
+    }
+
+    @Override
+    public void writeAndFlush(final File file, final ByteOrder byteOrder) {
+        this.write(file, byteOrder);
+        this.clear();
+    }
+
+    @Override
+    public void setValue(final String key, final byte value) {
+        final int index = this.findReplaceableValue(key, NBTConstants.TAG_BYTE);
+
+        if (index != -1) {
+            this.arena.setByte(index, value);
+        } else {
+            this.replaceEntry(NBTConstants.TAG_BYTE, key, value);
+        }
+    }
+
+    @Override
+    public void setValue(final String key, final short value) {
+        final int index = this.findReplaceableValue(key, NBTConstants.TAG_SHORT);
+
+        if (index != -1) {
+            this.arena.setShort(index, value);
+        } else {
+            this.replaceEntry(NBTConstants.TAG_SHORT, key, value);
+        }
+    }
+
+    @Override
+    public void setValue(final String key, final int value) {
+        final int index = this.findReplaceableValue(key, NBTConstants.TAG_INT);
+
+        if (index != -1) {
+            this.arena.setInt(index, value);
+        } else {
+            this.replaceEntry(NBTConstants.TAG_INT, key, value);
+        }
+    }
+
+    @Override
+    public void setValue(final String key, final long value) {
+        final int index = this.findReplaceableValue(key, NBTConstants.TAG_LONG);
+
+        if (index != -1) {
+            this.arena.setLong(index, value);
+        } else {
+            this.replaceEntry(NBTConstants.TAG_LONG, key, value);
+        }
+    }
+
+    @Override
+    public void setValue(final String key, final float value) {
+        final int index = this.findReplaceableValue(key, NBTConstants.TAG_FLOAT);
+
+        if (index != -1) {
+            this.arena.setFloat(index, value);
+        } else {
+            this.replaceEntry(NBTConstants.TAG_FLOAT, key, value);
+        }
+    }
+
+    @Override
+    public void setValue(final String key, final double value) {
+        final int index = this.findReplaceableValue(key, NBTConstants.TAG_DOUBLE);
+
+        if (index != -1) {
+            this.arena.setDouble(index, value);
+        } else {
+            this.replaceEntry(NBTConstants.TAG_DOUBLE, key, value);
+        }
+    }
+
+    @Override
+    public void setValue(final String key, final String value) {
+        this.replaceEntry(NBTConstants.TAG_STRING, key, value);
+    }
+
+    @Override
+    public void setValue(final String key, final byte[] value) {
+        final int index = this.findReplaceableValue(key, NBTConstants.TAG_BYTE_ARRAY);
+
+        if (index != -1 && this.arena.getInt(index) == value.length) {
+            this.arena.setBytes(index + 4, value);
+        } else {
+            this.replaceEntry(NBTConstants.TAG_BYTE_ARRAY, key, value);
+        }
+    }
+
+    @Override
+    public void setValue(final String key, final int[] value) {
+        final int index = this.findReplaceableValue(key, NBTConstants.TAG_INT_ARRAY);
+
+        if (index != -1 && this.arena.getInt(index) == value.length) {
+            for (int i = 0; i < value.length; i++) {
+                this.arena.setInt(index + 4 + (i << 2), value[i]);
+            }
+        } else {
+            this.replaceEntry(NBTConstants.TAG_INT_ARRAY, key, value);
+        }
+    }
+
+    @Override
+    public void setValue(final String key, final List<Object> value) {
+        this.replaceEntry(NBTConstants.TAG_LIST, key, value);
+    }
+
+    @Override
+    public void setChildTag(final NBTTagCompound childCompound) {
+        this.replaceEntry(NBTConstants.TAG_COMPOUND, childCompound.getName(), childCompound);
+    }
+
+    @Override
+    public byte getByte(final String key) {
+        final int index = this.findValue(key, NBTConstants.TAG_BYTE);
+
+        return index == -1 ? 0 : this.arena.getByte(index);
+    }
+
+    @Override
+    public short getShort(final String key) {
+        final int index = this.findValue(key, NBTConstants.TAG_SHORT);
+
+        return index == -1 ? 0 : this.arena.getShort(index);
+    }
+
+    @Override
+    public int getInt(final String key) {
+        final int index = this.findValue(key, NBTConstants.TAG_INT);
+
+        return index == -1 ? 0 : this.arena.getInt(index);
+    }
+
+    @Override
+    public long getLong(final String key) {
+        final int index = this.findValue(key, NBTConstants.TAG_LONG);
+
+        return index == -1 ? 0L : this.arena.getLong(index);
+    }
+
+    @Override
+    public float getFloat(final String key) {
+        final int index = this.findValue(key, NBTConstants.TAG_FLOAT);
+
+        return index == -1 ? 0F : this.arena.getFloat(index);
+    }
+
+    @Override
+    public double getDouble(final String key) {
+        final int index = this.findValue(key, NBTConstants.TAG_DOUBLE);
+
+        return index == -1 ? 0D : this.arena.getDouble(index);
+    }
+
+    @Override
+    public String getString(final String key) {
+        final int index = this.findValue(key, NBTConstants.TAG_STRING);
+
+        return index == -1 ? null : this.arena.toString(index + 2, this.arena.getUnsignedShort(index),
+                StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] getByteArray(final String key) {
+        final int index = this.findValue(key, NBTConstants.TAG_BYTE_ARRAY);
+
+        if (index == -1) {
+            return null;
+        }
+
+        final byte[] value = new byte[this.arena.getInt(index)];
+
+        this.arena.getBytes(index + 4, value);
+
+        return value;
+    }
+
+    @Override
+    public int[] getIntArray(final String key) {
+        final int index = this.findValue(key, NBTConstants.TAG_INT_ARRAY);
+
+        if (index == -1) {
+            return null;
+        }
+
+        final int[] value = new int[this.arena.getInt(index)];
+
+        for (int i = 0; i < value.length; i++) {
+            value[i] = this.arena.getInt(index + 4 + (i << 2));
+        }
+
+        return value;
+    }
+
+    /**
+     * Retrieves a decoded copy of the list with the given key, modifications of the copy are not applied to this
+     * {@link NBTOffHeapCompound}
+     *
+     * @param key which represents the list
+     *
+     * @return a fresh {@link java.util.List} or null when there is no such list
+     */
+    @Override
+    public List<?> getList(final String key) {
+        final int entryIndex = this.findEntryIndex(key, NBTConstants.TAG_LIST);
+
+        return entryIndex == -1 ? null : new NBTReader(this.arena.slice(entryIndex,
+                this.arena.writerIndex() - entryIndex), ByteOrder.BIG_ENDIAN).createList();
+    }
+
+    /**
+     * Retrieves a decoded copy of the child compound with the given name, modifications of the copy are not applied
+     * to this {@link NBTOffHeapCompound}
+     *
+     * @param name which represents the child compound
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} or null when there is no such child
+     */
+    @Override
+    public NBTTagCompound getChildTag(final String name) {
+        final int entryIndex = this.findEntryIndex(name, NBTConstants.TAG_COMPOUND);
+
+        return entryIndex == -1 ? null : new NBTReader(this.arena.slice(entryIndex,
+                this.arena.writerIndex() - entryIndex), ByteOrder.BIG_ENDIAN).createCompound();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void setValue(final NBTKey<T> key, final T value) {
+        final String name = key.getName();
+
+        switch (key.getTagId()) {
+            case NBTConstants.TAG_BYTE:
+                this.setValue(name, (byte) (Byte) value);
+                break;
+            case NBTConstants.TAG_SHORT:
+                this.setValue(name, (short) (Short) value);
+                break;
+            case NBTConstants.TAG_INT:
+                this.setValue(name, (int) (Integer) value);
+                break;
+            case NBTConstants.TAG_LONG:
+                this.setValue(name, (long) (Long) value);
+                break;
+            case NBTConstants.TAG_FLOAT:
+                this.setValue(name, (float) (Float) value);
+                break;
+            case NBTConstants.TAG_DOUBLE:
+                this.setValue(name, (double) (Double) value);
+                break;
+            case NBTConstants.TAG_STRING:
+                this.setValue(name, (String) value);
+                break;
+            case NBTConstants.TAG_BYTE_ARRAY:
+                this.setValue(name, (byte[]) value);
+                break;
+            case NBTConstants.TAG_INT_ARRAY:
+                this.setValue(name, (int[]) value);
+                break;
+            case NBTConstants.TAG_LIST:
+                this.setValue(name, (List<Object>) value);
+                break;
+            default:
+                this.replaceEntry(NBTConstants.TAG_COMPOUND, name, value);
+                break;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getValue(final NBTKey<T> key) {
+        final String name = key.getName();
+
+        if (!this.containsKey(name)) {
+            return null;
+        }
+
+        switch (key.getTagId()) {
+            case NBTConstants.TAG_BYTE:
+                return key.getType().cast(this.getByte(name));
+            case NBTConstants.TAG_SHORT:
+                return key.getType().cast(this.getShort(name));
+            case NBTConstants.TAG_INT:
+                return key.getType().cast(this.getInt(name));
+            case NBTConstants.TAG_LONG:
+                return key.getType().cast(this.getLong(name));
+            case NBTConstants.TAG_FLOAT:
+                return key.getType().cast(this.getFloat(name));
+            case NBTConstants.TAG_DOUBLE:
+                return key.getType().cast(this.getDouble(name));
+            case NBTConstants.TAG_STRING:
+                return key.getType().cast(this.getString(name));
+            case NBTConstants.TAG_BYTE_ARRAY:
+                return key.getType().cast(this.getByteArray(name));
+            case NBTConstants.TAG_INT_ARRAY:
+                return key.getType().cast(this.getIntArray(name));
+            case NBTConstants.TAG_LIST:
+                return (T) this.getList(name);
+            default:
+                return key.getType().cast(this.getChildTag(name));
+        }
+    }
+
+    @Override
+    public byte getByte(final NBTKey<Byte> key) {
+        return this.getByte(key.getName());
+    }
+
+    @Override
+    public short getShort(final NBTKey<Short> key) {
+        return this.getShort(key.getName());
+    }
+
+    @Override
+    public int getInt(final NBTKey<Integer> key) {
+        return this.getInt(key.getName());
+    }
+
+    @Override
+    public long getLong(final NBTKey<Long> key) {
+        return this.getLong(key.getName());
+    }
+
+    @Override
+    public float getFloat(final NBTKey<Float> key) {
+        return this.getFloat(key.getName());
+    }
+
+    @Override
+    public double getDouble(final NBTKey<Double> key) {
+        return this.getDouble(key.getName());
+    }
+
+    @Override
+    public int refCnt() {
+        return this.arena.refCnt();
+    }
+
+    @Override
+    public NBTOffHeapCompound retain() {
+        this.arena.retain();
+
+        return this;
+    }
+
+    @Override
+    public NBTOffHeapCompound retain(final int increment) {
+        this.arena.retain(increment);
+
+        return this;
+    }
+
+    @Override
+    public NBTOffHeapCompound touch() {
+        this.arena.touch();
+
+        return this;
+    }
+
+    @Override
+    public NBTOffHeapCompound touch(final Object hint) {
+        this.arena.touch(hint);
+
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return this.arena.release();
+    }
+
+    @Override
+    public boolean release(final int decrement) {
+        return this.arena.release(decrement);
+    }
+
+    /**
+     * Removes all entries of this {@link NBTOffHeapCompound}
+     */
+    private void clear() {
+        this.ensureIndexed();
+
+        this.splice(this.valueIndex, this.endIndex - this.valueIndex, Unpooled.EMPTY_BUFFER);
+    }
+
+    /**
+     * Encodes the given entry and replaces the entry with the same key by it or appends it when there is no such
+     * entry
+     *
+     * @param tagId which represents the tag of the value
+     * @param key   which represents the entry
+     * @param value which should be encoded
+     */
+    private void replaceEntry(final byte tagId, final String key, final Object value) {
+        final ByteBuf encodedEntry = PooledByteBufAllocator.DEFAULT.heapBuffer();
+
+        try {
+            new NBTWriter(encodedEntry, ByteOrder.BIG_ENDIAN).writeTagEntry(tagId, key, value);
+
+            final int entry = this.findEntry(key);
+
+            if (entry == -1) {
+                this.splice(this.endIndex, 0, encodedEntry);
+            } else {
+                this.splice(this.entryIndices[entry], this.retrieveEntrySize(entry), encodedEntry);
+            }
+        } finally {
+            encodedEntry.release();
+        }
+    }
+
+    /**
+     * Replaces the given amount of bytes at the given position with the readable bytes of the given
+     * {@link io.netty.buffer.ByteBuf}. Only the bytes which follow the replaced ones are moved, every view of the
+     * buffer resolves its position again afterwards
+     *
+     * @param position    which represents the index of the replaced bytes
+     * @param oldSize     which represents the amount of replaced bytes
+     * @param replacement which contains the new bytes
+     */
+    private void splice(final int position, final int oldSize, final ByteBuf replacement) {
+        final int newSize = replacement.readableBytes();
+        final int delta = newSize - oldSize;
+
+        if (delta != 0) {
+            final int tailStart = position + oldSize;
+            final int tailLength = this.arena.writerIndex() - tailStart;
+
+            if (delta > 0) {
+                this.arena.ensureWritable(delta);
+            }
+
+            BufferUtil.moveBytes(this.arena, tailStart, tailStart + delta, tailLength);
+
+            this.arena.writerIndex(this.arena.writerIndex() + delta);
+        }
+
+        this.arena.setBytes(position, replacement, replacement.readerIndex(), newSize);
+
+        this.root.version++;
+    }
+
+    private int findValue(final String key, final byte tagId) {
+        final int entryIndex = this.findEntryIndex(key, tagId);
+
+        return entryIndex == -1 ? -1 : entryIndex + NBTOffHeapCompound.HEADER_SIZE +
+                this.arena.getUnsignedShort(entryIndex + 1);
+    }
+
+    /**
+     * Retrieves the index of the entry with the given key
+     *
+     * @param key   which represents the entry
+     * @param tagId which represents the expected tag of the value
+     *
+     * @return the index of the entry or -1 when there is no such entry
+     *
+     * @throws java.lang.IllegalArgumentException when the value has a different tag
+     */
+    private int findEntryIndex(final String key, final byte tagId) {
+        final int entry = this.findEntry(key);
+
+        if (entry == -1) {
+            return -1;
+        }
+
+        final int entryIndex = this.entryIndices[entry];
+        final byte entryTagId = this.arena.getByte(entryIndex);
+
+        if (entryTagId != tagId) {
+            throw new IllegalArgumentException("The value of " + key + " has the tag " + entryTagId + " instead of " +
+                    tagId);
+        }
+
+        return entryIndex;
+    }
+
+    /**
+     * Retrieves the index of the value with the given key when it can be overwritten by a value with the given tag
+     *
+     * @param key   which represents the entry
+     * @param tagId which represents the tag of the new value
+     *
+     * @return the index of the value or -1 when there is no such value or it has a different tag
+     */
+    private int findReplaceableValue(final String key, final byte tagId) {
+        final int entry = this.findEntry(key);
+
+        if (entry == -1) {
+            return -1;
+        }
+
+        final int entryIndex = this.entryIndices[entry];
+
+        return this.arena.getByte(entryIndex) != tagId ? -1 : entryIndex + NBTOffHeapCompound.HEADER_SIZE +
+                this.arena.getUnsignedShort(entryIndex + 1);
+    }
+
+    /**
+     * Searches the entry with the given key in the index. The key is compared with the encoded keys in place, so no
+     * encoded copy of it is allocated
+     *
+     * @param key which represents the entry
+     *
+     * @return the number of the entry or -1 when there is no such entry
+     */
+    private int findEntry(final String key) {
+        this.ensureIndexed();
+
+        final int mask = this.slots.length - 1;
+        int slot = NBTOffHeapCompound.hashKey(key) & mask;
+
+        while (this.slots[slot] != 0) {
+            final int entry = this.slots[slot] - 1;
+
+            if (this.matches(this.entryIndices[entry], key)) {
+                return entry;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private int retrieveEntrySize(final int entry) {
+        final int nextIndex = entry + 1 < this.entryCount ? this.entryIndices[entry + 1] : this.endIndex;
+
+        return nextIndex - this.entryIndices[entry];
+    }
+
+    private int retrieveEntryIndex() {
+        return this.parent == null ? 0 :
+                this.resolveValueIndex() - NBTOffHeapCompound.HEADER_SIZE - this.keyBytes.length;
+    }
+
+    /**
+     * Resolves the index of the first entry of this compound again when the buffer has been modified structurally
+     * since it has been resolved last
+     *
+     * @return the index of the first entry
+     *
+     * @throws java.lang.IllegalStateException when this view has been removed from its parent
+     */
+    private int resolveValueIndex() {
+        if (this.parent != null && this.resolvedVersion != this.root.version) {
+            final int index = this.parent.findValue(this.key, NBTConstants.TAG_COMPOUND);
+
+            if (index == -1) {
+                throw new IllegalStateException("The child compound " + this.key + " does not exist anymore");
+            }
+
+            this.valueIndex = index;
+            this.resolvedVersion = this.root.version;
+        }
+
+        return this.valueIndex;
+    }
+
+    /**
+     * Rebuilds the offsets of the entries and their index when the buffer has been modified structurally since they
+     * have been built last
+     */
+    private void ensureIndexed() {
+        final int valueIndex = this.resolveValueIndex();
+
+        if (this.indexedVersion == this.root.version) {
+            return;
+        }
+
+        int position = valueIndex;
+        int count = 0;
+        byte tagId;
+
+        while ((tagId = this.arena.getByte(position)) != NBTConstants.TAG_END) {
+            if (count == this.entryIndices.length) {
+                this.entryIndices = Arrays.copyOf(this.entryIndices, count << 1);
+            }
+
+            this.entryIndices[count++] = position;
+
+            position = this.skipValue(tagId, position + NBTOffHeapCompound.HEADER_SIZE +
+                    this.arena.getUnsignedShort(position + 1));
+        }
+
+        int capacity = NBTOffHeapCompound.MIN_INDEX_CAPACITY << 1;
+
+        while (capacity < count << 1) {
+            capacity <<= 1;
+        }
+
+        if (this.slots.length != capacity) {
+            this.slots = new int[capacity];
+        } else {
+            Arrays.fill(this.slots, 0);
+        }
+
+        final int mask = capacity - 1;
+
+        for (int entry = 0; entry < count; entry++) {
+            final int entryIndex = this.entryIndices[entry];
+            int slot = this.hashKey(entryIndex + NBTOffHeapCompound.HEADER_SIZE,
+                    this.arena.getUnsignedShort(entryIndex + 1)) & mask;
+
+            while (this.slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            this.slots[slot] = entry + 1;
+        }
+
+        this.entryCount = count;
+        this.endIndex = position;
+        this.indexedVersion = this.root.version;
+    }
+
+    /**
+     * Skips the value which starts at the given position. Nested compounds and lists are skipped with an explicit
+     * stack of frames, so deeply nested data does not overflow the call stack
+     *
+     * @param tagId    which represents the tag of the value
+     * @param position which represents the index of the value
+     *
+     * @return the index after the value
+     *
+     * @throws java.lang.IllegalArgumentException when the encoded data is malformed or truncated
+     */
+    private int skipValue(final byte tagId, int position) {
+        int depth = 0;
+
+        position = this.enterValue(tagId, position, depth);
+
+        if (tagId == NBTConstants.TAG_COMPOUND || tagId == NBTConstants.TAG_LIST) {
+            depth++;
+        }
+
+        while (depth > 0) {
+            final int top = depth - 1;
+            final byte elementTagId;
+
+            if (this.frameTagIds[top] == NBTConstants.TAG_COMPOUND) {
+                this.checkReadable(position, 1);
+
+                elementTagId = this.arena.getByte(position++);
+
+                if (elementTagId == NBTConstants.TAG_END) {
+                    depth--;
+
+                    continue;
+                }
+
+                this.checkReadable(position, 2);
+
+                position += 2 + this.arena.getUnsignedShort(position);
+            } else {
+                if (this.frameRemaining[top] <= 0) {
+                    depth--;
+
+                    continue;
+                }
+
+                this.frameRemaining[top]--;
+
+                elementTagId = this.frameElementTagIds[top];
+            }
+
+            position = this.enterValue(elementTagId, position, depth);
+
+            if (elementTagId == NBTConstants.TAG_COMPOUND || elementTagId == NBTConstants.TAG_LIST) {
+                depth++;
+            }
+        }
+
+        return position;
+    }
+
+    /**
+     * Skips the given value when it is no container or records a frame for it at the given depth otherwise
+     *
+     * @param tagId    which represents the tag of the value
+     * @param position which represents the index of the value
+     * @param depth    which represents the depth the frame is recorded at
+     *
+     * @return the index after the value or after the header of the container
+     */
+    private int enterValue(final byte tagId, final int position, final int depth) {
+        final int end;
+
+        switch (tagId) {
+            case NBTConstants.TAG_BYTE:
+                end = position + 1;
+                break;
+            case NBTConstants.TAG_SHORT:
+                end = position + 2;
+                break;
+            case NBTConstants.TAG_INT:
+            case NBTConstants.TAG_FLOAT:
+                end = position + 4;
+                break;
+            case NBTConstants.TAG_LONG:
+            case NBTConstants.TAG_DOUBLE:
+                end = position + 8;
+                break;
+            case NBTConstants.TAG_STRING:
+                this.checkReadable(position, 2);
+
+                end = position + 2 + this.arena.getUnsignedShort(position);
+                break;
+            case NBTConstants.TAG_BYTE_ARRAY:
+                end = position + 4 + this.readLength(position);
+                break;
+            case NBTConstants.TAG_INT_ARRAY:
+                end = (int) Math.min(Integer.MAX_VALUE, position + 4 + ((long) this.readLength(position) << 2));
+                break;
+            case NBTConstants.TAG_LIST:
+                this.checkReadable(position, 1);
+                this.pushFrame(depth, tagId, this.arena.getByte(position), this.readLength(position + 1));
+
+                end = position + 5;
+                break;
+            case NBTConstants.TAG_COMPOUND:
+                this.pushFrame(depth, tagId, NBTConstants.TAG_END, 0);
+
+                end = position;
+                break;
+            default:
+                throw new IllegalArgumentException("The tag " + tagId + " is unknown");
+        }
+
+        if (end < position || end > this.arena.writerIndex()) {
+            throw new IllegalArgumentException("The encoded data is truncated");
+        }
+
+        return end;
+    }
+
+    private void pushFrame(final int depth, final byte tagId, final byte elementTagId, final int remaining) {
+        if (depth == this.frameTagIds.length) {
+            final int newCapacity = depth << 1;
+
+            this.frameTagIds = Arrays.copyOf(this.frameTagIds, newCapacity);
+            this.frameElementTagIds = Arrays.copyOf(this.frameElementTagIds, newCapacity);
+            this.frameRemaining = Arrays.copyOf(this.frameRemaining, newCapacity);
+        }
+
+        this.frameTagIds[depth] = tagId;
+        this.frameElementTagIds[depth] = elementTagId;
+        this.frameRemaining[depth] = remaining;
+    }
+
+    private int readLength(final int position) {
+        this.checkReadable(position, 4);
+
+        final int length = this.arena.getInt(position);
+
+        if (length < 0) {
+            throw new IllegalArgumentException("The encoded data contains the negative length " + length);
+        }
+
+        return length;
+    }
+
+    private void checkReadable(final int position, final int length) {
+        if (position + length > this.arena.writerIndex()) {
+            throw new IllegalArgumentException("The encoded data is truncated");
+        }
+    }
+
+    /**
+     * Proofs whether the encoded key of the given entry equals the UTF-8 encoding of the given key. Characters of the
+     * ASCII range are compared directly, every other character is encoded on the fly
+     *
+     * @param entryIndex which represents the index of the entry
+     * @param key        which should be compared
+     *
+     * @return whether both keys are equal
+     */
+    private boolean matches(final int entryIndex, final String key) {
+        final int keyLength = key.length();
+        final int encodedLength = this.arena.getUnsignedShort(entryIndex + 1);
+
+        // every character is encoded into one to three bytes
+        if (encodedLength < keyLength || encodedLength > keyLength * 3) {
+            return false;
+        }
+
+        final int endIndex = entryIndex + NBTOffHeapCompound.HEADER_SIZE + encodedLength;
+        int index = entryIndex + NBTOffHeapCompound.HEADER_SIZE;
+
+        for (int i = 0; i < keyLength; i++) {
+            final char character = key.charAt(i);
+
+            if (character < 0x80) {
+                if (index == endIndex || this.arena.getByte(index++) != character) {
+                    return false;
+                }
+
+                continue;
+            }
+
+            final int codePoint = NBTOffHeapCompound.retrieveCodePoint(key, i);
+            final int length = NBTOffHeapCompound.retrieveEncodedLength(codePoint);
+
+            if (index + length > endIndex) {
+                return false;
+            }
+
+            for (int j = 0; j < length; j++) {
+                if (this.arena.getByte(index++) != NBTOffHeapCompound.retrieveEncodedByte(codePoint, length, j)) {
+                    return false;
+                }
+            }
+
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                i++;
+            }
+        }
+
+        return index == endIndex;
+    }
+
+    private int hashKey(final int index, final int length) {
+        int hash = 1;
+
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + this.arena.getByte(index + i);
+        }
+
+        return NBTOffHeapCompound.spread(hash);
+    }
+
+    /**
+     * Hashes the UTF-8 encoding of the given key like {@link NBTOffHeapCompound#hashKey(int, int)} hashes the encoded
+     * keys, without encoding it into an array
+     *
+     * @param key which should be hashed
+     *
+     * @return a fresh hash
+     */
+    private static int hashKey(final String key) {
+        int hash = 1;
+
+        for (int i = 0; i < key.length(); i++) {
+            final char character = key.charAt(i);
+
+            if (character < 0x80) {
+                hash = 31 * hash + character;
+
+                continue;
+            }
+
+            final int codePoint = NBTOffHeapCompound.retrieveCodePoint(key, i);
+            final int length = NBTOffHeapCompound.retrieveEncodedLength(codePoint);
+
+            for (int j = 0; j < length; j++) {
+                hash = 31 * hash + NBTOffHeapCompound.retrieveEncodedByte(codePoint, length, j);
+            }
+
+            if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                i++;
+            }
+        }
+
+        return NBTOffHeapCompound.spread(hash);
+    }
+
+    /**
+     * Retrieves the code point which starts at the given index. An unpaired surrogate is replaced by a question mark,
+     * as {@link java.lang.String#getBytes(java.nio.charset.Charset)} does
+     *
+     * @param key   which contains the code point
+     * @param index which represents the index of the first character of the code point
+     *
+     * @return a fresh code point
+     */
+    private static int retrieveCodePoint(final String key, final int index) {
+        final char character = key.charAt(index);
+
+        if (!Character.isSurrogate(character)) {
+            return character;
+        }
+
+        if (Character.isHighSurrogate(character) && index + 1 < key.length() &&
+                Character.isLowSurrogate(key.charAt(index + 1))) {
+            return Character.toCodePoint(character, key.charAt(index + 1));
+        }
+
+        return '?';
+    }
+
+    private static int retrieveEncodedLength(final int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        }
+
+        if (codePoint < 0x800) {
+            return 2;
+        }
+
+        return codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT ? 3 : 4;
+    }
+
+    private static byte retrieveEncodedByte(final int codePoint, final int length, final int index) {
+        if (length == 1) {
+            return (byte) codePoint;
+        }
+
+        final int shift = 6 * (length - 1 - index);
+
+        // the leading byte starts with as many one bits as the sequence has bytes
+        if (index == 0) {
+            return (byte) ((0xF00 >>> length) | (codePoint >>> shift));
+        }
+
+        return (byte) (0x80 | ((codePoint >>> shift) & 0x3F));
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
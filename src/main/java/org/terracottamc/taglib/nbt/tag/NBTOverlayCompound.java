@@ -0,0 +1,584 @@
+package org.terracottamc.taglib.nbt.tag;
+
+import io.netty.buffer.ByteBuf;
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * A {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} which only stores the entries that override the entries
+ * of a shared parent, for example an entity template. Lookups of keys which are not overridden fall through to the
+ * parent. Child compounds and lists of the parent are returned as views which are copied into this compound when
+ * they are modified for the first time, child compounds become overlays themselves, so the parent is never modified
+ * through an overlay. Arrays of the parent are returned as they are and must not be modified in place, a modified
+ * copy has to be set instead.
+ * The entries of this compound followed by the entries of the parent which are not overridden form the merged view,
+ * which is what {@link org.terracottamc.taglib.nbt.io.NBTWriter} serializes.
+ * The parent must not be modified while it is shared
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTOverlayCompound extends NBTTagCompound {
+
+    private static final NBTTagCompound DETACHED_PARENT = new NBTTagCompound();
+
+    static {
+        NBTOverlayCompound.DETACHED_PARENT.makeImmutable();
+    }
+
+    private NBTTagCompound parent;
+
+    private int[] parentIndices = null;
+    private int[] sortedIndices = null;
+    private int parentSize = -1;
+    private Map<String, Object> views = null;
+    private NBTOverlayCompound viewOwner = null;
+
+    /**
+     * Creates a new {@link NBTOverlayCompound} on top of the given parent with the name of the parent
+     *
+     * @param parent whose entries are visible through this overlay
+     */
+    public NBTOverlayCompound(final NBTTagCompound parent) {
+        super(parent.getName());
+
+        this.parent = parent;
+    }
+
+    /**
+     * Retrieves the parent of this {@link NBTOverlayCompound}
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} which is an empty immutable compound
+     * once this overlay has been flushed
+     */
+    public NBTTagCompound getParent() {
+        return this.parent;
+    }
+
+    /**
+     * Writes the merged view into the given buffer and detaches this overlay from its parent afterwards, so that it
+     * is empty like every other flushed compound
+     *
+     * @param buffer    which should be written to
+     * @param byteOrder which represents the order of the bytes
+     */
+    @Override
+    public void writeAndFlush(final ByteBuf buffer, final ByteOrder byteOrder) {
+        super.writeAndFlush(buffer, byteOrder);
+
+        this.detach();
+    }
+
+    /**
+     * Writes the merged view into the given file and detaches this overlay from its parent afterwards, so that it
+     * is empty like every other flushed compound
+     *
+     * @param file      which should be written
+     * @param byteOrder which represents the order of the bytes
+     */
+    @Override
+    public void writeAndFlush(final File file, final ByteOrder byteOrder) {
+        super.writeAndFlush(file, byteOrder);
+
+        this.detach();
+    }
+
+    /**
+     * Retrieves the amount of entries which are stored in this overlay instead of the parent
+     *
+     * @return a fresh amount
+     */
+    public int getOverriddenSize() {
+        return super.size();
+    }
+
+    @Override
+    public byte getByte(final String key) {
+        return this.isOverridden(key) ? super.getByte(key) : this.parent.getByte(key);
+    }
+
+    @Override
+    public short getShort(final String key) {
+        return this.isOverridden(key) ? super.getShort(key) : this.parent.getShort(key);
+    }
+
+    @Override
+    public int getInt(final String key) {
+        return this.isOverridden(key) ? super.getInt(key) : this.parent.getInt(key);
+    }
+
+    @Override
+    public long getLong(final String key) {
+        return this.isOverridden(key) ? super.getLong(key) : this.parent.getLong(key);
+    }
+
+    @Override
+    public float getFloat(final String key) {
+        return this.isOverridden(key) ? super.getFloat(key) : this.parent.getFloat(key);
+    }
+
+    @Override
+    public double getDouble(final String key) {
+        return this.isOverridden(key) ? super.getDouble(key) : this.parent.getDouble(key);
+    }
+
+    @Override
+    public String getString(final String key) {
+        return this.isOverridden(key) ? super.getString(key) : this.parent.getString(key);
+    }
+
+    /**
+     * Retrieves the byte array with the given key. An array of the parent is returned as it is and must not be
+     * modified in place
+     *
+     * @param key which identifies the array
+     *
+     * @return a fresh byte array or null when there is no such entry
+     */
+    @Override
+    public byte[] getByteArray(final String key) {
+        return this.isOverridden(key) ? super.getByteArray(key) : this.parent.getByteArray(key);
+    }
+
+    /**
+     * Retrieves the int array with the given key. An array of the parent is returned as it is and must not be
+     * modified in place
+     *
+     * @param key which identifies the array
+     *
+     * @return a fresh int array or null when there is no such entry
+     */
+    @Override
+    public int[] getIntArray(final String key) {
+        return this.isOverridden(key) ? super.getIntArray(key) : this.parent.getIntArray(key);
+    }
+
+    /**
+     * Retrieves the list with the given key. A list of the parent is returned as a view which copies it into this
+     * overlay before it is modified or before one of its compounds or lists is retrieved
+     *
+     * @param key which identifies the list
+     *
+     * @return a fresh {@link java.util.List} or null when there is no such entry
+     */
+    @Override
+    public List<?> getList(final String key) {
+        if (this.isOverridden(key)) {
+            return super.getList(key);
+        }
+
+        final List<?> parentList = this.parent.getList(key);
+
+        if (parentList == null) {
+            return null;
+        }
+
+        final Object view = this.retrieveView(key);
+
+        if (view instanceof CopyOnWriteList) {
+            return (CopyOnWriteList) view;
+        }
+
+        final CopyOnWriteList list = new CopyOnWriteList(key, parentList);
+
+        this.views.put(key, list);
+
+        return list;
+    }
+
+    /**
+     * Retrieves the child compound with the given name. A child of the parent is returned as an overlay which is
+     * stored in this overlay as soon as it is modified for the first time
+     *
+     * @param name which identifies the child compound
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} or null when there is no such entry
+     */
+    @Override
+    public NBTTagCompound getChildTag(final String name) {
+        if (this.isOverridden(name)) {
+            return super.getChildTag(name);
+        }
+
+        final NBTTagCompound parentChild = this.parent.getChildTag(name);
+
+        if (parentChild == null) {
+            return null;
+        }
+
+        final Object view = this.retrieveView(name);
+
+        if (view instanceof NBTOverlayCompound) {
+            return (NBTOverlayCompound) view;
+        }
+
+        final NBTOverlayCompound childOverlay = new NBTOverlayCompound(parentChild);
+        childOverlay.setName(name);
+        childOverlay.viewOwner = this;
+
+        this.views.put(name, childOverlay);
+
+        return childOverlay;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getValue(final NBTKey<T> key) {
+        final String name = key.getName();
+
+        if (this.isOverridden(name)) {
+            return super.getValue(key);
+        }
+
+        switch (key.getTagId()) {
+            case NBTConstants.TAG_BYTE_ARRAY:
+                return key.getType().cast(this.getByteArray(name));
+            case NBTConstants.TAG_INT_ARRAY:
+                return key.getType().cast(this.getIntArray(name));
+            case NBTConstants.TAG_LIST:
+                return (T) this.getList(name);
+            case NBTConstants.TAG_COMPOUND:
+                return key.getType().cast(this.getChildTag(name));
+            default:
+                return this.parent.getValue(key);
+        }
+    }
+
+    @Override
+    public int size() {
+        return super.size() + this.retrieveParentIndices().length;
+    }
+
+    @Override
+    public String getKeyAt(final int index) {
+        final int localSize = super.size();
+
+        return index < localSize ? super.getKeyAt(index) :
+                this.parent.getKeyAt(this.retrieveParentIndices()[index - localSize]);
+    }
+
+    @Override
+    public byte getTagIdAt(final int index) {
+        final int localSize = super.size();
+
+        return index < localSize ? super.getTagIdAt(index) :
+                this.parent.getTagIdAt(this.retrieveParentIndices()[index - localSize]);
+    }
+
+    /**
+     * Retrieves the value of the entry at the given index of the merged view. Values of the parent are returned
+     * as they are and must not be modified
+     *
+     * @param index which is needed to find the entry and has to be lower than {@link NBTOverlayCompound#size()}
+     *
+     * @return a fresh {@link Object}
+     */
+    @Override
+    public Object getValueAt(final int index) {
+        final int localSize = super.size();
+
+        return index < localSize ? super.getValueAt(index) :
+                this.parent.getValueAt(this.retrieveParentIndices()[index - localSize]);
+    }
+
+    @Override
+    public int getIndexInKeyOrder(final int position) {
+        if (this.sortedIndices == null || this.parentSize != this.parent.size()) {
+            this.sortedIndices = this.sortIndices();
+        }
+
+        return this.sortedIndices[position];
+    }
+
+    /**
+     * Retrieves the entries of the merged view
+     *
+     * @return a fresh unmodifiable {@link java.util.Set} of {@link java.util.Map} entries
+     */
+    @Override
+    public Set<Map.Entry<String, Object>> retrieveNBTEntries() {
+        final Map<String, Object> entries = new LinkedHashMap<>();
+
+        for (int i = 0; i < this.size(); i++) {
+            entries.put(this.getKeyAt(i), this.getValueAt(i));
+        }
+
+        return Collections.unmodifiableMap(entries).entrySet();
+    }
+
+    @Override
+    int indexOf(final String key) {
+        final int localIndex = super.indexOf(key);
+
+        if (localIndex != -1) {
+            return localIndex;
+        }
+
+        final int parentIndex = this.parent.indexOf(key);
+
+        if (parentIndex == -1) {
+            return -1;
+        }
+
+        return super.size() + Arrays.binarySearch(this.retrieveParentIndices(), parentIndex);
+    }
+
+    @Override
+    void onEntriesModified() {
+        this.parentIndices = null;
+        this.sortedIndices = null;
+
+        super.onEntriesModified();
+
+        final NBTOverlayCompound viewOwner = this.viewOwner;
+
+        if (viewOwner != null) {
+            this.viewOwner = null;
+
+            viewOwner.attachView(this.getName(), this, this);
+        }
+    }
+
+    /**
+     * Hides the entries of the parent. Views of them which have been retrieved before stay detached when they are
+     * modified
+     */
+    private void detach() {
+        this.parent = NBTOverlayCompound.DETACHED_PARENT;
+        this.views = null;
+
+        this.onEntriesModified();
+    }
+
+    private boolean isOverridden(final String key) {
+        return super.indexOf(key) != -1;
+    }
+
+    private Object retrieveView(final String key) {
+        if (this.views == null) {
+            this.views = new HashMap<>();
+        }
+
+        return this.views.get(key);
+    }
+
+    /**
+     * Stores the given view of an entry of the parent in this overlay once it is modified. A view which has been
+     * replaced by an entry of this overlay meanwhile stays detached
+     *
+     * @param key   which identifies the entry
+     * @param view  which has been modified
+     * @param value which should be stored instead of the entry of the parent
+     *
+     * @return whether the given value has been stored
+     */
+    private boolean attachView(final String key, final Object view, final Object value) {
+        if (this.views == null || this.views.get(key) != view) {
+            return false;
+        }
+
+        this.views.remove(key);
+
+        if (this.isOverridden(key)) {
+            return false;
+        }
+
+        if (value instanceof NBTTagCompound) {
+            this.setChildTag((NBTTagCompound) value);
+        } else {
+            this.setValue(key, (NBTTagList) value);
+        }
+
+        return true;
+    }
+
+    /**
+     * Retrieves the indices of the entries of the parent which are not overridden in ascending order
+     *
+     * @return a fresh array of indices of the parent
+     */
+    private int[] retrieveParentIndices() {
+        final int parentSize = this.parent.size();
+
+        if (this.parentIndices != null && this.parentSize == parentSize) {
+            return this.parentIndices;
+        }
+
+        int[] parentIndices = new int[parentSize];
+        int count = 0;
+
+        for (int i = 0; i < parentSize; i++) {
+            if (!this.isOverridden(this.parent.getKeyAt(i))) {
+                parentIndices[count++] = i;
+            }
+        }
+
+        if (count < parentSize) {
+            parentIndices = Arrays.copyOf(parentIndices, count);
+        }
+
+        this.parentIndices = parentIndices;
+        this.parentSize = parentSize;
+        this.sortedIndices = null;
+
+        return parentIndices;
+    }
+
+    /**
+     * Merges the key order of the local entries with the key order of the entries of the parent which are not
+     * overridden
+     *
+     * @return a fresh array of indices of the merged view
+     */
+    private int[] sortIndices() {
+        final int[] parentIndices = this.retrieveParentIndices();
+        final int localSize = super.size();
+        final int parentSize = this.parent.size();
+        final int[] sortedIndices = new int[localSize + parentIndices.length];
+        int localPosition = 0;
+        int parentPosition = 0;
+        int count = 0;
+
+        while (localPosition < localSize || parentPosition < parentSize) {
+            final int parentIndex = parentPosition < parentSize ? this.parent.getIndexInKeyOrder(parentPosition) : -1;
+
+            if (parentIndex != -1 && this.isOverridden(this.parent.getKeyAt(parentIndex))) {
+                parentPosition++;
+
+                continue;
+            }
+
+            final int localIndex = localPosition < localSize ? super.getIndexInKeyOrder(localPosition) : -1;
+
+            if (parentIndex == -1 || (localIndex != -1 &&
+                    NBTTagMap.compareKeys(super.getKeyAt(localIndex), this.parent.getKeyAt(parentIndex)) <= 0)) {
+                sortedIndices[count++] = localIndex;
+                localPosition++;
+            } else {
+                sortedIndices[count++] = localSize + Arrays.binarySearch(parentIndices, parentIndex);
+                parentPosition++;
+            }
+        }
+
+        return sortedIndices;
+    }
+
+    /**
+     * Copies the given list of the parent, so that it can be modified without affecting the parent
+     *
+     * @param list which should be copied
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagList}
+     */
+    private static NBTTagList copyList(final List<?> list) {
+        final NBTTagList copy = new NBTTagList(list instanceof NBTTagList ? ((NBTTagList) list).getElementTagId() :
+                NBTConstants.TAG_END, list.size());
+
+        for (final Object element : list) {
+            if (element instanceof NBTTagCompound) {
+                copy.add(new NBTOverlayCompound((NBTTagCompound) element));
+            } else if (element instanceof List) {
+                copy.add(NBTOverlayCompound.copyList((List<?>) element));
+            } else if (element instanceof byte[]) {
+                copy.add(((byte[]) element).clone());
+            } else if (element instanceof int[]) {
+                copy.add(((int[]) element).clone());
+            } else {
+                copy.add(element);
+            }
+        }
+
+        return copy;
+    }
+
+    /**
+     * A view of a list of the parent which reads from the parent until it is modified. The first modification copies
+     * the list into the overlay, every further operation is applied to the copy
+     */
+    private final class CopyOnWriteList extends AbstractList<Object> {
+
+        private final String key;
+
+        private List<?> list;
+        private boolean copied = false;
+
+        private CopyOnWriteList(final String key, final List<?> list) {
+            this.key = key;
+            this.list = list;
+        }
+
+        @Override
+        public Object get(final int index) {
+            final Object element = this.list.get(index);
+
+            // compounds and lists of the parent have to be copied before they can be handed out
+            if (!this.copied && (element instanceof NBTTagCompound || element instanceof List)) {
+                return this.copy().get(index);
+            }
+
+            return element;
+        }
+
+        @Override
+        public int size() {
+            return this.list.size();
+        }
+
+        @Override
+        public Object set(final int index, final Object element) {
+            return this.copy().set(index, element);
+        }
+
+        @Override
+        public void add(final int index, final Object element) {
+            this.copy().add(index, element);
+        }
+
+        @Override
+        public Object remove(final int index) {
+            return this.copy().remove(index);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof List && NBTStructure.isEqual(this, obj);
+        }
+
+        @Override
+        public int hashCode() {
+            return NBTStructure.hash(this);
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<Object> copy() {
+            if (!this.copied) {
+                final NBTTagList copy = NBTOverlayCompound.copyList(this.list);
+
+                NBTOverlayCompound.this.attachView(this.key, this, copy);
+
+                this.list = copy;
+                this.copied = true;
+            }
+
+            return (List<Object>) this.list;
+        }
+    }
+}
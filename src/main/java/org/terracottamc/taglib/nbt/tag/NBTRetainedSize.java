@@ -0,0 +1,158 @@
+package org.terracottamc.taglib.nbt.tag;
+
+import java.util.List;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Estimates the amount of heap bytes nbt values retain. The sizes assume a 64-bit virtual machine with compressed
+ * references and compressed class pointers, an alignment of eight bytes and compact strings. Boxed numbers which
+ * are taken from the caches of their valueOf methods are shared and therefore not counted, any other instance
+ * which is referenced more than once, for example a string constant or a compound which has been added to several
+ * owners, is counted once per reference
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+final class NBTRetainedSize {
+
+    static final int REFERENCE = 4;
+    static final int TAG_COMPOUND = 40;
+    static final int TAG_MAP = 56;
+    static final int TAG_LIST = 48;
+    static final int ENTRY_SET = 16;
+    static final int COPYING_VIEW = 24;
+
+    private static final int ARRAY_HEADER = 16;
+    private static final int STRING = 24;
+    private static final int BOXED_INT = 16;
+    private static final int BOXED_LONG = 24;
+
+    private NBTRetainedSize() {
+
+    }
+
+    /**
+     * Estimates the amount of bytes the given nbt value retains
+     *
+     * @param value which should be measured
+     *
+     * @return a fresh amount of bytes
+     */
+    static long of(final Object value) {
+        if (value instanceof NBTTagCompound) {
+            return ((NBTTagCompound) value).retainedSize();
+        }
+
+        if (value instanceof NBTTagList) {
+            return ((NBTTagList) value).retainedSize();
+        }
+
+        if (value instanceof List) {
+            long size = NBTRetainedSize.TAG_LIST + NBTRetainedSize.ofArray(NBTRetainedSize.REFERENCE,
+                    ((List<?>) value).size());
+
+            for (final Object element : (List<?>) value) {
+                size += NBTRetainedSize.of(element);
+            }
+
+            return size;
+        }
+
+        if (value instanceof String) {
+            return NBTRetainedSize.ofString((String) value);
+        }
+
+        if (value instanceof byte[]) {
+            return NBTRetainedSize.ofArray(1, ((byte[]) value).length);
+        }
+
+        if (value instanceof int[]) {
+            return NBTRetainedSize.ofArray(4, ((int[]) value).length);
+        }
+
+        if (value instanceof Short || value instanceof Integer) {
+            final int number = ((Number) value).intValue();
+
+            return number >= -128 && number <= 127 ? 0L : NBTRetainedSize.BOXED_INT;
+        }
+
+        if (value instanceof Long) {
+            final long number = (Long) value;
+
+            return number >= -128L && number <= 127L ? 0L : NBTRetainedSize.BOXED_LONG;
+        }
+
+        if (value instanceof Float) {
+            return NBTRetainedSize.BOXED_INT;
+        }
+
+        if (value instanceof Double) {
+            return NBTRetainedSize.BOXED_LONG;
+        }
+
+        // every Byte is cached
+        return 0L;
+    }
+
+    /**
+     * Estimates the amount of bytes the owners of a compound or list retain besides the owners themselves
+     *
+     * @param owner which contains the compound or list, an array of owners or null
+     *
+     * @return a fresh amount of bytes which is zero unless the compound or list is shared
+     */
+    static long ofOwners(final Object owner) {
+        return owner instanceof Object[] ?
+                NBTRetainedSize.ofArray(NBTRetainedSize.REFERENCE, ((Object[]) owner).length) : 0L;
+    }
+
+    /**
+     * Estimates the amount of bytes the given string retains, strings which only contain latin-1 characters occupy
+     * one byte per character and two bytes otherwise
+     *
+     * @param value which should be measured
+     *
+     * @return a fresh amount of bytes
+     */
+    static long ofString(final String value) {
+        if (value == null) {
+            return 0L;
+        }
+
+        final int length = value.length();
+        int bytesPerCharacter = 1;
+
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) > 0xFF) {
+                bytesPerCharacter = 2;
+
+                break;
+            }
+        }
+
+        return NBTRetainedSize.STRING + NBTRetainedSize.ofArray(bytesPerCharacter, length);
+    }
+
+    /**
+     * Estimates the amount of bytes an array with the given length occupies
+     *
+     * @param elementSize which represents the amount of bytes of every element
+     * @param length      which represents the amount of elements
+     *
+     * @return a fresh amount of bytes
+     */
+    static long ofArray(final int elementSize, final int length) {
+        return NBTRetainedSize.align(NBTRetainedSize.ARRAY_HEADER + (long) elementSize * length);
+    }
+
+    private static long align(final long size) {
+        return (size + 7L) & ~7L;
+    }
+}
@@ -0,0 +1,242 @@
+package org.terracottamc.taglib.nbt.tag;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Compares and hashes nbt values by their content, so that arrays and lists which contain arrays are handled
+ * correctly, and links containers to their owners so that cached hashes and sizes can be invalidated
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+final class NBTStructure {
+
+    private NBTStructure() {
+
+    }
+
+    /**
+     * Computes the structural hash of the given nbt value
+     *
+     * @param value which should be hashed
+     *
+     * @return a fresh hash
+     */
+    static int hash(final Object value) {
+        if (value instanceof byte[]) {
+            return Arrays.hashCode((byte[]) value);
+        }
+
+        if (value instanceof int[]) {
+            return Arrays.hashCode((int[]) value);
+        }
+
+        if (value instanceof List) {
+            int hash = 1;
+
+            for (final Object element : (List<?>) value) {
+                hash = 31 * hash + NBTStructure.hash(element);
+            }
+
+            return hash;
+        }
+
+        return value == null ? 0 : value.hashCode();
+    }
+
+    /**
+     * Proofs whether the given nbt values are structurally equal
+     *
+     * @param value      which should be compared
+     * @param otherValue which should be compared
+     *
+     * @return whether both values are equal
+     */
+    static boolean isEqual(final Object value, final Object otherValue) {
+        if (value == otherValue) {
+            return true;
+        }
+
+        if (value == null || otherValue == null) {
+            return false;
+        }
+
+        if (value instanceof byte[]) {
+            return otherValue instanceof byte[] && Arrays.equals((byte[]) value, (byte[]) otherValue);
+        }
+
+        if (value instanceof int[]) {
+            return otherValue instanceof int[] && Arrays.equals((int[]) value, (int[]) otherValue);
+        }
+
+        if (value instanceof List) {
+            if (!(otherValue instanceof List)) {
+                return false;
+            }
+
+            final List<?> list = (List<?>) value;
+            final List<?> otherList = (List<?>) otherValue;
+            final int size = list.size();
+
+            if (size != otherList.size()) {
+                return false;
+            }
+
+            for (int i = 0; i < size; i++) {
+                if (!NBTStructure.isEqual(list.get(i), otherList.get(i))) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return value.equals(otherValue);
+    }
+
+    /**
+     * Copies the given nbt value when it is an array, so that an array of an immutable compound or list cannot be
+     * modified through the returned value
+     *
+     * @param value which should be copied
+     *
+     * @return a fresh copy of the given array or the given value itself
+     */
+    static Object copyArray(final Object value) {
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+
+        if (value instanceof int[]) {
+            return ((int[]) value).clone();
+        }
+
+        return value;
+    }
+
+    /**
+     * Links the given value to its owner when it is a container whose modifications affect the hash of the owner
+     *
+     * @param value which has been added to the owner
+     * @param owner which contains the value now
+     */
+    static void link(final Object value, final Object owner) {
+        if (value instanceof NBTTagCompound) {
+            final NBTTagCompound nbtTagCompound = (NBTTagCompound) value;
+
+            // immutable compounds and lists are shared and never change
+            if (!nbtTagCompound.isImmutable()) {
+                final Object owners = nbtTagCompound.getOwner();
+
+                nbtTagCompound.setOwner(NBTStructure.addOwner(owners, value, owner));
+
+                // the retained size of a shared compound includes the array of its owners
+                if (owners instanceof Object[] || nbtTagCompound.getOwner() instanceof Object[]) {
+                    nbtTagCompound.invalidateCaches();
+                }
+            }
+        } else if (value instanceof NBTTagList && !((NBTTagList) value).isImmutable()) {
+            final NBTTagList nbtTagList = (NBTTagList) value;
+            final Object owners = nbtTagList.getOwner();
+
+            nbtTagList.setOwner(NBTStructure.addOwner(owners, value, owner));
+
+            if (owners instanceof Object[] || nbtTagList.getOwner() instanceof Object[]) {
+                nbtTagList.onModification();
+            }
+        }
+    }
+
+    /**
+     * Invalidates the cached hash and size of the given owner and of all of its owners
+     *
+     * @param owner which has been modified, an array of owners or null
+     */
+    static void invalidate(final Object owner) {
+        if (owner instanceof NBTTagCompound) {
+            ((NBTTagCompound) owner).invalidateCaches();
+        } else if (owner instanceof NBTTagList) {
+            ((NBTTagList) owner).onModification();
+        } else if (owner instanceof Object[]) {
+            for (final Object element : (Object[]) owner) {
+                NBTStructure.invalidate(element);
+            }
+        }
+    }
+
+    /**
+     * Adds the given owner to the owners of the given value. A value which is contained by a single compound or list
+     * refers to it directly, a value which is shared by several of them refers to an array of them.
+     * Owners which do not contain the value anymore are dropped
+     *
+     * @param owners   which contain the value currently, an array of them or null
+     * @param value    which has been added to the given owner
+     * @param newOwner which contains the value now
+     *
+     * @return the updated owners
+     */
+    private static Object addOwner(final Object owners, final Object value, final Object newOwner) {
+        if (owners == null || owners == newOwner) {
+            return newOwner;
+        }
+
+        if (!(owners instanceof Object[])) {
+            return NBTStructure.contains(owners, value) ? new Object[]{owners, newOwner} : newOwner;
+        }
+
+        final Object[] previousOwners = (Object[]) owners;
+        final Object[] updatedOwners = new Object[previousOwners.length + 1];
+        int size = 0;
+
+        for (final Object owner : previousOwners) {
+            if (owner != newOwner && NBTStructure.contains(owner, value)) {
+                updatedOwners[size++] = owner;
+            }
+        }
+
+        if (size == 0) {
+            return newOwner;
+        }
+
+        updatedOwners[size++] = newOwner;
+
+        return Arrays.copyOf(updatedOwners, size);
+    }
+
+    /**
+     * Proofs whether the given owner still contains the given value itself
+     *
+     * @param owner which should be proofed
+     * @param value which should be found
+     *
+     * @return whether the value is a direct entry or element of the owner
+     */
+    private static boolean contains(final Object owner, final Object value) {
+        if (owner instanceof NBTTagCompound) {
+            final NBTTagCompound nbtTagCompound = (NBTTagCompound) owner;
+
+            for (int i = 0; i < nbtTagCompound.size(); i++) {
+                if (nbtTagCompound.getValueAt(i) == value) {
+                    return true;
+                }
+            }
+        } else if (owner instanceof NBTTagList) {
+            for (final Object element : (NBTTagList) owner) {
+                if (element == value) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
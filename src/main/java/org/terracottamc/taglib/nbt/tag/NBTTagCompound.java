@@ -4,14 +4,17 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.PooledByteBufAllocator;
 import org.terracottamc.taglib.NBTBuilder;
 import org.terracottamc.taglib.nbt.io.NBTWriter;
+import org.terracottamc.taglib.util.hash.XXHash64;
+import org.terracottamc.taglib.util.nbt.NBTConstants;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteOrder;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -27,9 +30,20 @@ import java.util.Set;
  */
 public class NBTTagCompound implements INBTTagCompound {
 
-    private final Map<String, Object> nbtMap = new HashMap<>();
+    private final NBTTagMap nbtMap = new NBTTagMap() {
+        @Override
+        void onModification(final Object value) {
+            NBTStructure.link(value, NBTTagCompound.this);
+
+            NBTTagCompound.this.onEntriesModified();
+        }
+    };
 
     private String name = null;
+    private boolean immutable = false;
+    private Object owner = null;
+    private int hash = 0;
+    private long retainedSize = -1L;
 
     /**
      * Creates a new {@link NBTTagCompound}
@@ -78,6 +92,7 @@ public class NBTTagCompound implements INBTTagCompound {
 
     @Override
     public void writeAndFlush(final ByteBuf buffer, final ByteOrder byteOrder) {
+        this.ensureMutable();
         this.write(buffer, byteOrder);
 
         this.nbtMap.clear();
@@ -85,6 +100,7 @@ public class NBTTagCompound implements INBTTagCompound {
 
     @Override
     public void writeAndFlush(final File file, final ByteOrder byteOrder) {
+        this.ensureMutable();
         this.write(file, byteOrder);
 
         this.nbtMap.clear();
@@ -92,57 +108,79 @@ public class NBTTagCompound implements INBTTagCompound {
 
     @Override
     public void setValue(final String key, final byte value) {
-        this.nbtMap.put(key, value);
+        this.ensureMutable();
+
+        this.nbtMap.put(key, NBTConstants.TAG_BYTE, value);
     }
 
     @Override
     public void setValue(final String key, final short value) {
-        this.nbtMap.put(key, value);
+        this.ensureMutable();
+
+        this.nbtMap.put(key, NBTConstants.TAG_SHORT, value);
     }
 
     @Override
     public void setValue(final String key, final int value) {
-        this.nbtMap.put(key, value);
+        this.ensureMutable();
+
+        this.nbtMap.put(key, NBTConstants.TAG_INT, value);
     }
 
     @Override
     public void setValue(final String key, final long value) {
-        this.nbtMap.put(key, value);
+        this.ensureMutable();
+
+        this.nbtMap.put(key, NBTConstants.TAG_LONG, value);
     }
 
     @Override
     public void setValue(final String key, final float value) {
-        this.nbtMap.put(key, value);
+        this.ensureMutable();
+
+        this.nbtMap.put(key, NBTConstants.TAG_FLOAT, value);
     }
 
     @Override
     public void setValue(final String key, final double value) {
-        this.nbtMap.put(key, value);
+        this.ensureMutable();
+
+        this.nbtMap.put(key, NBTConstants.TAG_DOUBLE, value);
     }
 
     @Override
     public void setValue(final String key, final String value) {
-        this.nbtMap.put(key, value);
+        this.ensureMutable();
+
+        this.nbtMap.put(key, NBTConstants.TAG_STRING, value);
     }
 
     @Override
     public void setValue(final String key, final byte[] value) {
-        this.nbtMap.put(key, value);
+        this.ensureMutable();
+
+        this.nbtMap.put(key, NBTConstants.TAG_BYTE_ARRAY, value);
     }
 
     @Override
     public void setValue(final String key, final int[] value) {
-        this.nbtMap.put(key, value);
+        this.ensureMutable();
+
+        this.nbtMap.put(key, NBTConstants.TAG_INT_ARRAY, value);
     }
 
     @Override
     public void setValue(final String key, final List<Object> value) {
-        this.nbtMap.put(key, value);
+        this.ensureMutable();
+
+        this.nbtMap.put(key, NBTConstants.TAG_LIST, NBTTagCompound.toTagList(value));
     }
 
     @Override
     public void setChildTag(final NBTTagCompound childCompound) {
-        this.nbtMap.put(childCompound.getName(), childCompound);
+        this.ensureMutable();
+
+        this.nbtMap.put(childCompound.getName(), NBTConstants.TAG_COMPOUND, childCompound);
     }
 
     @Override
@@ -182,12 +220,17 @@ public class NBTTagCompound implements INBTTagCompound {
 
     @Override
     public byte[] getByteArray(final String key) {
-        return (byte[]) this.nbtMap.get(key);
+        final byte[] value = (byte[]) this.nbtMap.get(key);
+
+        // the arrays of an immutable compound are shared
+        return this.immutable && value != null ? value.clone() : value;
     }
 
     @Override
     public int[] getIntArray(final String key) {
-        return (int[]) this.nbtMap.get(key);
+        final int[] value = (int[]) this.nbtMap.get(key);
+
+        return this.immutable && value != null ? value.clone() : value;
     }
 
     @Override
@@ -200,13 +243,80 @@ public class NBTTagCompound implements INBTTagCompound {
         return (NBTTagCompound) this.nbtMap.get(name);
     }
 
+    @Override
+    public <T> void setValue(final NBTKey<T> key, final T value) {
+        this.ensureMutable();
+
+        if (key.getTagId() == NBTConstants.TAG_LIST) {
+            this.nbtMap.put(key, NBTTagCompound.toTagList((List<?>) value));
+
+            return;
+        }
+
+        if (key.getTagId() == NBTConstants.TAG_COMPOUND) {
+            ((NBTTagCompound) value).setName(key.getName());
+        }
+
+        this.nbtMap.put(key, value);
+    }
+
+    @Override
+    public <T> T getValue(final NBTKey<T> key) {
+        final int slot = this.nbtMap.indexOf(key);
+
+        if (slot == -1) {
+            return null;
+        }
+
+        final Object value = this.nbtMap.valueAt(slot);
+
+        return key.getType().cast(this.immutable ? NBTStructure.copyArray(value) : value);
+    }
+
+    @Override
+    public byte getByte(final NBTKey<Byte> key) {
+        return this.getValue(key);
+    }
+
+    @Override
+    public short getShort(final NBTKey<Short> key) {
+        return this.getValue(key);
+    }
+
+    @Override
+    public int getInt(final NBTKey<Integer> key) {
+        return this.getValue(key);
+    }
+
+    @Override
+    public long getLong(final NBTKey<Long> key) {
+        return this.getValue(key);
+    }
+
+    @Override
+    public float getFloat(final NBTKey<Float> key) {
+        return this.getValue(key);
+    }
+
+    @Override
+    public double getDouble(final NBTKey<Double> key) {
+        return this.getValue(key);
+    }
+
     /**
      * Updates the name of this {@link NBTTagCompound}
      *
      * @param name which should be updated
      */
     public void setName(final String name) {
-        this.name = name;
+        // an immutable compound may still be attached under the name it already has
+        if (!Objects.equals(this.name, name)) {
+            this.ensureMutable();
+
+            this.name = name;
+
+            this.invalidateCaches();
+        }
     }
 
     /**
@@ -219,11 +329,274 @@ public class NBTTagCompound implements INBTTagCompound {
     }
 
     /**
-     * Retrieves the nbt entries of this {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}
+     * Retrieves the amount of entries of this {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}
+     *
+     * @return a fresh int
+     */
+    public int size() {
+        return this.nbtMap.size();
+    }
+
+    /**
+     * Proofs whether this {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} contains an entry with the given key
+     *
+     * @param key which identifies the entry
+     *
+     * @return whether there is such an entry
+     */
+    public boolean containsKey(final String key) {
+        return this.indexOf(key) != -1;
+    }
+
+    /**
+     * Retrieves the key of the entry at the given index
+     *
+     * @param index which is needed to find the entry and has to be lower than {@link NBTTagCompound#size()}
+     *
+     * @return a fresh {@link String}
+     */
+    public String getKeyAt(final int index) {
+        return this.nbtMap.keyAt(index);
+    }
+
+    /**
+     * Retrieves the tag identifier of the entry at the given index
+     *
+     * @param index which is needed to find the entry and has to be lower than {@link NBTTagCompound#size()}
+     *
+     * @return a fresh byte
+     */
+    public byte getTagIdAt(final int index) {
+        return this.nbtMap.tagIdAt(index);
+    }
+
+    /**
+     * Retrieves the value of the entry at the given index. Arrays of an immutable compound are returned as they are
+     * and must not be modified
+     *
+     * @param index which is needed to find the entry and has to be lower than {@link NBTTagCompound#size()}
+     *
+     * @return a fresh {@link Object}
+     */
+    public Object getValueAt(final int index) {
+        return this.nbtMap.valueAt(index);
+    }
+
+    /**
+     * Retrieves the index of the entry at the given position when the entries are ordered by their keys.
+     * The order is cached until a key is added or removed
+     *
+     * @param position which has to be lower than {@link NBTTagCompound#size()}
+     *
+     * @return a fresh index which can be passed to {@link NBTTagCompound#getKeyAt(int)}
+     */
+    public int getIndexInKeyOrder(final int position) {
+        return this.nbtMap.sortedSlotAt(position);
+    }
+
+    /**
+     * Retrieves the nbt entries of this {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}. The entries of an
+     * immutable compound cannot be modified and their arrays must not be modified either
      *
      * @return a fresh {@link java.util.Set} of {@link java.util.Map} entries
      */
     public Set<Map.Entry<String, Object>> retrieveNBTEntries() {
+        if (this.immutable) {
+            return Collections.unmodifiableMap(this.nbtMap).entrySet();
+        }
+
         return this.nbtMap.entrySet();
     }
-}
\ No newline at end of file
+
+    /**
+     * Makes this {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} immutable, so that it can be shared.
+     * Every later attempt to modify it throws an {@link java.lang.UnsupportedOperationException} and its arrays are
+     * retrieved as copies, the compounds and lists it contains are not affected
+     */
+    public void makeImmutable() {
+        this.immutable = true;
+    }
+
+    /**
+     * Proofs whether this {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} is immutable
+     *
+     * @return whether it is immutable
+     */
+    public boolean isImmutable() {
+        return this.immutable;
+    }
+
+    /**
+     * Computes a 64-bit xxHash fingerprint of the big endian encoding of this
+     * {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}.
+     * The fingerprint of already encoded data can be computed with
+     * {@link org.terracottamc.taglib.util.hash.XXHash64#hash(io.netty.buffer.ByteBuf, long)} without decoding it
+     *
+     * @return a fresh fingerprint
+     */
+    public long fingerprint() {
+        final ByteBuf buffer = PooledByteBufAllocator.DEFAULT.heapBuffer();
+
+        try {
+            new NBTWriter(buffer, ByteOrder.BIG_ENDIAN).writeTagCompound(this);
+
+            return XXHash64.hash(buffer, 0L);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Compares the name and the entries of this {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} with the
+     * given object regardless of the order of the entries. Arrays and lists are compared by their content
+     *
+     * @param obj which should be compared
+     *
+     * @return whether the given object is an equal {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof NBTTagCompound)) {
+            return false;
+        }
+
+        final NBTTagCompound other = (NBTTagCompound) obj;
+        final int size = this.size();
+
+        // the cached hashes are not compared, since arrays which are modified in place do not invalidate them
+        if (size != other.size() || !Objects.equals(this.getName(), other.getName())) {
+            return false;
+        }
+
+        for (int i = 0; i < size; i++) {
+            final int otherIndex = other.indexOf(this.getKeyAt(i));
+
+            if (otherIndex == -1 || this.getTagIdAt(i) != other.getTagIdAt(otherIndex) ||
+                    !NBTStructure.isEqual(this.getValueAt(i), other.getValueAt(otherIndex))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Computes the structural hash of this {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} which is cached
+     * until this compound or one of the compounds and lists it contains is modified.
+     * Arrays are hashed by their content, so an array which is modified in place has to be set again
+     *
+     * @return a fresh hash
+     */
+    @Override
+    public int hashCode() {
+        int hash = this.hash;
+
+        if (hash == 0) {
+            for (int i = 0; i < this.size(); i++) {
+                hash += Objects.hashCode(this.getKeyAt(i)) ^ NBTStructure.hash(this.getValueAt(i));
+            }
+
+            hash = 31 * hash + Objects.hashCode(this.getName());
+
+            this.hash = hash == 0 ? 1 : hash;
+        }
+
+        return this.hash;
+    }
+
+    /**
+     * Estimates the amount of heap bytes this {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound}, its name and
+     * its entries retain. The estimate is cached like {@link NBTTagCompound#hashCode()}, so only the modified
+     * compounds and lists are measured again
+     *
+     * @return a fresh amount of bytes
+     */
+    public long retainedSize() {
+        long retainedSize = this.retainedSize;
+
+        if (retainedSize == -1L) {
+            retainedSize = NBTRetainedSize.TAG_COMPOUND + NBTRetainedSize.TAG_MAP +
+                    NBTRetainedSize.ofString(this.name) + NBTRetainedSize.ofOwners(this.owner) +
+                    this.nbtMap.retainedSize();
+
+            this.retainedSize = retainedSize;
+        }
+
+        return retainedSize;
+    }
+
+    /**
+     * Retrieves the compound or list which contains this {@link NBTTagCompound}
+     *
+     * @return the owner, an array of owners when this {@link NBTTagCompound} is shared or null
+     */
+    Object getOwner() {
+        return this.owner;
+    }
+
+    /**
+     * Updates the compounds or lists which contain this {@link NBTTagCompound}
+     *
+     * @param owner which should be updated, an array of owners or null
+     */
+    void setOwner(final Object owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Retrieves the index of the entry with the given key
+     *
+     * @param key which identifies the entry
+     *
+     * @return the index which can be passed to {@link NBTTagCompound#getValueAt(int)} or -1 when there is no entry
+     */
+    int indexOf(final String key) {
+        return this.nbtMap.indexOf(key);
+    }
+
+    /**
+     * Gets called after every modification of the entries of this {@link NBTTagCompound}
+     */
+    void onEntriesModified() {
+        this.invalidateCaches();
+    }
+
+    /**
+     * Invalidates the cached hash and size of this {@link NBTTagCompound} and of all compounds which contain it
+     */
+    void invalidateCaches() {
+        // a compound whose hash and size are not cached has no owner with a cached hash or size
+        if (this.hash != 0 || this.retainedSize != -1L) {
+            this.hash = 0;
+            this.retainedSize = -1L;
+
+            NBTStructure.invalidate(this.owner);
+        }
+    }
+
+    private void ensureMutable() {
+        if (this.immutable) {
+            throw new UnsupportedOperationException("The NBTTagCompound " + this.name + " is immutable");
+        }
+    }
+
+    /**
+     * Converts the given {@link java.util.List} into a {@link NBTTagList} so that the tag identifier of its
+     * elements is known when it gets written
+     *
+     * @param list which should be converted
+     *
+     * @return the given list when it is a {@link NBTTagList} already or a validated copy of it
+     */
+    private static NBTTagList toTagList(final List<?> list) {
+        if (list instanceof NBTTagList) {
+            return (NBTTagList) list;
+        }
+
+        return new NBTTagList(list);
+    }
+}
@@ -0,0 +1,483 @@
+package org.terracottamc.taglib.nbt.tag;
+
+import org.terracottamc.taglib.util.nbt.NBTConstants;
+import org.terracottamc.taglib.util.nbt.NBTTagIdResolver;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * A {@link java.util.List} which records the tag identifier of its elements and rejects
+ * every element which does not match it
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTTagList extends ArrayList<Object> {
+
+    private final boolean fixedTagId;
+
+    private byte elementTagId;
+    private Class<?> elementClass = null;
+    private boolean immutable = false;
+    private List<Object> copyingView = null;
+    private Object owner = null;
+    private long retainedSize = -1L;
+
+    /**
+     * Creates a new {@link NBTTagList} which takes the tag identifier of its first element
+     */
+    public NBTTagList() {
+        this.fixedTagId = false;
+        this.elementTagId = NBTConstants.TAG_END;
+    }
+
+    /**
+     * Creates a new {@link NBTTagList} with given element tag identifier and initial capacity
+     *
+     * @param elementTagId    which represents the tag identifier every element has to match
+     * @param initialCapacity which is the initial capacity of this {@link NBTTagList}
+     */
+    public NBTTagList(final byte elementTagId, final int initialCapacity) {
+        super(initialCapacity);
+
+        this.fixedTagId = elementTagId != NBTConstants.TAG_END;
+        this.elementTagId = elementTagId;
+    }
+
+    /**
+     * Creates a new {@link NBTTagList} with the elements of the given {@link java.util.Collection}
+     *
+     * @param elements which should be added to this {@link NBTTagList}
+     */
+    public NBTTagList(final Collection<?> elements) {
+        super(elements.size());
+
+        this.fixedTagId = false;
+        this.elementTagId = NBTConstants.TAG_END;
+
+        for (final Object element : elements) {
+            this.add(element);
+        }
+    }
+
+    /**
+     * Retrieves the tag identifier of the elements of this {@link NBTTagList}
+     *
+     * @return a fresh byte which is {@link NBTConstants#TAG_END} when it is unknown yet
+     */
+    public byte getElementTagId() {
+        return this.elementTagId;
+    }
+
+    /**
+     * Retrieves the element at the given index. Arrays of an immutable {@link NBTTagList} are shared, so a copy of
+     * them is returned. Iterators, streams and the other views of an immutable list hand out copies as well
+     *
+     * @param index which represents the element
+     *
+     * @return a fresh {@link Object}
+     */
+    @Override
+    public Object get(final int index) {
+        final Object element = super.get(index);
+
+        return this.immutable ? NBTStructure.copyArray(element) : element;
+    }
+
+    @Override
+    public List<Object> subList(final int fromIndex, final int toIndex) {
+        // the sub list of an array list reads and writes its backing array directly
+        return this.immutable ? this.copyingView.subList(fromIndex, toIndex) : super.subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public Iterator<Object> iterator() {
+        return this.immutable ? this.copyingView.iterator() : super.iterator();
+    }
+
+    @Override
+    public ListIterator<Object> listIterator() {
+        return this.immutable ? this.copyingView.listIterator() : super.listIterator();
+    }
+
+    @Override
+    public ListIterator<Object> listIterator(final int index) {
+        return this.immutable ? this.copyingView.listIterator(index) : super.listIterator(index);
+    }
+
+    @Override
+    public Spliterator<Object> spliterator() {
+        return this.immutable ? this.copyingView.spliterator() : super.spliterator();
+    }
+
+    @Override
+    public void forEach(final Consumer<? super Object> action) {
+        if (!this.immutable) {
+            super.forEach(action);
+
+            return;
+        }
+
+        for (int i = 0; i < this.size(); i++) {
+            action.accept(this.get(i));
+        }
+    }
+
+    @Override
+    public Object[] toArray() {
+        final Object[] elements = super.toArray();
+
+        if (this.immutable) {
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = NBTStructure.copyArray(elements[i]);
+            }
+        }
+
+        return elements;
+    }
+
+    @Override
+    public <T> T[] toArray(final T[] array) {
+        final T[] elements = super.toArray(array);
+
+        if (this.immutable) {
+            final Object[] copiedElements = elements;
+
+            for (int i = 0; i < this.size(); i++) {
+                copiedElements[i] = NBTStructure.copyArray(copiedElements[i]);
+            }
+        }
+
+        return elements;
+    }
+
+    @Override
+    public boolean add(final Object element) {
+        this.ensureMutable();
+
+        this.checkElement(element);
+
+        super.add(element);
+
+        this.onElementAdded(element);
+
+        return true;
+    }
+
+    @Override
+    public void add(final int index, final Object element) {
+        this.ensureMutable();
+
+        this.checkElement(element);
+
+        super.add(index, element);
+
+        this.onElementAdded(element);
+    }
+
+    @Override
+    public Object set(final int index, final Object element) {
+        this.ensureMutable();
+
+        this.checkElement(element);
+
+        final Object previousElement = super.set(index, element);
+
+        this.onElementAdded(element);
+
+        return previousElement;
+    }
+
+    @Override
+    public boolean addAll(final Collection<?> elements) {
+        this.ensureMutable();
+
+        for (final Object element : elements) {
+            this.checkElement(element);
+        }
+
+        final boolean modified = super.addAll(elements);
+
+        for (final Object element : elements) {
+            NBTStructure.link(element, this);
+        }
+
+        this.onModification();
+
+        return modified;
+    }
+
+    @Override
+    public boolean addAll(final int index, final Collection<?> elements) {
+        this.ensureMutable();
+
+        for (final Object element : elements) {
+            this.checkElement(element);
+        }
+
+        final boolean modified = super.addAll(index, elements);
+
+        for (final Object element : elements) {
+            NBTStructure.link(element, this);
+        }
+
+        this.onModification();
+
+        return modified;
+    }
+
+    @Override
+    public void replaceAll(final UnaryOperator<Object> operator) {
+        this.ensureMutable();
+
+        for (int i = 0; i < this.size(); i++) {
+            this.set(i, operator.apply(this.get(i)));
+        }
+    }
+
+    @Override
+    public Object remove(final int index) {
+        this.ensureMutable();
+
+        final Object element = super.remove(index);
+
+        this.onModification();
+
+        return element;
+    }
+
+    @Override
+    public boolean remove(final Object element) {
+        this.ensureMutable();
+
+        final boolean modified = super.remove(element);
+
+        this.onModification();
+
+        return modified;
+    }
+
+    @Override
+    public boolean removeAll(final Collection<?> elements) {
+        this.ensureMutable();
+
+        final boolean modified = super.removeAll(elements);
+
+        this.onModification();
+
+        return modified;
+    }
+
+    @Override
+    public boolean retainAll(final Collection<?> elements) {
+        this.ensureMutable();
+
+        final boolean modified = super.retainAll(elements);
+
+        this.onModification();
+
+        return modified;
+    }
+
+    @Override
+    public boolean removeIf(final Predicate<? super Object> filter) {
+        this.ensureMutable();
+
+        final boolean modified = super.removeIf(filter);
+
+        this.onModification();
+
+        return modified;
+    }
+
+    @Override
+    public void sort(final Comparator<? super Object> comparator) {
+        this.ensureMutable();
+
+        super.sort(comparator);
+
+        this.onModification();
+    }
+
+    @Override
+    public void clear() {
+        this.ensureMutable();
+
+        super.clear();
+
+        if (!this.fixedTagId) {
+            this.elementTagId = NBTConstants.TAG_END;
+            this.elementClass = null;
+        }
+
+        this.onModification();
+    }
+
+    @Override
+    protected void removeRange(final int fromIndex, final int toIndex) {
+        this.ensureMutable();
+
+        super.removeRange(fromIndex, toIndex);
+
+        this.onModification();
+    }
+
+    /**
+     * Makes this {@link NBTTagList} immutable, so that it can be shared. Every later attempt to modify it throws an
+     * {@link java.lang.UnsupportedOperationException}, the compounds and lists it contains are not affected
+     */
+    public void makeImmutable() {
+        if (this.immutable) {
+            return;
+        }
+
+        // every read of the view goes through get, which copies the shared arrays
+        this.copyingView = new AbstractList<Object>() {
+            @Override
+            public Object get(final int index) {
+                return NBTTagList.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return NBTTagList.this.size();
+            }
+        };
+        this.immutable = true;
+
+        // the view is part of the retained size
+        this.onModification();
+    }
+
+    /**
+     * Proofs whether this {@link NBTTagList} is immutable
+     *
+     * @return whether it is immutable
+     */
+    public boolean isImmutable() {
+        return this.immutable;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof List && NBTStructure.isEqual(this, obj);
+    }
+
+    @Override
+    public int hashCode() {
+        return NBTStructure.hash(this);
+    }
+
+    /**
+     * Retrieves the compound or list which contains this {@link NBTTagList}
+     *
+     * @return the owner, an array of owners when this {@link NBTTagList} is shared or null
+     */
+    Object getOwner() {
+        return this.owner;
+    }
+
+    /**
+     * Updates the compounds or lists which contain this {@link NBTTagList}
+     *
+     * @param owner which should be updated, an array of owners or null
+     */
+    void setOwner(final Object owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Estimates the amount of heap bytes this {@link NBTTagList} and its elements retain. The estimate is cached
+     * until this list or one of the compounds and lists it contains is modified, arrays which are modified in place
+     * have to be set again. The backing array is assumed to be trimmed to the size of this list
+     *
+     * @return a fresh amount of bytes
+     */
+    public long retainedSize() {
+        long retainedSize = this.retainedSize;
+
+        if (retainedSize == -1L) {
+            retainedSize = NBTRetainedSize.TAG_LIST + NBTRetainedSize.ofOwners(this.owner);
+
+            if (this.copyingView != null) {
+                retainedSize += NBTRetainedSize.COPYING_VIEW;
+            }
+
+            if (!this.isEmpty()) {
+                retainedSize += NBTRetainedSize.ofArray(NBTRetainedSize.REFERENCE, this.size());
+            }
+
+            // the elements are measured as they are, since copying the arrays of an immutable list is not needed
+            for (int i = 0; i < this.size(); i++) {
+                retainedSize += NBTRetainedSize.of(super.get(i));
+            }
+
+            this.retainedSize = retainedSize;
+        }
+
+        return retainedSize;
+    }
+
+    /**
+     * Invalidates the cached size of this {@link NBTTagList} and the cached state of the compound which contains it
+     */
+    void onModification() {
+        this.retainedSize = -1L;
+
+        NBTStructure.invalidate(this.owner);
+    }
+
+    private void ensureMutable() {
+        if (this.immutable) {
+            throw new UnsupportedOperationException("The NBTTagList is immutable");
+        }
+    }
+
+    private void onElementAdded(final Object element) {
+        NBTStructure.link(element, this);
+
+        this.onModification();
+    }
+
+    /**
+     * Proofs whether the given element matches the tag identifier of this {@link NBTTagList}
+     *
+     * @param element which should be proofed
+     *
+     * @throws java.lang.IllegalArgumentException when the given element does not match
+     */
+    private void checkElement(final Object element) {
+        if (element != null && element.getClass() == this.elementClass) {
+            return;
+        }
+
+        final byte tagId = NBTTagIdResolver.retrieveTagIdFromValue(element);
+
+        if (this.elementTagId == NBTConstants.TAG_END) {
+            this.elementTagId = tagId;
+        } else if (this.elementTagId != tagId) {
+            throw new IllegalArgumentException("The tag " + tagId + " cannot be added to a list of tag " +
+                    this.elementTagId);
+        }
+
+        this.elementClass = element.getClass();
+    }
+}
@@ -0,0 +1,621 @@
+package org.terracottamc.taglib.nbt.tag;
+
+import org.terracottamc.taglib.util.nbt.NBTTagIdResolver;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Backing store of a {@link NBTTagCompound}. Keys, values and the tag identifiers of the values live in flat
+ * arrays and are looked up linearly as long as there are only a few of them. Once the amount of entries exceeds
+ * {@link NBTTagMap#LINEAR_THRESHOLD} an open-addressing index is built on top of the flat arrays, so there is no
+ * node allocated per entry
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+class NBTTagMap extends AbstractMap<String, Object> {
+
+    static final int LINEAR_THRESHOLD = 8;
+
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+    private static final int INITIAL_CAPACITY = 4;
+    private static final String[] EMPTY_KEYS = new String[0];
+    private static final Object[] EMPTY_VALUES = new Object[0];
+    private static final int[] EMPTY_HASHES = new int[0];
+    private static final byte[] EMPTY_TAG_IDS = new byte[0];
+
+    private String[] keys = NBTTagMap.EMPTY_KEYS;
+    private Object[] values = NBTTagMap.EMPTY_VALUES;
+    private int[] hashes = NBTTagMap.EMPTY_HASHES;
+    private byte[] tagIds = NBTTagMap.EMPTY_TAG_IDS;
+    private int[] index = null;
+    private int size = 0;
+
+    private volatile int[] sortedSlots = null;
+    private Set<Map.Entry<String, Object>> entrySet = null;
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return key instanceof String && this.indexOf((String) key) != -1;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        final int slot = this.indexOf((String) key);
+
+        return slot == -1 ? null : this.values[slot];
+    }
+
+    @Override
+    public Object put(final String key, final Object value) {
+        return this.put(key, NBTTagIdResolver.retrieveTagIdFromValue(value), value);
+    }
+
+    /**
+     * Puts the given value with its already known tag identifier
+     *
+     * @param key   which stands for the holder of the value
+     * @param tagId which is representative for the identifier of the tag of the value
+     * @param value which should be put
+     *
+     * @return the previous value or null when there was none
+     */
+    Object put(final String key, final byte tagId, final Object value) {
+        final int hash = NBTTagMap.hash(key);
+
+        return this.put(key, hash, this.indexOf(key, hash), tagId, value);
+    }
+
+    /**
+     * Puts the given value with the precomputed hash, slot and tag identifier of the given {@link NBTKey}
+     *
+     * @param key   which stands for the holder of the value
+     * @param value which should be put
+     *
+     * @return the previous value or null when there was none
+     */
+    Object put(final NBTKey<?> key, final Object value) {
+        return this.put(key.getName(), key.getHash(), this.indexOf(key), key.getTagId(), value);
+    }
+
+    @Override
+    public Object remove(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        final int slot = this.indexOf((String) key);
+
+        if (slot == -1) {
+            return null;
+        }
+
+        final Object oldValue = this.values[slot];
+        final int moved = this.size - slot - 1;
+
+        if (moved > 0) {
+            System.arraycopy(this.keys, slot + 1, this.keys, slot, moved);
+            System.arraycopy(this.values, slot + 1, this.values, slot, moved);
+            System.arraycopy(this.hashes, slot + 1, this.hashes, slot, moved);
+            System.arraycopy(this.tagIds, slot + 1, this.tagIds, slot, moved);
+        }
+
+        this.size--;
+        this.keys[this.size] = null;
+        this.values[this.size] = null;
+
+        this.refillIndex();
+
+        this.sortedSlots = null;
+
+        this.onModification(null);
+
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.keys, 0, this.size, null);
+        Arrays.fill(this.values, 0, this.size, null);
+
+        this.size = 0;
+        this.index = null;
+        this.sortedSlots = null;
+
+        this.onModification(null);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (this.entrySet == null) {
+            this.entrySet = new EntrySet();
+        }
+
+        return this.entrySet;
+    }
+
+    /**
+     * Retrieves the slot of the entry with the given key
+     *
+     * @param key which is needed to find the slot
+     *
+     * @return the slot or -1 when there is no entry with the given key
+     */
+    int indexOf(final String key) {
+        return this.indexOf(key, NBTTagMap.hash(key));
+    }
+
+    /**
+     * Retrieves the slot of the entry with the given key and its precomputed hash
+     *
+     * @param key  which is needed to find the slot
+     * @param hash which represents the hash of the given key
+     *
+     * @return the slot or -1 when there is no entry with the given key
+     */
+    int indexOf(final String key, final int hash) {
+        if (this.index == null) {
+            for (int i = 0; i < this.size; i++) {
+                if (this.hashes[i] == hash && NBTTagMap.keyEquals(this.keys[i], key)) {
+                    return i;
+                }
+            }
+
+            return -1;
+        }
+
+        final int mask = this.index.length - 1;
+
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            final int entry = this.index[i];
+
+            if (entry == 0) {
+                return -1;
+            }
+
+            final int slot = entry - 1;
+
+            if (this.hashes[slot] == hash && NBTTagMap.keyEquals(this.keys[slot], key)) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the slot of the entry with the given {@link NBTKey}. The slot which has been cached inside of the
+     * {@link NBTKey} is tried first and updated when the entry was found elsewhere
+     *
+     * @param key which is needed to find the slot
+     *
+     * @return the slot or -1 when there is no entry with the given key
+     */
+    int indexOf(final NBTKey<?> key) {
+        final int cachedSlot = key.getSlot();
+
+        if (cachedSlot < this.size && this.hashes[cachedSlot] == key.getHash() &&
+                NBTTagMap.keyEquals(this.keys[cachedSlot], key.getName())) {
+            return cachedSlot;
+        }
+
+        final int slot = this.indexOf(key.getName(), key.getHash());
+
+        if (slot != -1) {
+            key.setSlot(slot);
+        }
+
+        return slot;
+    }
+
+    /**
+     * Retrieves the key which is stored at the given slot
+     *
+     * @param slot which is needed to find the key
+     *
+     * @return a fresh {@link String}
+     */
+    String keyAt(final int slot) {
+        return this.keys[slot];
+    }
+
+    /**
+     * Retrieves the value which is stored at the given slot
+     *
+     * @param slot which is needed to find the value
+     *
+     * @return a fresh {@link Object}
+     */
+    Object valueAt(final int slot) {
+        return this.values[slot];
+    }
+
+    /**
+     * Retrieves the tag identifier of the value which is stored at the given slot
+     *
+     * @param slot which is needed to find the tag identifier
+     *
+     * @return a fresh byte
+     */
+    byte tagIdAt(final int slot) {
+        return this.tagIds[slot];
+    }
+
+    /**
+     * Retrieves the slot of the entry at the given position when the entries are ordered by their keys.
+     * The order is computed once and cached until a key is added or removed, replacing values keeps it
+     *
+     * @param position which has to be lower than {@link NBTTagMap#size()}
+     *
+     * @return a fresh slot
+     */
+    int sortedSlotAt(final int position) {
+        int[] sortedSlots = this.sortedSlots;
+
+        if (sortedSlots == null) {
+            sortedSlots = this.sortSlots();
+
+            this.sortedSlots = sortedSlots;
+        }
+
+        return sortedSlots[position];
+    }
+
+    /**
+     * Gets called after every modification of this {@link NBTTagMap}
+     *
+     * @param value which has been put or null when an entry has been removed
+     */
+    void onModification(final Object value) {
+
+    }
+
+    /**
+     * Estimates the amount of bytes the arrays, keys and values of this {@link NBTTagMap} retain, excluding the map
+     * itself
+     *
+     * @return a fresh amount of bytes
+     */
+    long retainedSize() {
+        long retainedSize = 0L;
+
+        if (this.keys.length > 0) {
+            retainedSize += NBTRetainedSize.ofArray(NBTRetainedSize.REFERENCE, this.keys.length) +
+                    NBTRetainedSize.ofArray(NBTRetainedSize.REFERENCE, this.values.length) +
+                    NBTRetainedSize.ofArray(4, this.hashes.length) + NBTRetainedSize.ofArray(1, this.tagIds.length);
+        }
+
+        if (this.index != null) {
+            retainedSize += NBTRetainedSize.ofArray(4, this.index.length);
+        }
+
+        final int[] sortedSlots = this.sortedSlots;
+
+        if (sortedSlots != null) {
+            retainedSize += NBTRetainedSize.ofArray(4, sortedSlots.length);
+        }
+
+        if (this.entrySet != null) {
+            retainedSize += NBTRetainedSize.ENTRY_SET;
+        }
+
+        for (int i = 0; i < this.size; i++) {
+            retainedSize += NBTRetainedSize.ofString(this.keys[i]) + NBTRetainedSize.of(this.values[i]);
+        }
+
+        return retainedSize;
+    }
+
+    private Object put(final String key, final int hash, final int slot, final byte tagId, final Object value) {
+        if (slot != -1) {
+            final Object oldValue = this.values[slot];
+            this.values[slot] = value;
+            this.tagIds[slot] = tagId;
+
+            this.onModification(value);
+
+            return oldValue;
+        }
+
+        this.append(key, hash, tagId, value);
+        this.onModification(value);
+
+        return null;
+    }
+
+    private void append(final String key, final int hash, final byte tagId, final Object value) {
+        if (this.size == this.keys.length) {
+            final int newCapacity = this.keys.length == 0 ? NBTTagMap.INITIAL_CAPACITY : this.keys.length << 1;
+
+            this.keys = Arrays.copyOf(this.keys, newCapacity);
+            this.values = Arrays.copyOf(this.values, newCapacity);
+            this.hashes = Arrays.copyOf(this.hashes, newCapacity);
+            this.tagIds = Arrays.copyOf(this.tagIds, newCapacity);
+        }
+
+        final int slot = this.size++;
+
+        this.sortedSlots = null;
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.hashes[slot] = hash;
+        this.tagIds[slot] = tagId;
+
+        if (this.index != null && (this.size << 1) <= this.index.length) {
+            this.insertIntoIndex(this.index, hash, slot);
+        } else if (this.size > NBTTagMap.LINEAR_THRESHOLD) {
+            this.rebuildIndex();
+        }
+    }
+
+    /**
+     * Builds the open-addressing index with a load factor of at most 0.5 or drops it when this
+     * {@link NBTTagMap} is small enough to be scanned linearly
+     */
+    private void rebuildIndex() {
+        if (this.size <= NBTTagMap.LINEAR_THRESHOLD) {
+            this.index = null;
+
+            return;
+        }
+
+        final int[] newIndex = new int[Integer.highestOneBit(this.size) << 2];
+
+        for (int i = 0; i < this.size; i++) {
+            this.insertIntoIndex(newIndex, this.hashes[i], i);
+        }
+
+        this.index = newIndex;
+    }
+
+    /**
+     * Refills the open-addressing index after a removal has moved slots. The existing array is reused, so removing
+     * entries one by one does not allocate a new index every time
+     */
+    private void refillIndex() {
+        if (this.size <= NBTTagMap.LINEAR_THRESHOLD) {
+            this.index = null;
+
+            return;
+        }
+
+        Arrays.fill(this.index, 0);
+
+        for (int i = 0; i < this.size; i++) {
+            this.insertIntoIndex(this.index, this.hashes[i], i);
+        }
+    }
+
+    private void insertIntoIndex(final int[] targetIndex, final int hash, final int slot) {
+        final int mask = targetIndex.length - 1;
+        int i = hash & mask;
+
+        while (targetIndex[i] != 0) {
+            i = (i + 1) & mask;
+        }
+
+        targetIndex[i] = slot + 1;
+    }
+
+    /**
+     * Sorts the slots by their keys without allocating anything but the resulting array. Small maps are sorted by
+     * insertion, larger ones by heap sort
+     *
+     * @return a fresh array of slots
+     */
+    private int[] sortSlots() {
+        final int size = this.size;
+        final int[] slots = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            slots[i] = i;
+        }
+
+        if (size <= NBTTagMap.INSERTION_SORT_THRESHOLD) {
+            for (int i = 1; i < size; i++) {
+                final int slot = slots[i];
+                int j = i - 1;
+
+                while (j >= 0 && NBTTagMap.compareKeys(this.keys[slots[j]], this.keys[slot]) > 0) {
+                    slots[j + 1] = slots[j];
+                    j--;
+                }
+
+                slots[j + 1] = slot;
+            }
+
+            return slots;
+        }
+
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            this.siftDown(slots, i, size);
+        }
+
+        for (int end = size - 1; end > 0; end--) {
+            final int slot = slots[0];
+            slots[0] = slots[end];
+            slots[end] = slot;
+
+            this.siftDown(slots, 0, end);
+        }
+
+        return slots;
+    }
+
+    private void siftDown(final int[] slots, int parent, final int end) {
+        final int slot = slots[parent];
+
+        while (true) {
+            int child = (parent << 1) + 1;
+
+            if (child >= end) {
+                break;
+            }
+
+            if (child + 1 < end && NBTTagMap.compareKeys(this.keys[slots[child + 1]], this.keys[slots[child]]) > 0) {
+                child++;
+            }
+
+            if (NBTTagMap.compareKeys(this.keys[slots[child]], this.keys[slot]) <= 0) {
+                break;
+            }
+
+            slots[parent] = slots[child];
+            parent = child;
+        }
+
+        slots[parent] = slot;
+    }
+
+    /**
+     * Compares the given keys lexicographically, a null key is ordered like an empty one since it is written as one
+     *
+     * @param key      which should be compared
+     * @param otherKey which should be compared
+     *
+     * @return a negative number, zero or a positive number when the first key is less than, equal to or greater
+     * than the other one
+     */
+    static int compareKeys(final String key, final String otherKey) {
+        return (key == null ? "" : key).compareTo(otherKey == null ? "" : otherKey);
+    }
+
+    private static boolean keyEquals(final String storedKey, final String key) {
+        return storedKey == key || (storedKey != null && storedKey.equals(key));
+    }
+
+    static int hash(final String key) {
+        if (key == null) {
+            return 0;
+        }
+
+        final int hash = key.hashCode();
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return NBTTagMap.this.size;
+        }
+
+        @Override
+        public void clear() {
+            NBTTagMap.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<String, Object>> {
+
+        private int cursor = 0;
+        private int lastReturned = -1;
+
+        @Override
+        public boolean hasNext() {
+            return this.cursor < NBTTagMap.this.size;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (this.cursor >= NBTTagMap.this.size) {
+                throw new NoSuchElementException();
+            }
+
+            this.lastReturned = this.cursor++;
+
+            return new Entry(this.lastReturned);
+        }
+
+        @Override
+        public void remove() {
+            if (this.lastReturned == -1) {
+                throw new IllegalStateException();
+            }
+
+            NBTTagMap.this.remove(NBTTagMap.this.keys[this.lastReturned]);
+
+            this.cursor = this.lastReturned;
+            this.lastReturned = -1;
+        }
+    }
+
+    private final class Entry implements Map.Entry<String, Object> {
+
+        private final int slot;
+
+        private Entry(final int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String getKey() {
+            return NBTTagMap.this.keys[this.slot];
+        }
+
+        @Override
+        public Object getValue() {
+            return NBTTagMap.this.values[this.slot];
+        }
+
+        @Override
+        public Object setValue(final Object value) {
+            final byte tagId = NBTTagIdResolver.retrieveTagIdFromValue(value);
+            final Object oldValue = NBTTagMap.this.values[this.slot];
+            NBTTagMap.this.values[this.slot] = value;
+            NBTTagMap.this.tagIds[this.slot] = tagId;
+
+            NBTTagMap.this.onModification(value);
+
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+
+            final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) obj;
+            final Object value = this.getValue();
+
+            return Objects.equals(this.getKey(), entry.getKey()) && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            final String key = this.getKey();
+            final Object value = this.getValue();
+
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.terracottamc.taglib.nbt.tag;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Weighs cached compounds by the amount of heap bytes they retain, so that caches can be bounded by memory instead
+ * of their amount of entries. {@link NBTWeigher#weigh(Object, NBTTagCompound)} matches the weigher functions of
+ * common cache libraries and can be passed as method reference
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTWeigher {
+
+    /**
+     * Weighs the given {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} by its retained size, the key is
+     * not part of the weight
+     *
+     * @param key            which maps to the compound
+     * @param nbtTagCompound which should be weighed
+     *
+     * @return a fresh weight which is capped at {@link Integer#MAX_VALUE}
+     */
+    public static int weigh(final Object key, final NBTTagCompound nbtTagCompound) {
+        return (int) Math.min(Integer.MAX_VALUE, nbtTagCompound.retainedSize());
+    }
+}
@@ -0,0 +1,361 @@
+package org.terracottamc.taglib.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.terracottamc.taglib.nbt.io.NBTWriter;
+import org.terracottamc.taglib.nbt.tag.NBTTagCompound;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * Writes every {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} to its file without blocking the caller.
+ * The compounds are encoded on a worker pool and written to a temporary file through an
+ * {@link java.nio.channels.AsynchronousFileChannel}. All files which have been written within one batch window are
+ * synced together, moved over their target atomically and their directories are synced once per batch.
+ * Writes to the same file are applied in the order they were submitted. The amount of encoded bytes which are
+ * waiting to be written is limited and callers are blocked as soon as too many writes are pending. The limit is
+ * applied after a compound has been encoded, so every encoder thread may additionally hold one encoded compound
+ * which waits for its bytes to become available
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTAsyncFileWriter implements Closeable {
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final ByteOrder byteOrder;
+    private final long batchWindowMillis;
+    private final int maxInFlightBytes;
+    private final Semaphore inFlightBytes;
+    private final Semaphore pendingWrites;
+    private final ExecutorService encoderPool;
+    private final ScheduledExecutorService syncScheduler;
+    private final Map<File, CompletableFuture<Void>> lastWrites = new ConcurrentHashMap<>();
+    private final Object syncLock = new Object();
+
+    private List<WriteOperation> syncBatch = new ArrayList<>();
+    private boolean syncScheduled = false;
+    private volatile boolean closed = false;
+
+    NBTAsyncFileWriter(final ByteOrder byteOrder, final int encoderThreads, final long batchWindowMillis,
+                       final int maxInFlightBytes, final int maxPendingWrites) {
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        this.byteOrder = byteOrder;
+        this.batchWindowMillis = batchWindowMillis;
+        this.maxInFlightBytes = maxInFlightBytes;
+        this.inFlightBytes = new Semaphore(maxInFlightBytes);
+        this.pendingWrites = new Semaphore(maxPendingWrites);
+        this.encoderPool = Executors.newFixedThreadPool(encoderThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "NBTAsyncFileWriter-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        this.syncScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "NBTAsyncFileWriter-Sync");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Writes the given {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} to the given file. The compound is
+     * encoded on the worker pool, so it must not be modified until the returned future has been completed.
+     * This method blocks when too many writes are pending
+     *
+     * @param file           which should be written
+     * @param nbtTagCompound which should be written
+     *
+     * @return a fresh {@link java.util.concurrent.CompletableFuture} which is completed when the file is durable
+     */
+    public CompletableFuture<Void> write(final File file, final NBTTagCompound nbtTagCompound) {
+        if (this.closed) {
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("The " + NBTAsyncFileWriter.class.getSimpleName() +
+                    " has already been closed"));
+
+            return future;
+        }
+
+        this.pendingWrites.acquireUninterruptibly();
+
+        final File target = file.getAbsoluteFile();
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        this.lastWrites.compute(target, (key, previousWrite) -> {
+            final CompletableFuture<Void> predecessor = previousWrite == null ?
+                    CompletableFuture.completedFuture(null) : previousWrite;
+
+            // a failed predecessor must not prevent the following write
+            predecessor.handle((result, throwable) -> null).thenRunAsync(() ->
+                    this.encodeAndWrite(target, nbtTagCompound, future), this.encoderPool)
+                    .exceptionally(throwable -> {
+                        future.completeExceptionally(throwable);
+
+                        return null;
+                    });
+
+            return future;
+        });
+
+        future.whenComplete((result, throwable) -> {
+            this.lastWrites.remove(target, future);
+            this.pendingWrites.release();
+        });
+
+        return future;
+    }
+
+    /**
+     * Retrieves the amount of encoded bytes which may still be queued for writing. Compounds which are being encoded
+     * are not counted until their encoded size is known
+     *
+     * @return a fresh amount of bytes
+     */
+    public int getAvailableInFlightBytes() {
+        return this.inFlightBytes.availablePermits();
+    }
+
+    /**
+     * Waits for all pending writes and stops the worker threads afterwards
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+
+        try {
+            CompletableFuture.allOf(this.lastWrites.values().toArray(new CompletableFuture<?>[0]))
+                    .handle((result, throwable) -> null).join();
+        } finally {
+            this.encoderPool.shutdown();
+            this.syncScheduler.shutdown();
+
+            try {
+                this.syncScheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void encodeAndWrite(final File file, final NBTTagCompound nbtTagCompound,
+                                final CompletableFuture<Void> future) {
+        final ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer();
+        final File temporaryFile = new File(file.getPath() + NBTAsyncFileWriter.TEMPORARY_SUFFIX);
+        AsynchronousFileChannel channel = null;
+        int permits = 0;
+
+        try {
+            new NBTWriter(buffer, this.byteOrder).writeTagCompound(nbtTagCompound);
+
+            // the encoded size is only known now, so the limit does not cover the buffers of the encoder threads.
+            // A single compound which exceeds the limit is still written, but never concurrently with others
+            permits = Math.min(buffer.readableBytes(), this.maxInFlightBytes);
+
+            this.inFlightBytes.acquire(permits);
+
+            channel = AsynchronousFileChannel.open(temporaryFile.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+            new WriteOperation(file, temporaryFile, channel, buffer, permits, future).writeRemaining();
+        } catch (final Throwable throwable) {
+            // a write which failed before it has been started leaves neither a descriptor nor a temporary file behind
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException e) {
+                    throwable.addSuppressed(e);
+                }
+
+                try {
+                    Files.deleteIfExists(temporaryFile.toPath());
+                } catch (final IOException e) {
+                    throwable.addSuppressed(e);
+                }
+            }
+
+            buffer.release();
+
+            this.inFlightBytes.release(permits);
+
+            future.completeExceptionally(throwable);
+        }
+    }
+
+    private void enqueueSync(final WriteOperation writeOperation) {
+        synchronized (this.syncLock) {
+            this.syncBatch.add(writeOperation);
+
+            if (this.syncScheduled) {
+                return;
+            }
+
+            this.syncScheduled = true;
+        }
+
+        try {
+            this.syncScheduler.schedule(this::syncBatch, this.batchWindowMillis, TimeUnit.MILLISECONDS);
+        } catch (final RejectedExecutionException e) {
+            this.syncBatch();
+        }
+    }
+
+    private void syncBatch() {
+        final List<WriteOperation> batch;
+
+        synchronized (this.syncLock) {
+            batch = this.syncBatch;
+
+            this.syncBatch = new ArrayList<>();
+            this.syncScheduled = false;
+        }
+
+        final Set<Path> directories = new HashSet<>();
+        final List<WriteOperation> moved = new ArrayList<>(batch.size());
+
+        for (final WriteOperation writeOperation : batch) {
+            try {
+                writeOperation.channel.force(false);
+                writeOperation.channel.close();
+
+                Files.move(writeOperation.temporaryFile.toPath(), writeOperation.file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                directories.add(writeOperation.file.toPath().getParent());
+                moved.add(writeOperation);
+            } catch (final IOException e) {
+                writeOperation.closeQuietly();
+                writeOperation.future.completeExceptionally(e);
+            }
+        }
+
+        for (final Path directory : directories) {
+            NBTAsyncFileWriter.syncDirectory(directory);
+        }
+
+        for (final WriteOperation writeOperation : moved) {
+            writeOperation.future.complete(null);
+        }
+    }
+
+    /**
+     * Syncs the given directory so that renamed files survive a crash. Platforms which cannot open directories
+     * do not need this
+     *
+     * @param directory which should be synced
+     */
+    private static void syncDirectory(final Path directory) {
+        if (directory == null) {
+            return;
+        }
+
+        try (final FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (final IOException ignored) {
+        }
+    }
+
+    /**
+     * Writes an encoded compound to its temporary file until every byte has been written
+     */
+    private final class WriteOperation implements CompletionHandler<Integer, Void> {
+
+        private final File file;
+        private final File temporaryFile;
+        private final AsynchronousFileChannel channel;
+        private final ByteBuf buffer;
+        private final ByteBuffer nioBuffer;
+        private final int permits;
+        private final CompletableFuture<Void> future;
+
+        private long position = 0L;
+
+        private WriteOperation(final File file, final File temporaryFile, final AsynchronousFileChannel channel,
+                               final ByteBuf buffer, final int permits, final CompletableFuture<Void> future) {
+            this.file = file;
+            this.temporaryFile = temporaryFile;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.nioBuffer = buffer.nioBuffer();
+            this.permits = permits;
+            this.future = future;
+        }
+
+        @Override
+        public void completed(final Integer written, final Void attachment) {
+            this.position += written;
+
+            if (this.nioBuffer.hasRemaining()) {
+                this.writeRemaining();
+
+                return;
+            }
+
+            this.releaseBuffer();
+
+            NBTAsyncFileWriter.this.enqueueSync(this);
+        }
+
+        @Override
+        public void failed(final Throwable throwable, final Void attachment) {
+            this.releaseBuffer();
+            this.closeQuietly();
+
+            this.future.completeExceptionally(throwable);
+        }
+
+        private void writeRemaining() {
+            this.channel.write(this.nioBuffer, this.position, null, this);
+        }
+
+        private void releaseBuffer() {
+            this.buffer.release();
+
+            NBTAsyncFileWriter.this.inFlightBytes.release(this.permits);
+        }
+
+        private void closeQuietly() {
+            try {
+                this.channel.close();
+                Files.deleteIfExists(this.temporaryFile.toPath());
+            } catch (final IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.terracottamc.taglib.storage;
+
+import org.terracottamc.taglib.util.nbt.NBTBuilderException;
+
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTAsyncFileWriterBuilder {
+
+    private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+    private int encoderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private long batchWindowMillis = 50L;
+    private int maxInFlightBytes = 64 * 1024 * 1024;
+    private int maxPendingWrites = 4096;
+
+    /**
+     * Sets the {@link ByteOrder} the compounds are encoded with
+     *
+     * @param byteOrder which is used to encode the compounds
+     *
+     * @return a fresh {@link NBTAsyncFileWriterBuilder}
+     */
+    public NBTAsyncFileWriterBuilder withByteOrder(final ByteOrder byteOrder) {
+        this.byteOrder = byteOrder;
+
+        return this;
+    }
+
+    /**
+     * Sets the amount of threads which encode the compounds
+     *
+     * @param encoderThreads which represents the amount of threads
+     *
+     * @return a fresh {@link NBTAsyncFileWriterBuilder}
+     */
+    public NBTAsyncFileWriterBuilder withEncoderThreads(final int encoderThreads) {
+        this.encoderThreads = encoderThreads;
+
+        return this;
+    }
+
+    /**
+     * Sets the window in which written files are collected before they are synced together
+     *
+     * @param batchWindowMillis which represents the window in milliseconds
+     *
+     * @return a fresh {@link NBTAsyncFileWriterBuilder}
+     */
+    public NBTAsyncFileWriterBuilder withBatchWindow(final long batchWindowMillis) {
+        this.batchWindowMillis = batchWindowMillis;
+
+        return this;
+    }
+
+    /**
+     * Sets the maximum amount of encoded bytes which may be waiting to be written. Compounds which are being encoded
+     * are not counted, so the encoder threads may hold up to one further compound each
+     *
+     * @param maxInFlightBytes which represents the amount of bytes
+     *
+     * @return a fresh {@link NBTAsyncFileWriterBuilder}
+     */
+    public NBTAsyncFileWriterBuilder withMaxInFlightBytes(final int maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes;
+
+        return this;
+    }
+
+    /**
+     * Sets the maximum amount of writes which may be pending before callers are blocked
+     *
+     * @param maxPendingWrites which represents the amount of writes
+     *
+     * @return a fresh {@link NBTAsyncFileWriterBuilder}
+     */
+    public NBTAsyncFileWriterBuilder withMaxPendingWrites(final int maxPendingWrites) {
+        this.maxPendingWrites = maxPendingWrites;
+
+        return this;
+    }
+
+    /**
+     * Builds a new {@link NBTAsyncFileWriter} when the given data is valid
+     *
+     * @return a fresh {@link NBTAsyncFileWriter}
+     */
+    public NBTAsyncFileWriter build() {
+        if (Objects.isNull(this.byteOrder) || this.encoderThreads <= 0 || this.batchWindowMillis < 0 ||
+                this.maxInFlightBytes <= 0 || this.maxPendingWrites <= 0) {
+            throw new NBTBuilderException(NBTAsyncFileWriter.class.getSimpleName());
+        }
+
+        return new NBTAsyncFileWriter(this.byteOrder, this.encoderThreads, this.batchWindowMillis,
+                this.maxInFlightBytes, this.maxPendingWrites);
+    }
+}
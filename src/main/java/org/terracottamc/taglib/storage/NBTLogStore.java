@@ -0,0 +1,665 @@
+package org.terracottamc.taglib.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.terracottamc.taglib.nbt.io.NBTReader;
+import org.terracottamc.taglib.nbt.io.NBTWriter;
+import org.terracottamc.taglib.nbt.tag.NBTTagCompound;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * A key-value store which appends every {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} as a record to a
+ * memory-mapped log and keeps the offset of the latest record of every key in memory.
+ * Every record consists of its length, a CRC32 checksum, a flag which marks removals, the key and the encoded
+ * compound. Records which were not written completely are discarded when the log is opened again.
+ * Written records are synced to the disk in batches and the log is compacted in the background as soon as enough
+ * records have been overwritten or removed
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTLogStore implements Closeable {
+
+    private static final int MAGIC = 0x4e42544c;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 11;
+    private static final byte FLAG_PUT = 0;
+    private static final byte FLAG_REMOVE = 1;
+
+    private final File file;
+    private final ByteOrder byteOrder;
+    private final int initialCapacity;
+    private final long syncIntervalMillis;
+    private final double compactionRatio;
+    private final int minimumCompactionSize;
+    private final ScheduledExecutorService executor;
+    private final ByteBuf encodeBuffer = Unpooled.buffer();
+    private final CRC32 checksum = new CRC32();
+
+    private volatile Segment segment;
+    private long garbageBytes = 0L;
+    private boolean dirty = false;
+    private boolean compacting = false;
+    private boolean compactionScheduled = false;
+    private boolean closed = false;
+
+    NBTLogStore(final File file, final ByteOrder byteOrder, final int initialCapacity, final long syncIntervalMillis,
+                final double compactionRatio, final int minimumCompactionSize) throws IOException {
+        this.file = file;
+        this.byteOrder = byteOrder;
+        this.initialCapacity = initialCapacity;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.compactionRatio = compactionRatio;
+        this.minimumCompactionSize = minimumCompactionSize;
+        this.segment = this.openSegment();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "NBTLogStore-" + file.getName());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        if (syncIntervalMillis > 0) {
+            this.executor.scheduleWithFixedDelay(this::syncIfDirty, syncIntervalMillis, syncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stores the given {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} under the given key
+     *
+     * @param key            which identifies the compound
+     * @param nbtTagCompound which should be stored
+     *
+     * @throws java.io.IOException when the log could not be extended
+     */
+    public synchronized void put(final String key, final NBTTagCompound nbtTagCompound) throws IOException {
+        this.ensureOpen();
+
+        this.encodeBuffer.clear();
+
+        new NBTWriter(this.encodeBuffer, this.byteOrder).writeTagCompound(nbtTagCompound);
+
+        final Segment segment = this.segment;
+        final int offset = this.appendRecord(segment, NBTLogStore.FLAG_PUT, this.retrieveKeyBytes(key),
+                this.encodeBuffer);
+        final Integer previousOffset = segment.index.put(key, offset);
+
+        if (previousOffset != null) {
+            this.garbageBytes += NBTLogStore.retrieveRecordSize(segment.buffer, previousOffset);
+        }
+
+        this.onRecordAppended();
+    }
+
+    /**
+     * Removes the {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} which is stored under the given key
+     *
+     * @param key which identifies the compound
+     *
+     * @return whether a compound was stored under the given key
+     *
+     * @throws java.io.IOException when the log could not be extended
+     */
+    public synchronized boolean remove(final String key) throws IOException {
+        this.ensureOpen();
+
+        final Segment segment = this.segment;
+
+        if (!segment.index.containsKey(key)) {
+            return false;
+        }
+
+        this.encodeBuffer.clear();
+
+        final int offset = this.appendRecord(segment, NBTLogStore.FLAG_REMOVE, this.retrieveKeyBytes(key),
+                this.encodeBuffer);
+        final int previousOffset = segment.index.remove(key);
+
+        this.garbageBytes += NBTLogStore.retrieveRecordSize(segment.buffer, previousOffset) +
+                NBTLogStore.retrieveRecordSize(segment.buffer, offset);
+
+        this.onRecordAppended();
+
+        return true;
+    }
+
+    /**
+     * Retrieves the {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} which is stored under the given key.
+     * The compound is decoded directly from the mapped log and this method does not block writers
+     *
+     * @param key which identifies the compound
+     *
+     * @return a fresh {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} or null when no compound is stored
+     */
+    public NBTTagCompound get(final String key) {
+        final Segment segment = this.segment;
+        final Integer offset = segment.index.get(key);
+
+        if (offset == null) {
+            return null;
+        }
+
+        // the buffer is read after the offset, so it always covers records which were appended after a remap
+        final ByteBuffer mapped = segment.buffer.duplicate();
+        mapped.clear();
+
+        final int keyLength = mapped.getShort(offset + 9) & 0xFFFF;
+        final int valueStart = offset + NBTLogStore.RECORD_HEADER_SIZE + keyLength;
+        final int valueEnd = offset + 4 + mapped.getInt(offset);
+        final ByteBuf view = Unpooled.wrappedBuffer(mapped);
+        view.setIndex(valueStart, valueEnd);
+
+        return new NBTReader(view, this.byteOrder).createCompound();
+    }
+
+    /**
+     * Proofs whether a {@link org.terracottamc.taglib.nbt.tag.NBTTagCompound} is stored under the given key
+     *
+     * @param key which identifies the compound
+     *
+     * @return whether a compound is stored
+     */
+    public boolean contains(final String key) {
+        return this.segment.index.containsKey(key);
+    }
+
+    /**
+     * Retrieves the keys of all stored compounds
+     *
+     * @return a fresh unmodifiable {@link java.util.Set}
+     */
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(this.segment.index.keySet());
+    }
+
+    /**
+     * Retrieves the amount of stored compounds
+     *
+     * @return a fresh amount
+     */
+    public int size() {
+        return this.segment.index.size();
+    }
+
+    /**
+     * Retrieves the amount of bytes the log currently occupies
+     *
+     * @return a fresh amount of bytes
+     */
+    public synchronized int getLogSize() {
+        return this.segment.end;
+    }
+
+    /**
+     * Retrieves the amount of bytes in the log which belong to overwritten or removed records
+     *
+     * @return a fresh amount of bytes
+     */
+    public synchronized long getGarbageBytes() {
+        return this.garbageBytes;
+    }
+
+    /**
+     * Syncs all records which have been written since the last sync to the disk
+     */
+    public void sync() {
+        final MappedByteBuffer mapped;
+
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+
+            mapped = this.segment.buffer;
+            this.dirty = false;
+        }
+
+        mapped.force();
+    }
+
+    /**
+     * Rewrites the log with the latest record of every stored key. The live records are copied without blocking
+     * writers, only the records which were appended meanwhile are copied while writers are blocked
+     *
+     * @throws java.io.IOException when the compacted log could not be written
+     */
+    public void compact() throws IOException {
+        final Segment source;
+        final int catchUpStart;
+        final Map<String, Integer> snapshot;
+
+        synchronized (this) {
+            if (this.closed || this.compacting) {
+                return;
+            }
+
+            this.compacting = true;
+            source = this.segment;
+            catchUpStart = source.end;
+            snapshot = new HashMap<>(source.index);
+        }
+
+        final File compactedFile = new File(this.file.getPath() + ".compact");
+
+        try {
+            Segment compacted = null;
+
+            try {
+                final int liveBytes = catchUpStart - (int) Math.min(this.getGarbageBytes(), catchUpStart);
+                compacted = NBTLogStore.createSegment(compactedFile, Math.max(this.initialCapacity, liveBytes));
+
+                for (final Map.Entry<String, Integer> entry : snapshot.entrySet()) {
+                    entry.setValue(this.copyRecord(source, entry.getValue(), compacted));
+                }
+
+                compacted.index.putAll(snapshot);
+
+                synchronized (this) {
+                    this.ensureOpen();
+
+                    long garbageBytes = 0L;
+                    int position = catchUpStart;
+
+                    while (position < source.end) {
+                        final ByteBuffer mapped = source.buffer;
+                        final int recordSize = NBTLogStore.retrieveRecordSize(mapped, position);
+                        final int offset = this.copyRecord(source, position, compacted);
+                        final String key = NBTLogStore.readKey(mapped, position);
+
+                        if (mapped.get(position + 8) == NBTLogStore.FLAG_REMOVE) {
+                            final Integer previousOffset = compacted.index.remove(key);
+
+                            if (previousOffset != null) {
+                                garbageBytes += NBTLogStore.retrieveRecordSize(compacted.buffer, previousOffset);
+                            }
+
+                            garbageBytes += recordSize;
+                        } else {
+                            final Integer previousOffset = compacted.index.put(key, offset);
+
+                            if (previousOffset != null) {
+                                garbageBytes += NBTLogStore.retrieveRecordSize(compacted.buffer, previousOffset);
+                            }
+                        }
+
+                        position += recordSize;
+                    }
+
+                    compacted.buffer.force();
+
+                    Files.move(compactedFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+
+                    this.segment = compacted;
+                    this.garbageBytes = garbageBytes;
+                    this.dirty = false;
+                }
+
+                source.channel.close();
+            } catch (final IOException e) {
+                if (compacted != null) {
+                    compacted.channel.close();
+                }
+
+                Files.deleteIfExists(compactedFile.toPath());
+
+                throw e;
+            }
+        } finally {
+            synchronized (this) {
+                this.compacting = false;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+        }
+
+        this.executor.shutdown();
+
+        try {
+            this.executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            this.segment.buffer.force();
+            this.segment.channel.close();
+            this.encodeBuffer.release();
+        }
+    }
+
+    /**
+     * Opens the log file and recovers the index of all records which have been written completely
+     *
+     * @return a fresh {@link NBTLogStore.Segment}
+     *
+     * @throws java.io.IOException when the file could not be opened or is no log of a {@link NBTLogStore}
+     */
+    private Segment openSegment() throws IOException {
+        if (!this.file.exists() || this.file.length() == 0) {
+            return NBTLogStore.createSegment(this.file, this.initialCapacity);
+        }
+
+        final FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        final long fileSize = channel.size();
+
+        if (fileSize > Integer.MAX_VALUE) {
+            channel.close();
+
+            throw new IOException("The log " + this.file + " exceeds the maximum size of a mapped segment");
+        }
+
+        final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.max(fileSize, this.initialCapacity));
+
+        if (mapped.getInt(0) != NBTLogStore.MAGIC || mapped.getInt(4) != NBTLogStore.VERSION) {
+            channel.close();
+
+            throw new IOException("The file " + this.file + " is no log of a " + NBTLogStore.class.getSimpleName());
+        }
+
+        final Segment segment = new Segment(channel, mapped, NBTLogStore.HEADER_SIZE);
+        final int capacity = mapped.capacity();
+        int position = NBTLogStore.HEADER_SIZE;
+
+        while (position + NBTLogStore.RECORD_HEADER_SIZE <= capacity) {
+            final int length = mapped.getInt(position);
+
+            if (length < NBTLogStore.RECORD_HEADER_SIZE - 4 || length > capacity - position - 4 ||
+                    mapped.getInt(position + 4) != this.computeChecksum(mapped, position, length)) {
+                break;
+            }
+
+            final String key = NBTLogStore.readKey(mapped, position);
+            final Integer previousOffset = mapped.get(position + 8) == NBTLogStore.FLAG_REMOVE ?
+                    segment.index.remove(key) : segment.index.put(key, position);
+
+            if (previousOffset != null) {
+                this.garbageBytes += NBTLogStore.retrieveRecordSize(mapped, previousOffset);
+            }
+
+            if (mapped.get(position + 8) == NBTLogStore.FLAG_REMOVE) {
+                this.garbageBytes += length + 4;
+            }
+
+            position += length + 4;
+        }
+
+        segment.end = position;
+
+        // a torn record may be followed by a shorter one, so the rest of the log is cleared
+        for (int i = position; i < capacity; i++) {
+            mapped.put(i, (byte) 0);
+        }
+
+        return segment;
+    }
+
+    /**
+     * Creates a new log file which contains the header only
+     *
+     * @param file     which should be created
+     * @param capacity which represents the amount of bytes which should be mapped
+     *
+     * @return a fresh {@link NBTLogStore.Segment}
+     *
+     * @throws java.io.IOException when the file could not be created
+     */
+    private static Segment createSegment(final File file, final int capacity) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.max(capacity, NBTLogStore.HEADER_SIZE));
+
+        mapped.putInt(0, NBTLogStore.MAGIC);
+        mapped.putInt(4, NBTLogStore.VERSION);
+
+        return new Segment(channel, mapped, NBTLogStore.HEADER_SIZE);
+    }
+
+    /**
+     * Appends a record to the end of the given {@link NBTLogStore.Segment}
+     *
+     * @param segment  which should be extended
+     * @param flag     which marks whether the record stores or removes a compound
+     * @param keyBytes which represent the encoded key
+     * @param value    which contains the encoded compound
+     *
+     * @return the offset of the appended record
+     *
+     * @throws java.io.IOException when the segment could not be extended
+     */
+    private int appendRecord(final Segment segment, final byte flag, final byte[] keyBytes, final ByteBuf value)
+            throws IOException {
+        final int valueLength = value.readableBytes();
+        final int length = NBTLogStore.RECORD_HEADER_SIZE - 4 + keyBytes.length + valueLength;
+        final int offset = segment.end;
+
+        NBTLogStore.ensureCapacity(segment, length + 4);
+
+        final ByteBuffer mapped = segment.buffer.duplicate();
+        mapped.clear();
+        mapped.position(offset + 8);
+        mapped.put(flag);
+        mapped.putShort((short) keyBytes.length);
+        mapped.put(keyBytes);
+
+        if (valueLength > 0) {
+            mapped.put(value.nioBuffer());
+        }
+
+        mapped.putInt(offset + 4, this.computeChecksum(mapped, offset, length));
+        // the length is written last, so a torn record is never mistaken for a complete one
+        mapped.putInt(offset, length);
+
+        segment.end = offset + length + 4;
+
+        return offset;
+    }
+
+    /**
+     * Copies the record at the given offset to the end of the target {@link NBTLogStore.Segment}
+     *
+     * @param source the record is copied from
+     * @param offset which represents the offset of the record
+     * @param target the record is copied to
+     *
+     * @return the offset of the copied record within the target
+     *
+     * @throws java.io.IOException when the target could not be extended
+     */
+    private int copyRecord(final Segment source, final int offset, final Segment target) throws IOException {
+        final ByteBuffer record = source.buffer.duplicate();
+        final int recordSize = NBTLogStore.retrieveRecordSize(record, offset);
+        record.clear();
+        record.position(offset).limit(offset + recordSize);
+
+        final int targetOffset = target.end;
+
+        NBTLogStore.ensureCapacity(target, recordSize);
+
+        final ByteBuffer mapped = target.buffer.duplicate();
+        mapped.clear();
+        mapped.position(targetOffset);
+        mapped.put(record);
+
+        target.end = targetOffset + recordSize;
+
+        return targetOffset;
+    }
+
+    /**
+     * Remaps the given {@link NBTLogStore.Segment} with twice its capacity until the given amount of bytes fits
+     *
+     * @param segment  which should be remapped
+     * @param required which represents the amount of bytes which should be appended
+     *
+     * @throws java.io.IOException when the segment would exceed the maximum size of a mapped segment
+     */
+    private static void ensureCapacity(final Segment segment, final int required) throws IOException {
+        final long requiredCapacity = (long) segment.end + required;
+        long capacity = segment.buffer.capacity();
+
+        if (requiredCapacity <= capacity) {
+            return;
+        }
+
+        while (capacity < requiredCapacity) {
+            capacity <<= 1;
+        }
+
+        if (requiredCapacity > Integer.MAX_VALUE) {
+            throw new IOException("The log exceeds the maximum size of a mapped segment");
+        }
+
+        segment.buffer = segment.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.min(capacity, Integer.MAX_VALUE));
+    }
+
+    private int computeChecksum(final ByteBuffer mapped, final int offset, final int length) {
+        final ByteBuffer body = mapped.duplicate();
+        body.clear();
+        body.position(offset + 8).limit(offset + 4 + length);
+
+        this.checksum.reset();
+        this.checksum.update(body);
+
+        return (int) this.checksum.getValue();
+    }
+
+    private byte[] retrieveKeyBytes(final String key) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("The key exceeds the maximum length of 65535 bytes");
+        }
+
+        return keyBytes;
+    }
+
+    private void onRecordAppended() {
+        if (this.syncIntervalMillis <= 0) {
+            this.segment.buffer.force();
+        } else {
+            this.dirty = true;
+        }
+
+        if (!this.compacting && !this.compactionScheduled && this.isCompactionDue()) {
+            this.compactionScheduled = true;
+
+            this.executor.execute(this::compactIfDue);
+        }
+    }
+
+    private void compactIfDue() {
+        synchronized (this) {
+            this.compactionScheduled = false;
+
+            // a compaction which ran in the meantime may already have collected the garbage
+            if (!this.isCompactionDue()) {
+                return;
+            }
+        }
+
+        try {
+            this.compact();
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean isCompactionDue() {
+        return this.segment.end >= this.minimumCompactionSize &&
+                this.garbageBytes >= this.segment.end * this.compactionRatio;
+    }
+
+    private void syncIfDirty() {
+        final boolean dirty;
+
+        synchronized (this) {
+            dirty = this.dirty;
+        }
+
+        if (dirty) {
+            this.sync();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException("The " + NBTLogStore.class.getSimpleName() + " has already been closed");
+        }
+    }
+
+    private static int retrieveRecordSize(final ByteBuffer mapped, final int offset) {
+        return mapped.getInt(offset) + 4;
+    }
+
+    private static String readKey(final ByteBuffer mapped, final int offset) {
+        final byte[] keyBytes = new byte[mapped.getShort(offset + 9) & 0xFFFF];
+        final ByteBuffer key = mapped.duplicate();
+        key.clear();
+        key.position(offset + NBTLogStore.RECORD_HEADER_SIZE);
+        key.get(keyBytes);
+
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A mapped log file together with the index of the records it contains
+     */
+    private static final class Segment {
+
+        private final FileChannel channel;
+        private final ConcurrentHashMap<String, Integer> index = new ConcurrentHashMap<>();
+
+        private volatile MappedByteBuffer buffer;
+        private int end;
+
+        private Segment(final FileChannel channel, final MappedByteBuffer buffer, final int end) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.terracottamc.taglib.storage;
+
+import org.terracottamc.taglib.util.nbt.NBTBuilderException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTLogStoreBuilder {
+
+    private File file = null;
+    private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+    private int initialCapacity = 1024 * 1024;
+    private long syncIntervalMillis = 1000L;
+    private double compactionRatio = 0.5D;
+    private int minimumCompactionSize = 16 * 1024 * 1024;
+
+    /**
+     * Sets the file the {@link NBTLogStore} persists its records in
+     *
+     * @param file which is used to store the records
+     *
+     * @return a fresh {@link NBTLogStoreBuilder}
+     */
+    public NBTLogStoreBuilder withFile(final File file) {
+        this.file = file;
+
+        return this;
+    }
+
+    /**
+     * Sets the {@link ByteOrder} the compounds are encoded with
+     *
+     * @param byteOrder which is used to encode the compounds
+     *
+     * @return a fresh {@link NBTLogStoreBuilder}
+     */
+    public NBTLogStoreBuilder withByteOrder(final ByteOrder byteOrder) {
+        this.byteOrder = byteOrder;
+
+        return this;
+    }
+
+    /**
+     * Sets the amount of bytes which are mapped when the file is created
+     *
+     * @param initialCapacity which represents the amount of bytes
+     *
+     * @return a fresh {@link NBTLogStoreBuilder}
+     */
+    public NBTLogStoreBuilder withInitialCapacity(final int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+
+        return this;
+    }
+
+    /**
+     * Sets the interval in which written records are synced to the disk. All records which were written within
+     * one interval share one sync
+     *
+     * @param syncIntervalMillis which represents the interval in milliseconds or 0 when every write should be synced
+     *
+     * @return a fresh {@link NBTLogStoreBuilder}
+     */
+    public NBTLogStoreBuilder withSyncInterval(final long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+
+        return this;
+    }
+
+    /**
+     * Sets the share of overwritten and removed records at which the log is compacted in the background
+     *
+     * @param compactionRatio which represents the share between 0 and 1
+     *
+     * @return a fresh {@link NBTLogStoreBuilder}
+     */
+    public NBTLogStoreBuilder withCompactionRatio(final double compactionRatio) {
+        this.compactionRatio = compactionRatio;
+
+        return this;
+    }
+
+    /**
+     * Sets the size the log has to reach before it is compacted in the background
+     *
+     * @param minimumCompactionSize which represents the size in bytes
+     *
+     * @return a fresh {@link NBTLogStoreBuilder}
+     */
+    public NBTLogStoreBuilder withMinimumCompactionSize(final int minimumCompactionSize) {
+        this.minimumCompactionSize = minimumCompactionSize;
+
+        return this;
+    }
+
+    /**
+     * Opens the {@link NBTLogStore} and recovers all records which have been written completely
+     *
+     * @return a fresh {@link NBTLogStore}
+     *
+     * @throws java.io.IOException when the file could not be opened or is no log of a {@link NBTLogStore}
+     */
+    public NBTLogStore build() throws IOException {
+        if (Objects.isNull(this.file) || Objects.isNull(this.byteOrder) || this.initialCapacity <= 0) {
+            throw new NBTBuilderException(NBTLogStore.class.getSimpleName());
+        }
+
+        return new NBTLogStore(this.file, this.byteOrder, this.initialCapacity, this.syncIntervalMillis,
+                this.compactionRatio, this.minimumCompactionSize);
+    }
+}
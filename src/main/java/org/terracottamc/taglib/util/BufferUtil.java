@@ -0,0 +1,58 @@
+package org.terracottamc.taglib.util;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class BufferUtil {
+
+    /**
+     * Moves the given range within the given {@link io.netty.buffer.ByteBuf} eight bytes at a time, the source and
+     * the target may overlap
+     *
+     * @param buffer which contains the range
+     * @param from   which represents the index of the range
+     * @param to     which represents the index the range is moved to
+     * @param length which represents the amount of bytes of the range
+     */
+    public static void moveBytes(final ByteBuf buffer, final int from, final int to, final int length) {
+        if (to > from) {
+            int remaining = length;
+
+            while (remaining >= 8) {
+                remaining -= 8;
+
+                buffer.setLong(to + remaining, buffer.getLong(from + remaining));
+            }
+
+            while (remaining > 0) {
+                remaining--;
+
+                buffer.setByte(to + remaining, buffer.getByte(from + remaining));
+            }
+        } else {
+            int moved = 0;
+
+            while (length - moved >= 8) {
+                buffer.setLong(to + moved, buffer.getLong(from + moved));
+
+                moved += 8;
+            }
+
+            while (moved < length) {
+                buffer.setByte(to + moved, buffer.getByte(from + moved));
+
+                moved++;
+            }
+        }
+    }
+}
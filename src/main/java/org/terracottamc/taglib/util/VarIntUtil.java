@@ -1,5 +1,6 @@
 package org.terracottamc.taglib.util;
 
+import io.netty.buffer.ByteBuf;
 import org.terracottamc.taglib.nbt.io.NBTStreamReader;
 import org.terracottamc.taglib.nbt.io.NBTWriter;
 
@@ -18,6 +19,14 @@ import java.math.BigInteger;
  */
 public class VarIntUtil {
 
+    /**
+     * The maximum amount of bytes a zigzag encoded int occupies
+     */
+    public static final int MAX_VAR_INT_SIZE = 5;
+
+    private static final long TERMINATOR_BITS = 0x8080808080808080L;
+    private static final long CONTINUATION_BITS = 0x0000008080808080L;
+
     public static int readVarInt(final NBTStreamReader nbtStreamReader) {
         final long value = VarIntUtil.readUnsignedVarLong(nbtStreamReader);
 
@@ -69,6 +78,116 @@ public class VarIntUtil {
         nbtWriter.writeByteValue((byte) value);
     }
 
+    /**
+     * Decodes zigzag varints from the given {@link io.netty.buffer.ByteBuf} eight bytes at a time until the given
+     * array is filled. A word of eight single byte varints is decoded at once, every other varint which lies
+     * completely within the next eight bytes is extracted from the word without a loop per byte.
+     * The decoding stops early at a varint which is longer than {@link VarIntUtil#MAX_VAR_INT_SIZE} or when less than
+     * eight bytes are readable, so that the remaining values can be read one by one
+     *
+     * @param buffer which contains the varints and whose reader index is advanced by the consumed bytes
+     * @param values which should be filled
+     * @param offset which represents the index of the first value which should be decoded
+     *
+     * @return the amount of decoded values
+     */
+    public static int readVarIntArray(final ByteBuf buffer, final int[] values, final int offset) {
+        final int end = buffer.writerIndex();
+        final int length = values.length;
+        int index = buffer.readerIndex();
+        int count = offset;
+
+        while (count < length && end - index >= 8) {
+            final long word = buffer.getLongLE(index);
+            final long terminators = ~word & VarIntUtil.TERMINATOR_BITS;
+
+            if (terminators == VarIntUtil.TERMINATOR_BITS && length - count >= 8) {
+                for (int shift = 0; shift < 64; shift += 8) {
+                    final int zigZag = (int) (word >>> shift) & 0x7f;
+
+                    values[count++] = (zigZag >>> 1) ^ -(zigZag & 1);
+                }
+
+                index += 8;
+
+                continue;
+            }
+
+            final int size = (Long.numberOfTrailingZeros(terminators) >>> 3) + 1;
+
+            if (terminators == 0 || size > VarIntUtil.MAX_VAR_INT_SIZE) {
+                break;
+            }
+
+            final long bytes = word & ((1L << (size << 3)) - 1);
+            final long zigZag = (bytes & 0x7fL) | (bytes >>> 1 & 0x3f80L) | (bytes >>> 2 & 0x1fc000L) |
+                    (bytes >>> 3 & 0xfe00000L) | (bytes >>> 4 & 0x7f0000000L);
+
+            values[count++] = VarIntUtil.deserializeZigZag32(zigZag);
+            index += size;
+        }
+
+        buffer.readerIndex(index);
+
+        return count - offset;
+    }
+
+    /**
+     * Encodes the given values as zigzag varints with one eight byte store per value, eight values which fit into a
+     * single byte are packed into one store. The output is identical to {@link VarIntUtil#writeVarInt(NBTWriter, int)}.
+     * The given {@link io.netty.buffer.ByteBuf} needs a capacity of {@link VarIntUtil#MAX_VAR_INT_SIZE} bytes per value
+     * and eight additional bytes beyond its writer index
+     *
+     * @param buffer which should be written and whose writer index is advanced by the written bytes
+     * @param values which contain the values that should be encoded
+     * @param from   which represents the index of the first value which should be encoded
+     * @param to     which represents the index after the last value which should be encoded
+     */
+    public static void writeVarIntArray(final ByteBuf buffer, final int[] values, final int from, final int to) {
+        int index = buffer.writerIndex();
+        int i = from;
+
+        while (i < to) {
+            if (to - i >= 8) {
+                long packed = 0L;
+                int packedValues = 0;
+
+                while (packedValues < 8) {
+                    final int value = values[i + packedValues];
+                    final int zigZag = value << 1 ^ value >> 31;
+
+                    if ((zigZag & 0xffffff80) != 0) {
+                        break;
+                    }
+
+                    packed |= (long) zigZag << (packedValues << 3);
+                    packedValues++;
+                }
+
+                if (packedValues > 0) {
+                    buffer.setLongLE(index, packed);
+
+                    index += packedValues;
+                    i += packedValues;
+
+                    continue;
+                }
+            }
+
+            final int value = values[i++];
+            final int zigZag = value << 1 ^ value >> 31;
+            final int size = (38 - Integer.numberOfLeadingZeros(zigZag | 1)) / 7;
+            final long spread = (zigZag & 0x7fL) | (zigZag & 0x3f80L) << 1 | (zigZag & 0x1fc000L) << 2 |
+                    (zigZag & 0xfe00000L) << 3 | (zigZag & 0xf0000000L) << 4;
+
+            buffer.setLongLE(index, spread | (VarIntUtil.CONTINUATION_BITS & ((1L << ((size - 1) << 3)) - 1)));
+
+            index += size;
+        }
+
+        buffer.writerIndex(index);
+    }
+
     private static int deserializeZigZag32(final long value) {
         return (int) (value >> 1) ^ -((int) (value & 1));
     }
@@ -0,0 +1,283 @@
+package org.terracottamc.taglib.util.hash;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * <p>
+ * An implementation of the 64-bit xxHash algorithm which fingerprints encoded nbt data without decoding it.
+ * The data can either be hashed at once or streamed in arbitrary chunks, both ways compute the same value
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class XXHash64 {
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE_LENGTH = 32;
+
+    private final long seed;
+    private final byte[] pending = new byte[XXHash64.STRIPE_LENGTH];
+
+    private long accumulator1;
+    private long accumulator2;
+    private long accumulator3;
+    private long accumulator4;
+    private long totalLength;
+    private int pendingLength;
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.util.hash.XXHash64} with the seed 0
+     */
+    public XXHash64() {
+        this(0L);
+    }
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.util.hash.XXHash64} with given seed
+     *
+     * @param seed which is used to initialize the hash
+     */
+    public XXHash64(final long seed) {
+        this.seed = seed;
+
+        this.reset();
+    }
+
+    /**
+     * Hashes the readable bytes of the given {@link io.netty.buffer.ByteBuf} without modifying its reader index
+     *
+     * @param buffer which contains the data
+     * @param seed   which is used to initialize the hash
+     *
+     * @return a fresh hash
+     */
+    public static long hash(final ByteBuf buffer, final long seed) {
+        return XXHash64.hash(buffer, buffer.readerIndex(), buffer.readableBytes(), seed);
+    }
+
+    /**
+     * Hashes the given range of the given {@link io.netty.buffer.ByteBuf}
+     *
+     * @param buffer which contains the data
+     * @param index  which represents the first byte of the range
+     * @param length which represents the amount of bytes of the range
+     * @param seed   which is used to initialize the hash
+     *
+     * @return a fresh hash
+     */
+    public static long hash(final ByteBuf buffer, final int index, final int length, final long seed) {
+        final int end = index + length;
+        int position = index;
+        long hash;
+
+        if (length >= XXHash64.STRIPE_LENGTH) {
+            long accumulator1 = seed + XXHash64.PRIME_1 + XXHash64.PRIME_2;
+            long accumulator2 = seed + XXHash64.PRIME_2;
+            long accumulator3 = seed;
+            long accumulator4 = seed - XXHash64.PRIME_1;
+
+            do {
+                accumulator1 = XXHash64.round(accumulator1, buffer.getLongLE(position));
+                accumulator2 = XXHash64.round(accumulator2, buffer.getLongLE(position + 8));
+                accumulator3 = XXHash64.round(accumulator3, buffer.getLongLE(position + 16));
+                accumulator4 = XXHash64.round(accumulator4, buffer.getLongLE(position + 24));
+                position += XXHash64.STRIPE_LENGTH;
+            } while (position <= end - XXHash64.STRIPE_LENGTH);
+
+            hash = XXHash64.mergeAccumulators(accumulator1, accumulator2, accumulator3, accumulator4);
+        } else {
+            hash = seed + XXHash64.PRIME_5;
+        }
+
+        hash += length;
+
+        while (position + 8 <= end) {
+            hash = XXHash64.mixLong(hash, buffer.getLongLE(position));
+            position += 8;
+        }
+
+        if (position + 4 <= end) {
+            hash = XXHash64.mixInt(hash, buffer.getIntLE(position));
+            position += 4;
+        }
+
+        while (position < end) {
+            hash = XXHash64.mixByte(hash, buffer.getByte(position));
+            position++;
+        }
+
+        return XXHash64.avalanche(hash);
+    }
+
+    /**
+     * Adds the readable bytes of the given {@link io.netty.buffer.ByteBuf} to the streamed data without modifying
+     * its reader index
+     *
+     * @param buffer which contains the data
+     */
+    public void update(final ByteBuf buffer) {
+        this.update(buffer, buffer.readerIndex(), buffer.readableBytes());
+    }
+
+    /**
+     * Adds the given range of the given {@link io.netty.buffer.ByteBuf} to the streamed data
+     *
+     * @param buffer which contains the data
+     * @param index  which represents the first byte of the range
+     * @param length which represents the amount of bytes of the range
+     */
+    public void update(final ByteBuf buffer, final int index, final int length) {
+        final int end = index + length;
+        int position = index;
+
+        this.totalLength += length;
+
+        if (this.pendingLength > 0) {
+            final int copied = Math.min(length, XXHash64.STRIPE_LENGTH - this.pendingLength);
+
+            buffer.getBytes(position, this.pending, this.pendingLength, copied);
+
+            this.pendingLength += copied;
+            position += copied;
+
+            if (this.pendingLength < XXHash64.STRIPE_LENGTH) {
+                return;
+            }
+
+            this.accumulator1 = XXHash64.round(this.accumulator1, XXHash64.readLong(this.pending, 0));
+            this.accumulator2 = XXHash64.round(this.accumulator2, XXHash64.readLong(this.pending, 8));
+            this.accumulator3 = XXHash64.round(this.accumulator3, XXHash64.readLong(this.pending, 16));
+            this.accumulator4 = XXHash64.round(this.accumulator4, XXHash64.readLong(this.pending, 24));
+            this.pendingLength = 0;
+        }
+
+        while (position <= end - XXHash64.STRIPE_LENGTH) {
+            this.accumulator1 = XXHash64.round(this.accumulator1, buffer.getLongLE(position));
+            this.accumulator2 = XXHash64.round(this.accumulator2, buffer.getLongLE(position + 8));
+            this.accumulator3 = XXHash64.round(this.accumulator3, buffer.getLongLE(position + 16));
+            this.accumulator4 = XXHash64.round(this.accumulator4, buffer.getLongLE(position + 24));
+            position += XXHash64.STRIPE_LENGTH;
+        }
+
+        if (position < end) {
+            buffer.getBytes(position, this.pending, 0, end - position);
+
+            this.pendingLength = end - position;
+        }
+    }
+
+    /**
+     * Retrieves the hash of all data which has been streamed since the last reset
+     *
+     * @return a fresh hash
+     */
+    public long getValue() {
+        long hash;
+
+        if (this.totalLength >= XXHash64.STRIPE_LENGTH) {
+            hash = XXHash64.mergeAccumulators(this.accumulator1, this.accumulator2, this.accumulator3,
+                    this.accumulator4);
+        } else {
+            hash = this.seed + XXHash64.PRIME_5;
+        }
+
+        hash += this.totalLength;
+
+        int position = 0;
+
+        while (position + 8 <= this.pendingLength) {
+            hash = XXHash64.mixLong(hash, XXHash64.readLong(this.pending, position));
+            position += 8;
+        }
+
+        if (position + 4 <= this.pendingLength) {
+            hash = XXHash64.mixInt(hash, XXHash64.readInt(this.pending, position));
+            position += 4;
+        }
+
+        while (position < this.pendingLength) {
+            hash = XXHash64.mixByte(hash, this.pending[position]);
+            position++;
+        }
+
+        return XXHash64.avalanche(hash);
+    }
+
+    /**
+     * Discards all streamed data
+     */
+    public void reset() {
+        this.accumulator1 = this.seed + XXHash64.PRIME_1 + XXHash64.PRIME_2;
+        this.accumulator2 = this.seed + XXHash64.PRIME_2;
+        this.accumulator3 = this.seed;
+        this.accumulator4 = this.seed - XXHash64.PRIME_1;
+        this.totalLength = 0L;
+        this.pendingLength = 0;
+    }
+
+    private static long round(final long accumulator, final long input) {
+        return Long.rotateLeft(accumulator + input * XXHash64.PRIME_2, 31) * XXHash64.PRIME_1;
+    }
+
+    private static long mergeAccumulators(final long accumulator1, final long accumulator2, final long accumulator3,
+                                          final long accumulator4) {
+        long hash = Long.rotateLeft(accumulator1, 1) + Long.rotateLeft(accumulator2, 7) +
+                Long.rotateLeft(accumulator3, 12) + Long.rotateLeft(accumulator4, 18);
+
+        hash = XXHash64.mergeRound(hash, accumulator1);
+        hash = XXHash64.mergeRound(hash, accumulator2);
+        hash = XXHash64.mergeRound(hash, accumulator3);
+        hash = XXHash64.mergeRound(hash, accumulator4);
+
+        return hash;
+    }
+
+    private static long mergeRound(final long hash, final long accumulator) {
+        return (hash ^ XXHash64.round(0L, accumulator)) * XXHash64.PRIME_1 + XXHash64.PRIME_4;
+    }
+
+    private static long mixLong(final long hash, final long input) {
+        return Long.rotateLeft(hash ^ XXHash64.round(0L, input), 27) * XXHash64.PRIME_1 + XXHash64.PRIME_4;
+    }
+
+    private static long mixInt(final long hash, final int input) {
+        return Long.rotateLeft(hash ^ (input & 0xFFFFFFFFL) * XXHash64.PRIME_1, 23) * XXHash64.PRIME_2 +
+                XXHash64.PRIME_3;
+    }
+
+    private static long mixByte(final long hash, final byte input) {
+        return Long.rotateLeft(hash ^ (input & 0xFF) * XXHash64.PRIME_5, 11) * XXHash64.PRIME_1;
+    }
+
+    private static long avalanche(long hash) {
+        hash ^= hash >>> 33;
+        hash *= XXHash64.PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= XXHash64.PRIME_3;
+        hash ^= hash >>> 32;
+
+        return hash;
+    }
+
+    private static long readLong(final byte[] data, final int index) {
+        return (data[index] & 0xFFL) | (data[index + 1] & 0xFFL) << 8 | (data[index + 2] & 0xFFL) << 16 |
+                (data[index + 3] & 0xFFL) << 24 | (data[index + 4] & 0xFFL) << 32 | (data[index + 5] & 0xFFL) << 40 |
+                (data[index + 6] & 0xFFL) << 48 | (data[index + 7] & 0xFFL) << 56;
+    }
+
+    private static int readInt(final byte[] data, final int index) {
+        return (data[index] & 0xFF) | (data[index + 1] & 0xFF) << 8 | (data[index + 2] & 0xFF) << 16 |
+                (data[index + 3] & 0xFF) << 24;
+    }
+}
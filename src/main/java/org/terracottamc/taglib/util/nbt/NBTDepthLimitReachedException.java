@@ -0,0 +1,24 @@
+package org.terracottamc.taglib.util.nbt;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTDepthLimitReachedException extends RuntimeException {
+
+    /**
+     * Creates a new {@link org.terracottamc.taglib.util.nbt.NBTDepthLimitReachedException} with given depth limit
+     *
+     * @param maxDepth which represents the depth limit that has been reached
+     */
+    public NBTDepthLimitReachedException(final int maxDepth) {
+        super("Could not read more nested tags because the depth limit of " + maxDepth + " has been reached");
+    }
+}
@@ -0,0 +1,57 @@
+package org.terracottamc.taglib.util.nbt;
+
+import org.terracottamc.taglib.nbt.tag.NBTTagCompound;
+
+import java.util.List;
+
+/**
+ * Copyright (c) 2021, TerracottaMC
+ * All rights reserved.
+ *
+ * <p>
+ * This project is licensed under the BSD 3-Clause License which
+ * can be found in the root directory of this source tree
+ *
+ * @author Kaooot
+ * @version 1.0
+ */
+public class NBTTagIdResolver {
+
+    /**
+     * Retrieves the tag identifier from the given value
+     *
+     * @param value which is needed to retrieve the id
+     *
+     * @return a fresh byte
+     *
+     * @throws java.lang.IllegalArgumentException when the given value cannot be represented by any NBT tag
+     */
+    public static byte retrieveTagIdFromValue(final Object value) {
+        if (value instanceof Byte) {
+            return NBTConstants.TAG_BYTE;
+        } else if (value instanceof Short) {
+            return NBTConstants.TAG_SHORT;
+        } else if (value instanceof Integer) {
+            return NBTConstants.TAG_INT;
+        } else if (value instanceof Long) {
+            return NBTConstants.TAG_LONG;
+        } else if (value instanceof Float) {
+            return NBTConstants.TAG_FLOAT;
+        } else if (value instanceof Double) {
+            return NBTConstants.TAG_DOUBLE;
+        } else if (value instanceof String) {
+            return NBTConstants.TAG_STRING;
+        } else if (value instanceof byte[]) {
+            return NBTConstants.TAG_BYTE_ARRAY;
+        } else if (value instanceof List) {
+            return NBTConstants.TAG_LIST;
+        } else if (value instanceof NBTTagCompound) {
+            return NBTConstants.TAG_COMPOUND;
+        } else if (value instanceof int[]) {
+            return NBTConstants.TAG_INT_ARRAY;
+        }
+
+        throw new IllegalArgumentException("Could not create a tagId from the given value: " +
+                (value == null ? "null" : value.getClass().getSimpleName()));
+    }
+}